@@ -0,0 +1,67 @@
+package com.stocktrading.brokerage.benchmark;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of queueing a limit order that rests without trading, and of cancelling it,
+ * on top of a book that already holds {@code restingOrders} orders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddCancelBenchmark {
+
+    private static final int SYMBOLS = 100;
+
+    @Param({"10000", "100000"})
+    private int restingOrders;
+
+    private BrokerageFixture fixture;
+    private int nextSymbol;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BrokerageFixture(4);
+        // BUY orders only, so nothing ever crosses
+        for (int i = 0; i < restingOrders; i++) {
+            fixture.placeLimitOrder(BrokerageFixture.symbol(i % SYMBOLS), "BUY", 100,
+                    BigDecimal.valueOf(5000 + i / SYMBOLS, 2), "GTC");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSentEvents() {
+        fixture.clearSentEvents();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public boolean addThenCancel() {
+        String symbol = BrokerageFixture.symbol(nextSymbol++ % SYMBOLS);
+        PendingOrder order = fixture.placeLimitOrder(symbol, "BUY", 100, BigDecimal.valueOf(4000, 2), "GTC");
+        return fixture.getMockOrderBook().removePendingOrder(order.getOrderId());
+    }
+}
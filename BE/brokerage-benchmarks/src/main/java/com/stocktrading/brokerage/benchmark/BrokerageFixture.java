@@ -0,0 +1,149 @@
+package com.stocktrading.brokerage.benchmark;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.client.MarketDataClient;
+import com.stocktrading.brokerage.journal.OrderJournal;
+import com.stocktrading.brokerage.matching.MatchingEngine;
+import com.stocktrading.brokerage.model.MockOrderBook;
+import com.stocktrading.brokerage.model.PendingOrder;
+import com.stocktrading.brokerage.publisher.BrokerEventPublisher;
+import com.stocktrading.brokerage.service.MarketPriceCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The brokerage components wired by hand the way Spring wires them, minus the context.
+ * Events go to an in-memory producer that acks immediately but still serializes every
+ * record, and the order journal is disabled so the benchmarks measure the book itself.
+ */
+public class BrokerageFixture {
+
+    public static final String BUY_TOPIC = "broker.events.order-buy";
+    public static final String SELL_TOPIC = "broker.events.order-sell";
+
+    private final MockProducer<String, Object> producer;
+    private final MarketPriceCache marketPriceCache;
+    private final MatchingEngine matchingEngine;
+    private final BrokerEventPublisher brokerEventPublisher;
+    private final MockOrderBook mockOrderBook;
+    private final AtomicLong nextOrderId = new AtomicLong();
+
+    public BrokerageFixture(int matchingThreads) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        marketPriceCache = newMarketPriceCache();
+
+        matchingEngine = new MatchingEngine();
+        ReflectionTestUtils.setField(matchingEngine, "threadCount", matchingThreads);
+        matchingEngine.init();
+
+        OrderJournal orderJournal = new OrderJournal();
+        ReflectionTestUtils.setField(orderJournal, "enabled", false);
+
+        producer = new MockProducer<String, Object>(true, new StringSerializer(),
+                new JsonSerializer<>(JacksonUtils.enhancedObjectMapper())) {
+            @Override
+            public void close(Duration timeout) {
+                // KafkaTemplate closes its producer after every send; keep this one open
+            }
+        };
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(() -> producer);
+
+        brokerEventPublisher = new BrokerEventPublisher(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(brokerEventPublisher, "retryBufferSize", 10000);
+        ReflectionTestUtils.setField(brokerEventPublisher, "retryIntervalMs", 1000L);
+        brokerEventPublisher.init();
+
+        mockOrderBook = new MockOrderBook(marketPriceCache, brokerEventPublisher, meterRegistry,
+                matchingEngine, orderJournal);
+        ReflectionTestUtils.setField(mockOrderBook, "brokerEventsTopic", BUY_TOPIC);
+        ReflectionTestUtils.setField(mockOrderBook, "brokerSellEventsTopic", SELL_TOPIC);
+        ReflectionTestUtils.setField(mockOrderBook, "priceVariation", 0.02);
+        mockOrderBook.init();
+    }
+
+    /**
+     * A price cache that starts empty: the market data service isn't there to warm it from
+     */
+    public static MarketPriceCache newMarketPriceCache() {
+        MarketDataClient marketDataClient = new MarketDataClient(new RestTemplateBuilder(), 0) {
+            @Override
+            public List<Map<String, Object>> getLastValues() {
+                return Collections.emptyList();
+            }
+        };
+        MarketPriceCache marketPriceCache = new MarketPriceCache(marketDataClient);
+        ReflectionTestUtils.setField(marketPriceCache, "maxSymbols", 16384);
+        ReflectionTestUtils.setField(marketPriceCache, "bootstrapEnabled", false);
+        marketPriceCache.init();
+        return marketPriceCache;
+    }
+
+    public MarketPriceCache getMarketPriceCache() {
+        return marketPriceCache;
+    }
+
+    public MockOrderBook getMockOrderBook() {
+        return mockOrderBook;
+    }
+
+    /**
+     * Queue a limit order and hand it to the matching engine, like KafkaCommandHandlerService does
+     */
+    public PendingOrder placeLimitOrder(String symbol, String side, int quantity, BigDecimal limitPrice,
+                                        String timeInForce) {
+        long id = nextOrderId.incrementAndGet();
+        PendingOrder order = mockOrderBook.addPendingOrder("bench-order-" + id, symbol, "LIMIT", side,
+                quantity, limitPrice, timeInForce, "bench-saga-" + id);
+        mockOrderBook.matchPendingOrder(order);
+        return order;
+    }
+
+    /**
+     * A MARKET_PRICES_UPDATED event as published by the market data service
+     */
+    public static EventMessage priceUpdate(String symbol, BigDecimal bidPrice, BigDecimal askPrice) {
+        EventMessage event = EventMessage.builder()
+                .messageId("bench-tick")
+                .type("MARKET_PRICES_UPDATED")
+                .sourceService("MARKET_DATA_SERVICE")
+                .timestamp(Instant.now())
+                .success(true)
+                .build();
+        event.setPayloadValue("symbol", symbol);
+        event.setPayloadValue("price", bidPrice.add(askPrice).divide(BigDecimal.valueOf(2)));
+        event.setPayloadValue("bidPrice", bidPrice);
+        event.setPayloadValue("askPrice", askPrice);
+        return event;
+    }
+
+    public static String symbol(int index) {
+        return "SYM" + index;
+    }
+
+    /**
+     * Forget the records sent so far so the producer's history doesn't grow across iterations
+     */
+    public void clearSentEvents() {
+        producer.clear();
+    }
+
+    public void shutdown() {
+        matchingEngine.shutdown();
+        brokerEventPublisher.shutdown();
+    }
+}
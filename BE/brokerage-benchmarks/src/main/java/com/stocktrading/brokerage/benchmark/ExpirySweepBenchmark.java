@@ -0,0 +1,74 @@
+package com.stocktrading.brokerage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one expiry sweep that finds {@code expiredOrders} due orders in a book of
+ * {@code restingOrders} orders that are not due. The sweep should only pay for the due orders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExpirySweepBenchmark {
+
+    private static final int SYMBOLS = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    private int restingOrders;
+
+    @Param({"1", "100"})
+    private int expiredOrders;
+
+    private BrokerageFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BrokerageFixture(4);
+        for (int i = 0; i < restingOrders; i++) {
+            fixture.placeLimitOrder(BrokerageFixture.symbol(i % SYMBOLS), "BUY", 100,
+                    BigDecimal.valueOf(5000 + i / SYMBOLS, 2), "GTC");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void addDueOrders() {
+        // IOC orders get an expiration time of "now", so they are due on the next sweep
+        for (int i = 0; i < expiredOrders; i++) {
+            fixture.placeLimitOrder(BrokerageFixture.symbol(i % SYMBOLS), "BUY", 100,
+                    BigDecimal.valueOf(4000, 2), "IOC");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSentEvents() {
+        fixture.clearSentEvents();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void sweep() {
+        fixture.getMockOrderBook().checkForExpiredOrders();
+    }
+}
@@ -0,0 +1,86 @@
+package com.stocktrading.brokerage.benchmark;
+
+import com.stocktrading.brokerage.model.MarketQuote;
+import com.stocktrading.brokerage.service.MarketPriceCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quote reads from {@link MarketPriceCache} by symbol id and by symbol name while another
+ * thread keeps replacing quotes, as the matching threads do while the price listener updates
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketPriceCacheBenchmark {
+
+    private static final int SYMBOLS = 1000;
+
+    private MarketPriceCache marketPriceCache;
+    private String[] symbols;
+    private BigDecimal[] prices;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        marketPriceCache = BrokerageFixture.newMarketPriceCache();
+
+        symbols = new String[SYMBOLS];
+        prices = new BigDecimal[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            symbols[i] = BrokerageFixture.symbol(i);
+            prices[i] = BigDecimal.valueOf(10000 + i, 2);
+            marketPriceCache.updateQuote(symbols[i], prices[i], prices[i], prices[i], System.currentTimeMillis());
+        }
+    }
+
+    @Benchmark
+    @Group("byId")
+    @GroupThreads(7)
+    public MarketQuote readById() {
+        return marketPriceCache.getQuote(ThreadLocalRandom.current().nextInt(SYMBOLS));
+    }
+
+    @Benchmark
+    @Group("byId")
+    @GroupThreads(1)
+    public MarketQuote writeWhileReadingById() {
+        return write();
+    }
+
+    @Benchmark
+    @Group("bySymbol")
+    @GroupThreads(7)
+    public MarketQuote readBySymbol() {
+        return marketPriceCache.getQuote(symbols[ThreadLocalRandom.current().nextInt(SYMBOLS)]);
+    }
+
+    @Benchmark
+    @Group("bySymbol")
+    @GroupThreads(1)
+    public MarketQuote writeWhileReadingBySymbol() {
+        return write();
+    }
+
+    private MarketQuote write() {
+        int i = ThreadLocalRandom.current().nextInt(SYMBOLS);
+        return marketPriceCache.updateQuote(symbols[i], prices[i], prices[i], prices[i], System.currentTimeMillis());
+    }
+}
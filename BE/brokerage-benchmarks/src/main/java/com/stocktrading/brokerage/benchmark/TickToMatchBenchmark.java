@@ -0,0 +1,104 @@
+package com.stocktrading.brokerage.benchmark;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from a market price update arriving at {@code MarketPriceCache} to the fills it
+ * triggers being handed to the producer, with {@code restingOrders} orders spread over 100 symbols.
+ * A crossing tick fills exactly the best BUY order of its symbol, which is put back before the
+ * next invocation so the book size stays constant. A non-crossing tick shows the fixed cost
+ * of a tick that trades nothing, which should not grow with the size of the book.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TickToMatchBenchmark {
+
+    private static final int SYMBOLS = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    private int restingOrders;
+
+    private BrokerageFixture fixture;
+
+    // Per symbol: a tick whose ask crosses only the best BUY order, and one that crosses nothing
+    private BigDecimal[] bestBidPrices;
+    private EventMessage[] crossingTicks;
+    private EventMessage[] quietTicks;
+
+    private int nextSymbol;
+    private int filledSymbol = -1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BrokerageFixture(4);
+        bestBidPrices = new BigDecimal[SYMBOLS];
+        crossingTicks = new EventMessage[SYMBOLS];
+        quietTicks = new EventMessage[SYMBOLS];
+
+        // Every order of a symbol gets its own price level: 50.00, 50.01, 50.02, ...
+        int ordersPerSymbol = restingOrders / SYMBOLS;
+        for (int s = 0; s < SYMBOLS; s++) {
+            String symbol = BrokerageFixture.symbol(s);
+            for (int i = 0; i < ordersPerSymbol; i++) {
+                fixture.placeLimitOrder(symbol, "BUY", 100, BigDecimal.valueOf(5000 + i, 2), "GTC");
+            }
+            bestBidPrices[s] = BigDecimal.valueOf(5000 + ordersPerSymbol - 1, 2);
+            crossingTicks[s] = BrokerageFixture.priceUpdate(symbol,
+                    bestBidPrices[s].subtract(BigDecimal.valueOf(1, 2)), bestBidPrices[s]);
+            quietTicks[s] = BrokerageFixture.priceUpdate(symbol,
+                    BigDecimal.valueOf(99998, 2), BigDecimal.valueOf(99999, 2));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreFilledOrder() {
+        if (filledSymbol >= 0) {
+            fixture.placeLimitOrder(BrokerageFixture.symbol(filledSymbol), "BUY", 100,
+                    bestBidPrices[filledSymbol], "GTC");
+            filledSymbol = -1;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSentEvents() {
+        fixture.clearSentEvents();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void crossingTick() {
+        int symbol = nextSymbol++ % SYMBOLS;
+        fixture.getMarketPriceCache().consumeMarketPriceUpdates(crossingTicks[symbol]);
+        filledSymbol = symbol;
+    }
+
+    @Benchmark
+    public void quietTick() {
+        int symbol = nextSymbol++ % SYMBOLS;
+        fixture.getMarketPriceCache().consumeMarketPriceUpdates(quietTicks[symbol]);
+    }
+}
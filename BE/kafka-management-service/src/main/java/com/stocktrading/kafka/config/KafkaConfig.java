@@ -20,6 +20,7 @@ import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.util.backoff.ExponentialBackOff;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -133,6 +134,9 @@ public class KafkaConfig {
     private String portfolioEventsOrderSellTopic;
 
 
+    @Value("${kafka.topics.market-price-updates:market.price.updates}")
+    private String marketPriceUpdatesTopic;
+
     // Kafka Admin Configuration
     @Bean
     public KafkaAdmin kafkaAdmin() {
@@ -448,4 +452,35 @@ public class KafkaConfig {
 
         return factory;
     }
-}
\ No newline at end of file
+
+    // Consumer Configuration for the market price broadcasts feeding the saga's quote cache.
+    // A new group starts from the latest prices; anything older would be stale anyway.
+    @Bean
+    public ConsumerFactory<String, EventMessage> marketPriceConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, defaultGroupId + "-market-prices");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class.getName());
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, "com.project.kafkamessagemodels.model.EventMessage");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, true);
+        props.put(JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false);
+
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    // Market price container factory - a dropped price is replaced by the next tick, so no retries or DLQ
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, EventMessage> marketPriceKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, EventMessage> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(marketPriceConsumerFactory());
+        factory.setConcurrency(1);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(0, 0)));
+
+        return factory;
+    }
+}
@@ -0,0 +1,90 @@
+package com.stocktrading.kafka.service;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest market price per symbol, fed by the MARKET_PRICES_UPDATED broadcasts of the market data
+ * service. Lets the order sagas read a fresh price in-process instead of asking the market data
+ * service for it; a price older than the staleness bound is treated as missing.
+ */
+@Slf4j
+@Component
+public class MarketQuoteCache {
+
+    // Symbol -> latest price and when it was ticked
+    private final Map<String, CachedPrice> prices = new ConcurrentHashMap<>();
+
+    @Value("${saga.market-price-cache.max-age-ms:30000}")
+    private long maxAgeMs;
+
+    /**
+     * Get the latest price of a symbol if it was ticked within the staleness bound
+     *
+     * @return The price, or null if there is none or it is stale
+     */
+    public BigDecimal getFreshPrice(String symbol) {
+        CachedPrice cached = symbol != null ? prices.get(symbol) : null;
+        if (cached == null || System.currentTimeMillis() - cached.getTimestamp() > maxAgeMs) {
+            return null;
+        }
+        return cached.getPrice();
+    }
+
+    /**
+     * Listen for market price updates from the market data service
+     */
+    @KafkaListener(
+            topics = "${kafka.topics.market-price-updates:market.price.updates}",
+            containerFactory = "marketPriceKafkaListenerContainerFactory"
+    )
+    public void consumeMarketPriceUpdates(EventMessage event) {
+        if (!"MARKET_PRICES_UPDATED".equals(event.getType())) {
+            return;
+        }
+
+        try {
+            String symbol = event.getPayloadValue("symbol");
+            Object priceObj = event.getPayloadValue("price");
+            if (symbol == null || priceObj == null) {
+                return;
+            }
+
+            // Staleness is judged by when the price was ticked, not when it got here
+            long timestamp = event.getTimestamp() != null
+                    ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+            prices.put(symbol, new CachedPrice(convertToBigDecimal(priceObj), timestamp));
+            log.trace("Cached market price of {}: {}", symbol, priceObj);
+        } catch (Exception e) {
+            log.error("Error processing market price update", e);
+        }
+    }
+
+    private BigDecimal convertToBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            return new BigDecimal((String) value);
+        } else {
+            throw new IllegalArgumentException("Cannot convert to BigDecimal: " + value);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedPrice {
+        private final BigDecimal price;
+        private final long timestamp; // epoch millis of the tick
+    }
+}
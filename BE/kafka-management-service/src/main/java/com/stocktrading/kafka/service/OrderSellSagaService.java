@@ -9,6 +9,7 @@ import com.stocktrading.kafka.model.OrderSellSagaState;
 import com.stocktrading.kafka.model.enums.OrderSellSagaStep;
 import com.stocktrading.kafka.model.enums.SagaStatus;
 import com.stocktrading.kafka.repository.OrderSellSagaRepository;
+import com.stocktrading.kafka.util.PayloadValues;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,6 +17,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -187,6 +189,12 @@ public class OrderSellSagaService {
             return;
         }
 
+        // Special handling for ORDER_PARTIALLY_FILLED event (for limit orders)
+        if ("ORDER_PARTIALLY_FILLED".equals(event.getType())) {
+            handlePartialFill(saga, event);
+            return;
+        }
+
         // Special handling for ORDER_EXECUTED_BY_BROKER event (for limit orders)
         if ("ORDER_EXECUTED_BY_BROKER".equals(event.getType()) &&
                 saga.getStatus() == SagaStatus.LIMIT_ORDER_PENDING) {
@@ -245,23 +253,12 @@ public class OrderSellSagaService {
         // Store current market price for reference
         Object priceObj = event.getPayloadValue("currentPrice");
         if (priceObj != null) {
-            BigDecimal currentPrice;
-            if (priceObj instanceof BigDecimal) {
-                currentPrice = (BigDecimal) priceObj;
-            } else if (priceObj instanceof Double) {
-                currentPrice = BigDecimal.valueOf((Double) priceObj);
-            } else if (priceObj instanceof Number) {
-                currentPrice = BigDecimal.valueOf(((Number) priceObj).doubleValue());
-            } else if (priceObj instanceof String) {
-                currentPrice = new BigDecimal((String) priceObj);
+            BigDecimal currentPrice = PayloadValues.toBigDecimal(priceObj);
+            if (currentPrice != null) {
+                saga.storeStepData("currentMarketPrice", currentPrice);
             } else {
                 log.warn("Skipping currentMarketPrice storage due to unsupported format: {}",
                         priceObj.getClass().getName());
-                currentPrice = null;
-            }
-
-            if (currentPrice != null) {
-                saga.storeStepData("currentMarketPrice", currentPrice);
             }
         }
 
@@ -279,11 +276,25 @@ public class OrderSellSagaService {
 
     /**
      * Handle the ORDER_EXPIRED event
-     * This initiates compensation for an expired limit order
+     * An order that filled in part settles that part; otherwise this compensates the whole order
      */
     private void handleOrderExpired(OrderSellSagaState saga, EventMessage event) {
         log.info("Processing order expired event for saga: {}", saga.getSagaId());
 
+        // A partially filled order settles what was filled; only the rest is given back
+        Integer executedQuantity = PayloadValues.toInteger(event.getPayloadValue("executedQuantity"));
+        if (executedQuantity != null && executedQuantity > 0) {
+            saga.addEvent("ORDER_EXPIRED", "Limit order expired after filling " + executedQuantity +
+                    " of " + saga.getQuantity() + " shares: " + event.getPayloadValue("expiredAt"));
+            settlePartialFill(saga, event, executedQuantity);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "IN_PROGRESS");
+            result.put("action", "Settling the filled part of the expired order");
+            idempotencyService.recordProcessing(event, result);
+            return;
+        }
+
         saga.setStatus(SagaStatus.FAILED);
         saga.setFailureReason("Order expired before execution conditions were met");
         saga.addEvent("ORDER_EXPIRED", "Limit order expired: " + event.getPayloadValue("expiredAt"));
@@ -302,6 +313,95 @@ public class OrderSellSagaService {
         idempotencyService.recordProcessing(event, result);
     }
 
+    /**
+     * Handle the ORDER_PARTIALLY_FILLED event
+     * The saga stays paused until the order is filled completely, expires or is cancelled;
+     * the fills are tracked so the filled part can be settled if the order doesn't fill completely
+     */
+    private void handlePartialFill(OrderSellSagaState saga, EventMessage event) {
+        // A fill that arrives once the saga has moved on changes nothing: an expiry or cancel
+        // reply already carries the cumulative fill and its average price
+        if (saga.getStatus() != SagaStatus.LIMIT_ORDER_PENDING) {
+            log.warn("Ignoring partial fill for saga {} in status {}", saga.getSagaId(), saga.getStatus());
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", saga.getStatus().name());
+            result.put("action", "Ignored partial fill, saga no longer pending");
+            idempotencyService.recordProcessing(event, result);
+            return;
+        }
+
+        Integer fillQuantity = PayloadValues.toInteger(event.getPayloadValue("executedQuantity"));
+        Integer cumulativeQuantity = PayloadValues.toInteger(event.getPayloadValue("cumulativeQuantity"));
+        BigDecimal fillPrice = PayloadValues.toBigDecimal(event.getPayloadValue("executionPrice"));
+        log.info("Limit order {} partially filled: {} shares at {} ({} of {} filled)",
+                saga.getOrderId(), fillQuantity, fillPrice, cumulativeQuantity, saga.getQuantity());
+
+        if (fillQuantity != null && fillPrice != null) {
+            BigDecimal filledNotional = PayloadValues.toBigDecimal(saga.getStepData("filledNotional"));
+            if (filledNotional == null) {
+                filledNotional = BigDecimal.ZERO;
+            }
+            saga.storeStepData("filledNotional", filledNotional.add(fillPrice.multiply(new BigDecimal(fillQuantity))));
+        }
+        if (cumulativeQuantity != null) {
+            saga.setExecutedQuantity(cumulativeQuantity);
+        }
+        if (saga.getBrokerOrderId() == null) {
+            saga.setBrokerOrderId(event.getPayloadValue("brokerOrderId"));
+        }
+
+        saga.addEvent("ORDER_PARTIALLY_FILLED", "Limit order partially filled: " + fillQuantity +
+                " shares at price " + fillPrice + " (" + cumulativeQuantity + " of " + saga.getQuantity() + ")");
+        saga.setLastUpdatedTime(Instant.now());
+        orderSellSagaRepository.save(saga);
+
+        // Record the event as processed
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", saga.getStatus().name());
+        result.put("action", "Recorded partial fill");
+        idempotencyService.recordProcessing(event, result);
+    }
+
+    /**
+     * Settle the filled part of a limit order that won't fill any further because it expired or
+     * was cancelled. The saga resumes at UPDATE_ORDER_EXECUTED for the executed quantity at its
+     * average price, so only the sold shares are credited and removed from the portfolio, the unsold ones stay.
+     */
+    private void settlePartialFill(OrderSellSagaState saga, EventMessage event, int executedQuantity) {
+        BigDecimal executionPrice = PayloadValues.toBigDecimal(event.getPayloadValue("executionPrice"));
+        if (executionPrice == null) {
+            // Fall back to the fills tracked from the ORDER_PARTIALLY_FILLED events, then to
+            // the limit price, which no fill of the order can be worse than
+            BigDecimal filledNotional = PayloadValues.toBigDecimal(saga.getStepData("filledNotional"));
+            executionPrice = filledNotional != null
+                    ? filledNotional.divide(new BigDecimal(executedQuantity), 4, RoundingMode.HALF_UP)
+                    : saga.getLimitPrice();
+        }
+
+        log.info("Settling {} of {} shares of partially filled order {} at average price {}",
+                executedQuantity, saga.getQuantity(), saga.getOrderId(), executionPrice);
+
+        saga.setExecutedQuantity(executedQuantity);
+        saga.setExecutionPrice(executionPrice);
+        if (saga.getBrokerOrderId() == null) {
+            saga.setBrokerOrderId(event.getPayloadValue("brokerOrderId"));
+        }
+
+        // Resume the saga at the UPDATE_ORDER_EXECUTED step
+        saga.setStatus(SagaStatus.IN_PROGRESS);
+        saga.setCurrentStep(OrderSellSagaStep.UPDATE_ORDER_EXECUTED);
+        saga.setCurrentStepStartTime(Instant.now());
+        saga.addEvent("PARTIAL_FILL_SETTLING", "Settling " + executedQuantity + " of " + saga.getQuantity() +
+                " shares at average price: " + executionPrice);
+
+        // Save the updated state
+        saga.setLastUpdatedTime(Instant.now());
+        orderSellSagaRepository.save(saga);
+
+        // Continue with next step
+        processNextStep(saga);
+    }
+
     /**
      * Resume a saga that was paused waiting for limit order execution
      */
@@ -311,26 +411,13 @@ public class OrderSellSagaService {
         // Update saga with execution details
         saga.setBrokerOrderId(event.getPayloadValue("brokerOrderId"));
 
-        // Handle type conversion for executedQuantity
-        Object quantityObj = event.getPayloadValue("executedQuantity");
-        if (quantityObj instanceof Integer) {
-            saga.setExecutedQuantity((Integer) quantityObj);
-        } else if (quantityObj instanceof String) {
-            saga.setExecutedQuantity(Integer.parseInt((String) quantityObj));
-        } else if (quantityObj != null) {
-            saga.setExecutedQuantity(((Number) quantityObj).intValue());
+        Integer executedQuantity = PayloadValues.toInteger(event.getPayloadValue("executedQuantity"));
+        if (executedQuantity != null) {
+            saga.setExecutedQuantity(executedQuantity);
         }
-
-        // Handle type conversion for executionPrice
-        Object priceObj = event.getPayloadValue("executionPrice");
-        if (priceObj instanceof BigDecimal) {
-            saga.setExecutionPrice((BigDecimal) priceObj);
-        } else if (priceObj instanceof Double) {
-            saga.setExecutionPrice(BigDecimal.valueOf((Double) priceObj));
-        } else if (priceObj instanceof Number) {
-            saga.setExecutionPrice(BigDecimal.valueOf(((Number) priceObj).doubleValue()));
-        } else if (priceObj instanceof String) {
-            saga.setExecutionPrice(new BigDecimal((String) priceObj));
+        BigDecimal executionPrice = PayloadValues.toBigDecimal(event.getPayloadValue("executionPrice"));
+        if (executionPrice != null) {
+            saga.setExecutionPrice(executionPrice);
         }
 
         // Resume the saga at the UPDATE_ORDER_EXECUTED step
@@ -362,6 +449,19 @@ public class OrderSellSagaService {
         // Update saga with event data based on event type
         updateSagaWithEventData(saga, event);
 
+        // A limit order cancelled after a partial fill settles the filled part instead of
+        // compensating the whole order
+        if (saga.getCurrentStep() == OrderSellSagaStep.CANCEL_BROKER_ORDER &&
+                "BROKER_ORDER_CANCELLED".equals(event.getType())) {
+            Integer executedQuantity = PayloadValues.toInteger(event.getPayloadValue("executedQuantity"));
+            if (executedQuantity != null && executedQuantity > 0) {
+                saga.addEvent("BROKER_ORDER_CANCELLED", "Limit order cancelled after filling " +
+                        executedQuantity + " of " + saga.getQuantity() + " shares");
+                settlePartialFill(saga, event, executedQuantity);
+                return;
+            }
+        }
+
         if (saga.getStatus() == SagaStatus.COMPENSATING) {
             // For compensation steps, handle them differently
             handleCompensationStepSuccess(saga);
@@ -517,17 +617,7 @@ public class OrderSellSagaService {
                     saga.setBrokerOrderId(event.getPayloadValue("brokerOrderId"));
                     saga.setExecutedQuantity(event.getPayloadValue("executedQuantity"));
                     if (saga.getExecutionPrice() == null) {
-                        // Handle type conversion for executionPrice
-                        Object priceObj = event.getPayloadValue("executionPrice");
-                        if (priceObj instanceof BigDecimal) {
-                            saga.setExecutionPrice((BigDecimal) priceObj);
-                        } else if (priceObj instanceof Double) {
-                            saga.setExecutionPrice(BigDecimal.valueOf((Double) priceObj));
-                        } else if (priceObj instanceof Number) {
-                            saga.setExecutionPrice(BigDecimal.valueOf(((Number) priceObj).doubleValue()));
-                        } else if (priceObj instanceof String) {
-                            saga.setExecutionPrice(new BigDecimal((String) priceObj));
-                        }
+                        saga.setExecutionPrice(PayloadValues.toBigDecimal(event.getPayloadValue("executionPrice")));
                     }
                     break;
 
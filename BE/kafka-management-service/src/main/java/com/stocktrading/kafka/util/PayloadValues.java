@@ -0,0 +1,41 @@
+package com.stocktrading.kafka.util;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions of event payload and step data values, which arrive as whatever type the JSON or
+ * Mongo mapping produced: numbers of any width, or strings.
+ */
+public final class PayloadValues {
+
+    private PayloadValues() {
+    }
+
+    /**
+     * @return the value as an Integer, or null if it is missing or not a number
+     */
+    public static Integer toInteger(Object value) {
+        if (value instanceof Integer) {
+            return (Integer) value;
+        } else if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value as a BigDecimal, or null if it is missing or not a number
+     */
+    public static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            return new BigDecimal((String) value);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.stocktrading.marketdata.benchmark;
+
+import com.stocktrading.marketdata.websocket.MarketDataWebSocketHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects per second to /ws/market-data while many clients reconnect at once, as after a gateway
+ * restart: each operation is one connect, waiting for the send workers to deliver the initial data,
+ * followed by its disconnect.
+ * <p>
+ * With {@code snapshot=shared} the quotes don't change during the storm, so every connect reuses
+ * the encoded initial data. {@code snapshot=rebuilt} marks a new batch of quotes before every
+ * connect, the worst case where connects can hardly share an encoding; run it with {@code -t 1}
+ * for the cost of encoding the initial data once, which every connect used to pay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectStormBenchmark {
+
+    @Param({"0", "1000", "10000"})
+    public int extraSymbols;
+
+    @Param({"shared", "rebuilt"})
+    public String snapshot;
+
+    private MarketDataFixture fixture;
+    private MarketDataWebSocketHandler handler;
+    private boolean rebuild;
+    private final AtomicLong nextSessionId = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new MarketDataFixture(extraSymbols, 20);
+        handler = fixture.getHandler();
+        rebuild = "rebuilt".equals(snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long connect() throws InterruptedException {
+        if (rebuild) {
+            handler.onBatchEnd();
+        }
+
+        BenchmarkSession session = new BenchmarkSession("bench-" + nextSessionId.incrementAndGet());
+        handler.afterConnectionEstablished(session);
+        session.awaitMessages(1);
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+        return session.getBytesSent();
+    }
+}
@@ -0,0 +1,140 @@
+package com.stocktrading.marketdata.benchmark;
+
+import com.stocktrading.marketdata.config.ObjectMapperConfig;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.service.CandleAggregator;
+import com.stocktrading.marketdata.service.IndicatorEngine;
+import com.stocktrading.marketdata.service.MarketPricePublisher;
+import com.stocktrading.marketdata.service.QuoteBus;
+import com.stocktrading.marketdata.service.SymbolRegistry;
+import com.stocktrading.marketdata.service.SymbolSearchIndex;
+import com.stocktrading.marketdata.service.TopMovers;
+import com.stocktrading.marketdata.websocket.MarketDataWebSocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * The market data components wired by hand the way Spring wires them, minus the context.
+ * The simulator publishes to an in-memory producer and ticks only once, at startup; the
+ * WebSocket handler is then fed {@code historyTicks} quotes per listing directly, so every
+ * stock has a quote and a full sparkline for the initial data.
+ */
+public class MarketDataFixture {
+
+    private final QuoteBus quoteBus;
+    private final MarketPricePublisher marketPricePublisher;
+    private final SymbolRegistry symbolRegistry;
+    private final MarketDataWebSocketHandler handler;
+
+    public MarketDataFixture(int extraSymbols, int historyTicks) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        symbolRegistry = new SymbolRegistry();
+        ReflectionTestUtils.setField(symbolRegistry, "resource", "symbols.csv");
+        ReflectionTestUtils.setField(symbolRegistry, "extraSymbols", extraSymbols);
+        symbolRegistry.init();
+
+        MockProducer<String, Object> producer = new MockProducer<String, Object>(true, new StringSerializer(),
+                new JsonSerializer<>(JacksonUtils.enhancedObjectMapper())) {
+            @Override
+            public void close(Duration timeout) {
+                // KafkaTemplate closes its producer after every send; keep this one open
+            }
+        };
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(() -> producer);
+
+        marketPricePublisher = new MarketPricePublisher(kafkaTemplate, meterRegistry, symbolRegistry);
+        ReflectionTestUtils.setField(marketPricePublisher, "marketPriceUpdatesTopic", "market.price.updates");
+        ReflectionTestUtils.setField(marketPricePublisher, "historyCapacity", 1024);
+        ReflectionTestUtils.setField(marketPricePublisher, "defaultHistoryPoints", 50);
+        ReflectionTestUtils.setField(marketPricePublisher, "intervalMs", Duration.ofDays(1).toMillis());
+        ReflectionTestUtils.setField(marketPricePublisher, "workerCount", 1);
+        ReflectionTestUtils.setField(marketPricePublisher, "volatility", 0.0115);
+        ReflectionTestUtils.setField(marketPricePublisher, "sectorCorrelation", 0.5);
+        ReflectionTestUtils.setField(marketPricePublisher, "seed", 42L);
+        marketPricePublisher.init();
+
+        quoteBus = new QuoteBus();
+        ReflectionTestUtils.setField(quoteBus, "size", 1024);
+        quoteBus.init();
+
+        CandleAggregator candleAggregator = new CandleAggregator(quoteBus);
+        ReflectionTestUtils.setField(candleAggregator, "capacity", 720);
+        candleAggregator.init();
+
+        TopMovers topMovers = new TopMovers(quoteBus, marketPricePublisher, symbolRegistry);
+        ReflectionTestUtils.setField(topMovers, "size", 20);
+        topMovers.init();
+
+        SymbolSearchIndex symbolSearchIndex = new SymbolSearchIndex(symbolRegistry);
+        ReflectionTestUtils.setField(symbolSearchIndex, "maxResults", 50);
+        symbolSearchIndex.init();
+
+        IndicatorEngine indicatorEngine = new IndicatorEngine(quoteBus, marketPricePublisher, symbolRegistry);
+        ReflectionTestUtils.setField(indicatorEngine, "smaPeriod", 20);
+        ReflectionTestUtils.setField(indicatorEngine, "emaPeriod", 20);
+        ReflectionTestUtils.setField(indicatorEngine, "rsiPeriod", 14);
+        ReflectionTestUtils.setField(indicatorEngine, "bollingerPeriod", 20);
+        ReflectionTestUtils.setField(indicatorEngine, "bollingerWidth", 2.0);
+        indicatorEngine.init();
+
+        handler = new MarketDataWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "objectMapper", new ObjectMapperConfig().objectMapper());
+        ReflectionTestUtils.setField(handler, "marketPricePublisher", marketPricePublisher);
+        ReflectionTestUtils.setField(handler, "candleAggregator", candleAggregator);
+        ReflectionTestUtils.setField(handler, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(handler, "symbolRegistry", symbolRegistry);
+        ReflectionTestUtils.setField(handler, "quoteBus", quoteBus);
+        ReflectionTestUtils.setField(handler, "topMovers", topMovers);
+        ReflectionTestUtils.setField(handler, "symbolSearchIndex", symbolSearchIndex);
+        ReflectionTestUtils.setField(handler, "indicatorEngine", indicatorEngine);
+        ReflectionTestUtils.setField(handler, "historyCapacity", 1024);
+        ReflectionTestUtils.setField(handler, "maxFilterResults", 50);
+        ReflectionTestUtils.setField(handler, "sendThreads", 4);
+        ReflectionTestUtils.setField(handler, "maxBufferedBytes", 524288);
+        ReflectionTestUtils.setField(handler, "slowSessionTimeoutMs", 5000L);
+        handler.init();
+
+        long now = System.currentTimeMillis() - historyTicks * 15000L;
+        for (int tick = 1; tick <= historyTicks; tick++) {
+            for (Listing listing : symbolRegistry.getListings()) {
+                handler.onQuote(quote(listing, tick, now + tick * 15000L));
+            }
+            handler.onBatchEnd();
+        }
+    }
+
+    public MarketDataWebSocketHandler getHandler() {
+        return handler;
+    }
+
+    public SymbolRegistry getSymbolRegistry() {
+        return symbolRegistry;
+    }
+
+    public void close() {
+        handler.shutdown();
+        quoteBus.shutdown();
+        marketPricePublisher.shutdown();
+    }
+
+    /**
+     * A quote of a listing drifting around its reference price
+     */
+    public static Quote quote(Listing listing, int tick, long epochMillis) {
+        double price = listing.getReferencePrice() * (1 + 0.01 * Math.sin(tick + listing.getId()));
+        BigDecimal last = BigDecimal.valueOf(price).setScale(2, BigDecimal.ROUND_HALF_UP);
+        return new Quote(listing.getSymbol(), listing.getId(), last,
+                last.subtract(BigDecimal.valueOf(0.01)), last.add(BigDecimal.valueOf(0.01)),
+                1000 + tick, BigDecimal.ZERO, BigDecimal.ZERO, epochMillis);
+    }
+}
@@ -3,8 +3,9 @@ package com.stocktrading.marketdata.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.project.kafkamessagemodels.model.CommandMessage;
-import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.marketdata.model.Quote;
 import com.stocktrading.marketdata.model.StockUpdate;
+import com.stocktrading.marketdata.service.SymbolRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
@@ -34,6 +35,7 @@ import java.util.Map;
 public class KafkaConfig {
 
     private final ObjectMapper objectMapper;
+    private final SymbolRegistry symbolRegistry;
 
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
@@ -44,6 +46,18 @@ public class KafkaConfig {
     @Value("${kafka.topics.market-price-updates:market.price.updates}")
     private String marketPriceUpdatesTopic;
 
+    @Value("${market.data.feed.poll-records:2000}")
+    private int feedPollRecords;
+
+    @Value("${spring.kafka.producer.linger-ms:5}")
+    private int producerLingerMs;
+
+    @Value("${spring.kafka.producer.batch-size:65536}")
+    private int producerBatchSize;
+
+    @Value("${spring.kafka.producer.compression-type:lz4}")
+    private String producerCompressionType;
+
 
     @Value("${kafka.topics.market-commands.sell:market.commands.order-sell}")
     private String marketCommandsSellTopic;
@@ -111,6 +125,10 @@ public class KafkaConfig {
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        // The simulator publishes a whole round of ticks at once; let the producer batch and compress them
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, producerLingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, producerBatchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompressionType);
         configProps.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, true);
 
         return new DefaultKafkaProducerFactory<>(configProps);
@@ -127,33 +145,32 @@ public class KafkaConfig {
     }
 
 
+    /**
+     * Consumer of the market price feed: records are decoded straight into quotes, once, and handed
+     * to the listener a poll at a time. A new consumer group starts from the latest ticks; clients
+     * are warmed from the simulator's last values instead of a replay of the topic.
+     */
     @Bean
-    public ConsumerFactory<String, EventMessage> eventMessageConsumerFactory() {
+    public ConsumerFactory<String, Quote> quoteConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class.getName());
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, "com.project.kafkamessagemodels.model.EventMessage");
-        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, true);
-        props.put(JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, feedPollRecords);
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new QuoteDeserializer(symbolRegistry));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, EventMessage> eventMessageListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, EventMessage> factory =
+    public ConcurrentKafkaListenerContainerFactory<String, Quote> quoteListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Quote> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(eventMessageConsumerFactory());
-        factory.setConcurrency(3);
-        factory.getContainerProperties().setAckMode(
-                org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.setConsumerFactory(quoteConsumerFactory());
+        // One consumer thread publishes into the quote bus, which keeps ticks in partition order
+        factory.setConcurrency(1);
+        factory.setBatchListener(true);
         factory.setCommonErrorHandler(errorHandler());
 
         return factory;
     }
-}
\ No newline at end of file
+}
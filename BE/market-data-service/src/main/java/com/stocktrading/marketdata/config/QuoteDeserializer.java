@@ -0,0 +1,169 @@
+package com.stocktrading.marketdata.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.service.SymbolRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Decodes a MARKET_PRICES_UPDATED event straight into a {@link Quote}. The JSON is streamed and
+ * only the quote fields of the payload are read, so no EventMessage or payload map is built.
+ * Records of other types, failed events and malformed records decode to null.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class QuoteDeserializer implements Deserializer<Quote> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SymbolRegistry symbolRegistry;
+
+    @Override
+    public Quote deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            String type = null;
+            boolean success = true;
+            long eventMillis = -1;
+            QuoteFields fields = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field)) {
+                    type = parser.getValueAsString();
+                } else if ("success".equals(field)) {
+                    success = value != JsonToken.VALUE_FALSE;
+                } else if ("timestamp".equals(field)) {
+                    eventMillis = epochMillisOf(parser, value);
+                } else if ("payload".equals(field) && value == JsonToken.START_OBJECT) {
+                    fields = readPayload(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (!"MARKET_PRICES_UPDATED".equals(type) || !success || fields == null
+                    || fields.symbol == null || fields.price == null) {
+                return null;
+            }
+            return fields.toQuote(eventMillis);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Skipping undecodable market price record from {}: {}", topic, e.getMessage());
+            return null;
+        }
+    }
+
+    private QuoteFields readPayload(JsonParser parser) throws IOException {
+        QuoteFields fields = new QuoteFields();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "symbol":
+                    fields.symbol = parser.getValueAsString();
+                    break;
+                case "price":
+                    fields.price = decimalValue(parser);
+                    break;
+                case "bidPrice":
+                    fields.bidPrice = decimalValue(parser);
+                    break;
+                case "askPrice":
+                    fields.askPrice = decimalValue(parser);
+                    break;
+                case "volume":
+                    fields.volume = parser.getValueAsLong();
+                    break;
+                case "change":
+                    fields.change = decimalValue(parser);
+                    break;
+                case "changePercent":
+                    fields.changePercent = decimalValue(parser);
+                    break;
+                case "timestamp":
+                    fields.timestamp = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * The event's own timestamp, written by Jackson as decimal epoch seconds, or as epoch millis
+     * when nanosecond timestamps are off. Much cheaper to read than the ISO-8601 payload field.
+     */
+    private static long epochMillisOf(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_FLOAT) {
+            // Exact decimal: going through a double can land just under the millisecond, e.g. .123 -> .1229999
+            return parser.getDecimalValue().movePointRight(3).longValue();
+        } else if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        parser.skipChildren();
+        return -1;
+    }
+
+    private static BigDecimal decimalValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_STRING:
+                return new BigDecimal(parser.getText());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Quote fields as read from the payload, in whatever order they come
+     */
+    private class QuoteFields {
+        String symbol;
+        BigDecimal price;
+        BigDecimal bidPrice;
+        BigDecimal askPrice;
+        long volume;
+        BigDecimal change;
+        BigDecimal changePercent;
+        String timestamp;
+
+        Quote toQuote(long eventMillis) {
+            // Listed symbols share the registry's string instead of keeping one per tick
+            Listing listing = symbolRegistry.get(symbol);
+            return new Quote(listing != null ? listing.getSymbol() : symbol, listing != null ? listing.getId() : -1,
+                    price, bidPrice, askPrice, volume, change, changePercent,
+                    eventMillis >= 0 ? eventMillis : epochMillis());
+        }
+
+        private long epochMillis() {
+            if (timestamp != null) {
+                try {
+                    return Instant.parse(timestamp).toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    log.debug("Unparseable timestamp {}, using the current time", timestamp);
+                }
+            }
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package com.stocktrading.marketdata.controller;
 
+import com.stocktrading.marketdata.model.Candle;
+import com.stocktrading.marketdata.model.CandleInterval;
+import com.stocktrading.marketdata.service.CandleAggregator;
+import com.stocktrading.marketdata.service.IndicatorEngine;
+import com.stocktrading.marketdata.model.Indicators;
+import com.stocktrading.marketdata.model.Listing;
 import com.stocktrading.marketdata.service.MarketPricePublisher;
+import com.stocktrading.marketdata.service.SymbolRegistry;
+import com.stocktrading.marketdata.service.SymbolSearchIndex;
+import com.stocktrading.marketdata.service.TopMovers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +30,11 @@ import java.util.Map;
 public class StockController {
 
     private final MarketPricePublisher marketPricePublisher;
+    private final CandleAggregator candleAggregator;
+    private final TopMovers topMovers;
+    private final SymbolSearchIndex symbolSearchIndex;
+    private final SymbolRegistry symbolRegistry;
+    private final IndicatorEngine indicatorEngine;
 
     /**
      * Get all stocks data
@@ -32,11 +49,61 @@ public class StockController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Last-value snapshot of every listing, for price consumers warming their caches on startup
+     * before they process live ticks. Each quote carries the timestamp of its tick, so a consumer
+     * can keep whichever of the snapshot and a live tick is newer.
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshot() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("asOf", Instant.now().toString());
+        response.put("quotes", marketPricePublisher.getAllStockData());
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Top gainers, losers and most active stocks by their latest tick, each list at most
+     * {@code limit} long (capped at the configured ranking size)
+     */
+    @GetMapping("/movers")
+    public ResponseEntity<Map<String, Object>> getMovers(@RequestParam(defaultValue = "10") int limit) {
+        Map<String, Object> response = topMovers.getMovers(Math.min(limit, topMovers.getSize()));
+        response.put("asOf", Instant.now().toString());
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Search stocks by symbol or company name, best matches first: exact symbol, symbol prefix,
+     * name word prefix, then substrings of either
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(@RequestParam String q,
+                                                      @RequestParam(defaultValue = "20") int limit) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Listing listing : symbolSearchIndex.search(q, limit)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("symbol", listing.getSymbol());
+            result.put("name", listing.getName());
+            result.put("sector", symbolRegistry.getSectors().get(listing.getSectorId()));
+            results.add(result);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("query", q);
+        response.put("results", results);
+
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Get data for a specific stock
      */
     @GetMapping("/{symbol}")
-    public ResponseEntity<Map<String, Object>> getStockData(@PathVariable String symbol) {
+    public ResponseEntity<Map<String, Object>> getStockData(@PathVariable String symbol,
+                                                            @RequestParam(required = false) Integer historyPoints) {
         Map<String, Object> stockData = marketPricePublisher.getCurrentStockData(symbol);
 
         if (stockData == null) {
@@ -44,11 +111,78 @@ public class StockController {
         }
 
         // Add historical data
-        stockData.put("history", marketPricePublisher.getHistoricalData(symbol));
+        stockData.put("history", historyPoints != null
+                ? marketPricePublisher.getHistoricalData(symbol, historyPoints)
+                : marketPricePublisher.getHistoricalData(symbol));
 
         return ResponseEntity.ok(stockData);
     }
 
+    /**
+     * Get OHLCV candles for a stock. {@code from} and {@code to} bound the bar start times and
+     * take either an ISO-8601 instant or epoch milliseconds; the bar still being built is
+     * returned separately as {@code current}.
+     */
+    @GetMapping("/{symbol}/candles")
+    public ResponseEntity<Map<String, Object>> getCandles(@PathVariable String symbol,
+                                                          @RequestParam(defaultValue = "1m") String interval,
+                                                          @RequestParam(required = false) String from,
+                                                          @RequestParam(required = false) String to) {
+        CandleInterval candleInterval = CandleInterval.fromCode(interval);
+        if (candleInterval == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown interval: " + interval));
+        }
+        if (marketPricePublisher.getCurrentStockData(symbol) == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        long fromMillis;
+        long toMillis;
+        try {
+            fromMillis = from != null ? parseTime(from) : Long.MIN_VALUE;
+            toMillis = to != null ? parseTime(to) : Long.MAX_VALUE;
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid time: " + e.getParsedString()));
+        }
+
+        List<Candle> candles = candleAggregator.getCandles(symbol, candleInterval, fromMillis, toMillis);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("symbol", symbol);
+        response.put("interval", candleInterval.getCode());
+        response.put("candles", candles);
+        response.put("current", candleAggregator.getCurrentCandle(symbol, candleInterval));
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * SMA, EMA, RSI, VWAP and Bollinger bands of a stock as of its latest tick, with the periods
+     * they are computed over. Indicators whose period hasn't filled yet are null.
+     */
+    @GetMapping("/{symbol}/indicators")
+    public ResponseEntity<Map<String, Object>> getIndicators(@PathVariable String symbol) {
+        Indicators indicators = indicatorEngine.getIndicators(symbol);
+        if (indicators == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("symbol", symbol);
+        response.put("indicators", indicators);
+        response.put("settings", indicatorEngine.getSettings());
+
+        return ResponseEntity.ok(response);
+    }
+
+    private static long parseTime(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Instant.parse(value).toEpochMilli();
+        }
+    }
+
     /**
      * Add a new stock to track
      */
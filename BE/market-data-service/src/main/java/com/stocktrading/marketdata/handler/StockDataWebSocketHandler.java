@@ -2,119 +2,235 @@ package com.stocktrading.marketdata.handler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
 import com.stocktrading.marketdata.model.StockUpdate;
+import com.stocktrading.marketdata.service.MarketPricePublisher;
+import com.stocktrading.marketdata.service.QuoteBus;
+import com.stocktrading.marketdata.service.QuoteListener;
+import com.stocktrading.marketdata.service.SymbolRegistry;
+import com.stocktrading.marketdata.websocket.BinaryQuoteEncoder;
+import com.stocktrading.marketdata.websocket.SessionOutbox;
+import com.stocktrading.marketdata.websocket.SymbolSubscriptions;
+import com.stocktrading.marketdata.websocket.WireFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
-public class StockDataWebSocketHandler extends TextWebSocketHandler {
+public class StockDataWebSocketHandler extends TextWebSocketHandler implements QuoteListener, SubProtocolCapable {
     private static final Logger logger = LoggerFactory.getLogger(StockDataWebSocketHandler.class);
 
     // Thread-safe set to keep track of all active sessions
     private final Set<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    // Which sessions want which symbols
+    private final SymbolSubscriptions subscriptions = new SymbolSubscriptions();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    // Company names, and symbol IDs for binary clients
+    private final SymbolRegistry symbolRegistry;
+    // Symbol dictionary frame for binary clients; the registry never changes, so it is encoded once
+    private final byte[] dictionaryFrame;
+    // Last value of every listing, sent to clients before the live updates
+    private final MarketPricePublisher marketPricePublisher;
+    // Live quotes, decoded once for all the feeds
+    private final QuoteBus quoteBus;
+    private final MeterRegistry meterRegistry;
+
+    // Session ID -> bounded, conflating outbound queue, drained by the send workers so the quote bus
+    // thread never waits on a socket
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private ExecutorService sendExecutor;
+    private Counter evictedCounter;
+    private Counter droppedCounter;
+
+    @Value("${market.data.websocket.send-threads:4}")
+    private int sendThreads;
+
+    @Value("${market.data.websocket.session.max-buffered-bytes:524288}")
+    private int maxBufferedBytes;
+
+    @Value("${market.data.websocket.session.slow-timeout-ms:5000}")
+    private long slowSessionTimeoutMs;
+
+    public StockDataWebSocketHandler(SymbolRegistry symbolRegistry, MarketPricePublisher marketPricePublisher,
+                                     QuoteBus quoteBus, MeterRegistry meterRegistry) {
+        this.symbolRegistry = symbolRegistry;
+        this.marketPricePublisher = marketPricePublisher;
+        this.quoteBus = quoteBus;
+        this.meterRegistry = meterRegistry;
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (Listing listing : symbolRegistry.getListings()) {
+            dictionary.put(listing.getSymbol(), listing.getId());
+        }
+        this.dictionaryFrame = BinaryQuoteEncoder.dictionary(dictionary);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        sendExecutor = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "stock-data-ws-send-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictedCounter = Counter.builder("market.data.websocket.sessions.evicted")
+                .description("WebSocket sessions closed for falling behind the market data feed")
+                .tag("endpoint", "stock-data")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("market.data.websocket.dropped")
+                .description("Messages replaced by a newer one, or refused by a full queue, before they were sent")
+                .tag("endpoint", "stock-data")
+                .register(meterRegistry);
+        Gauge.builder("market.data.websocket.queue-depth.total", outboxes,
+                        queues -> queues.values().stream().mapToInt(SessionOutbox::size).sum())
+                .description("Messages waiting to be sent, across all WebSocket sessions")
+                .tag("endpoint", "stock-data")
+                .register(meterRegistry);
+        Gauge.builder("market.data.websocket.queue-depth.max", outboxes,
+                        queues -> queues.values().stream().mapToInt(SessionOutbox::size).max().orElse(0))
+                .description("Messages waiting to be sent to the WebSocket session furthest behind")
+                .tag("endpoint", "stock-data")
+                .register(meterRegistry);
+        quoteBus.subscribe("stock-data-ws", this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return WireFormat.SUBPROTOCOLS;
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        WireFormat format = WireFormat.negotiate(session);
+        SessionOutbox outbox = new SessionOutbox(session, sendExecutor, maxBufferedBytes, droppedCounter);
+        outboxes.put(session.getId(), outbox);
         sessions.add(session);
-        logger.info("WebSocket connection established: {}, Total sessions: {}", session.getId(), sessions.size());
+        subscriptions.register(session);
+
+        // Updates are queued from here on, but only sent after the symbol dictionary for binary clients
+        // and the last value of every symbol, which starts the client from a full table. The simulator
+        // updates its last values before the ticks go through Kafka, so none is older than a live update.
+        List<WebSocketMessage<?>> firstMessages = new ArrayList<>();
+        if (format == WireFormat.BINARY) {
+            firstMessages.add(new BinaryMessage(dictionaryFrame));
+        }
+        for (Listing listing : symbolRegistry.getListings()) {
+            WebSocketMessage<?> lastValue = lastValueMessage(session, listing.getSymbol());
+            if (lastValue != null) {
+                firstMessages.add(lastValue);
+            }
+        }
+        outbox.start(firstMessages);
+        logger.info("WebSocket connection established: {} ({}), Total sessions: {}",
+                session.getId(), format, sessions.size());
     }
 
+    /**
+     * Handles {"action": "subscribe" | "unsubscribe", "symbols": [...]} messages and replies with
+     * the session's subscriptions, followed by the last value of each symbol subscribed to.
+     * Sessions that never subscribe receive every symbol.
+     */
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        logger.warn("Received unexpected message from {}: {}", session.getId(), message.getPayload());
+        Set<String> subscribed;
+        List<String> added = List.of();
+        try {
+            Map<String, Object> request = objectMapper.readValue(message.getPayload(), Map.class);
+            Object action = request.get("action");
+            if ("subscribe".equals(action)) {
+                added = SymbolSubscriptions.symbolsOf(request);
+                subscribed = subscriptions.subscribe(session, added);
+            } else if ("unsubscribe".equals(action)) {
+                subscribed = subscriptions.unsubscribe(session, SymbolSubscriptions.symbolsOf(request));
+            } else {
+                subscribed = null;
+            }
+        } catch (JsonProcessingException e) {
+            subscribed = null;
+        }
+
+        // Replies go through the session's outbox, so a slow socket never holds up this thread
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
         try {
-            session.sendMessage(new TextMessage("{\"warning\": \"Messages from client are not processed.\"}"));
+            if (subscribed != null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("type", "subscriptions");
+                response.put("symbols", subscribed);
+                outbox.send(new TextMessage(objectMapper.writeValueAsString(response)));
+                sendLastValues(session, outbox, added);
+            } else {
+                logger.warn("Received unexpected message from {}: {}", session.getId(), message.getPayload());
+                outbox.send(new TextMessage("{\"warning\": \"Only subscribe and unsubscribe messages are processed.\"}"));
+            }
         } catch (IOException e) {
-            logger.error("Failed to send warning message to session {}", session.getId(), e);
+            logger.error("Failed to reply to session {}", session.getId(), e);
         }
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         logger.error("WebSocket transport error for session {}: {}", session.getId(), exception.getMessage());
-        sessions.remove(session);
+        removeSession(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
+        removeSession(session);
         logger.info("WebSocket connection closed: {} with status {}, Total sessions: {}",
                 session.getId(), status, sessions.size());
     }
 
     /**
-     * Receives EventMessage from Kafka, converts it to StockUpdate, and broadcasts to WebSocket clients
+     * Receives a quote from the quote bus, converts it to StockUpdate, and broadcasts to WebSocket clients
      */
-    @KafkaListener(
-            topics = "${kafka.topics.market-price-updates}",
-            containerFactory = "eventMessageListenerContainerFactory",
-            groupId = "stock-updates-consumer-group"
-    )
-    public void broadcastStockUpdate(EventMessage eventMessage, Acknowledgment ack) {
-        try {
-            if (eventMessage == null || !eventMessage.getSuccess()) {
-                logger.warn("Received null or unsuccessful event message");
-                ack.acknowledge();
-                return;
-            }
-
-            // Extract data from EventMessage payload
-            Map<String, Object> payload = eventMessage.getPayload();
-            if (payload == null) {
-                logger.warn("Event message has null payload");
-                ack.acknowledge();
-                return;
-            }
-
-            // Convert EventMessage to StockUpdate
-            StockUpdate update = new StockUpdate();
-            update.setSymbol(getStringValue(payload, "symbol"));
-            update.setPrice(getBigDecimalValue(payload, "price"));
-            update.setBidPrice(getBigDecimalValue(payload, "bidPrice"));
-            update.setAskPrice(getBigDecimalValue(payload, "askPrice"));
-            update.setVolume(getLongValue(payload, "volume"));
-            update.setTimestamp(getStringValue(payload, "timestamp"));
-            update.setChange(getBigDecimalValue(payload, "change"));
-            update.setChangePercent(getBigDecimalValue(payload, "changePercent"));
-
-            // Set company name based on symbol (using the same logic as in your existing code)
-            update.setCompany(getCompanyName(update.getSymbol()));
-
-            // Broadcast the update
-            broadcastToClients(update);
-
-            // Acknowledge the message
-            ack.acknowledge();
-
-        } catch (Exception e) {
-            logger.error("Error processing stock update from EventMessage: {}", e.getMessage(), e);
-            // Acknowledge despite error to prevent redelivery attempts for parsing issues
-            ack.acknowledge();
-        }
+    @Override
+    public void onQuote(Quote quote) {
+        broadcastToClients(quote);
     }
 
     /**
-     * Broadcasts the stock update to all connected WebSocket clients
+     * Queues the stock update for the WebSocket clients subscribed to its symbol. Sending happens on
+     * the send workers: an update still queued for a session is replaced by the newer one, and sessions
+     * that keep falling behind are evicted.
      */
-    private void broadcastToClients(StockUpdate update) {
-        if (update == null || update.getSymbol() == null) {
-            return;
-        }
+    private void broadcastToClients(Quote quote) {
+        StockUpdate update = toStockUpdate(quote);
 
         TextMessage message;
         try {
@@ -126,135 +242,108 @@ public class StockDataWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        int sentCount = 0;
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                try {
-                    session.sendMessage(message);
-                    sentCount++;
-                } catch (IOException e) {
-                    logger.error("Failed to send message to session {}. Error: {}",
-                            session.getId(), e.getMessage());
-                    sessions.remove(session);
-                }
+        byte[] binaryMessage = encodeBinary(quote);
+
+        List<WebSocketSession> sessionsToRemove = new ArrayList<>();
+        List<WebSocketSession> sessionsToEvict = new ArrayList<>();
+        subscriptions.forEachSession(update.getSymbol(), session -> {
+            SessionOutbox outbox = outboxes.get(session.getId());
+            if (!session.isOpen() || outbox == null) {
+                sessionsToRemove.add(session);
+            } else if (outbox.isSlowerThan(slowSessionTimeoutMs)) {
+                sessionsToEvict.add(session);
+            } else if (binaryMessage != null && WireFormat.of(session) == WireFormat.BINARY) {
+                // Sending consumes the buffer, so each session gets its own wrapper of the shared bytes
+                outbox.offer(update.getSymbol(), new BinaryMessage(binaryMessage));
             } else {
-                logger.debug("Removing closed session found during broadcast: {}", session.getId());
-                sessions.remove(session);
+                outbox.offer(update.getSymbol(), message);
             }
-        }
+        });
 
-        if (sentCount > 0) {
-            logger.trace("Broadcasted update for {} to {} sessions", update.getSymbol(), sentCount);
+        if (!sessionsToRemove.isEmpty()) {
+            logger.debug("Removing {} closed sessions found during broadcast", sessionsToRemove.size());
+            sessionsToRemove.forEach(this::removeSession);
         }
+        sessionsToEvict.forEach(this::evictSession);
     }
 
     /**
-     * Helper method to get a company name from a stock symbol
+     * Queue the last known quote of each of {@code symbols} for one session, under the same key as
+     * its live updates so a newer one replaces it. A wildcard or unlisted symbol has no last value
+     * and is skipped.
      */
-    private String getCompanyName(String symbol) {
-        if (symbol == null) return "Unknown Company";
-
-        switch (symbol) {
-            case "AAPL": return "Apple Inc";
-            case "MSFT": return "Microsoft Corporation";
-            case "GOOGL": return "Alphabet Inc";
-            case "AMZN": return "Amazon.com Inc";
-            case "TSLA": return "Tesla Inc";
-            case "META": return "Meta Platforms Inc";
-            case "NVDA": return "NVIDIA Corporation";
-            case "JPM": return "JPMorgan Chase & Co.";
-            case "V": return "Visa Inc";
-            case "JNJ": return "Johnson & Johnson";
-            case "ABBV": return "AbbVie Inc.";
-            case "WMT": return "Walmart Inc.";
-            case "PG": return "Procter & Gamble Co.";
-            case "MA": return "Mastercard Inc.";
-            case "UNH": return "UnitedHealth Group Inc.";
-            default: return symbol + " Corp";
+    private void sendLastValues(WebSocketSession session, SessionOutbox outbox, Collection<String> symbols)
+            throws IOException {
+        for (String symbol : symbols) {
+            WebSocketMessage<?> lastValue = lastValueMessage(session, symbol);
+            if (lastValue != null) {
+                outbox.offer(symbol, lastValue);
+            }
         }
     }
 
-    // Utility methods for safe extraction of values from the payload
-
-    private String getStringValue(Map<String, Object> payload, String key) {
-        Object value = payload.get(key);
-        return value != null ? String.valueOf(value) : null;
+    /**
+     * The last known quote of a symbol in the session's wire format, or null if there is none
+     */
+    private WebSocketMessage<?> lastValueMessage(WebSocketSession session, String symbol)
+            throws JsonProcessingException {
+        Quote lastQuote = marketPricePublisher.getLastQuote(symbol);
+        if (lastQuote == null) {
+            return null;
+        }
+        byte[] binary = WireFormat.of(session) == WireFormat.BINARY ? encodeBinary(lastQuote) : null;
+        return binary != null
+                ? new BinaryMessage(binary)
+                : new TextMessage(objectMapper.writeValueAsString(toStockUpdate(lastQuote)));
     }
 
-    private BigDecimal getBigDecimalValue(Map<String, Object> payload, String key) {
-        Object value = payload.get(key);
-        if (value == null) return null;
-
-        if (value instanceof BigDecimal) {
-            return (BigDecimal) value;
-        } else if (value instanceof Number) {
-            return BigDecimal.valueOf(((Number) value).doubleValue());
-        } else if (value instanceof String) {
+    /**
+     * Drop a session that can't keep up. The close runs on a send worker since it may wait
+     * for a send in progress.
+     */
+    private void evictSession(WebSocketSession session) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        logger.warn("Evicting slow WebSocket session {} ({} messages queued, {} dropped)", session.getId(),
+                outbox != null ? outbox.size() : 0, outbox != null ? outbox.getDropped() : 0);
+        removeSession(session);
+        evictedCounter.increment();
+        sendExecutor.execute(() -> {
             try {
-                return new BigDecimal((String) value);
-            } catch (NumberFormatException e) {
-                logger.warn("Could not convert {} to BigDecimal", value);
-                return null;
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                logger.warn("Error closing slow WebSocket session {}: {}", session.getId(), e.getMessage());
             }
-        }
-        return null;
+        });
     }
 
-    private Long getLongValue(Map<String, Object> payload, String key) {
-        Object value = payload.get(key);
-        if (value == null) return null;
-
-        if (value instanceof Long) {
-            return (Long) value;
-        } else if (value instanceof Number) {
-            return ((Number) value).longValue();
-        } else if (value instanceof String) {
-            try {
-                return Long.parseLong((String) value);
-            } catch (NumberFormatException e) {
-                logger.warn("Could not convert {} to Long", value);
-                return null;
-            }
+    private void removeSession(WebSocketSession session) {
+        sessions.remove(session);
+        subscriptions.remove(session);
+        SessionOutbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            outbox.close();
         }
-        return null;
     }
+
+    private StockUpdate toStockUpdate(Quote quote) {
+        return new StockUpdate(quote.getSymbol(), getCompanyName(quote.getSymbol()), quote.getPrice(),
+                quote.getBidPrice(), quote.getAskPrice(), quote.getVolume(), quote.getTimestamp(),
+                quote.getChange(), quote.getChangePercent());
+    }
+
     /**
-     * Processes an EventMessage and broadcasts it to clients
-     * This method is used by KafkaEventListener for compatibility
+     * Binary quote frame, or null for unlisted symbols: they have no ID, so binary clients get
+     * those as JSON
      */
-    public void processAndBroadcastEvent(EventMessage eventMessage) {
-        try {
-            if (eventMessage == null || !eventMessage.getSuccess()) {
-                logger.warn("Received null or unsuccessful event message");
-                return;
-            }
-
-            // Extract data from EventMessage payload
-            Map<String, Object> payload = eventMessage.getPayload();
-            if (payload == null) {
-                logger.warn("Event message has null payload");
-                return;
-            }
+    private byte[] encodeBinary(Quote quote) {
+        return quote.getSymbolId() < 0 ? null : BinaryQuoteEncoder.quote(quote.getSymbolId(), quote.getPrice(),
+                quote.getBidPrice(), quote.getAskPrice(), quote.getVolume(), quote.getEpochMillis());
+    }
 
-            // Convert EventMessage to StockUpdate
-            StockUpdate update = new StockUpdate();
-            update.setSymbol(getStringValue(payload, "symbol"));
-            update.setPrice(getBigDecimalValue(payload, "price"));
-            update.setBidPrice(getBigDecimalValue(payload, "bidPrice"));
-            update.setAskPrice(getBigDecimalValue(payload, "askPrice"));
-            update.setVolume(getLongValue(payload, "volume"));
-            update.setTimestamp(getStringValue(payload, "timestamp"));
-            update.setChange(getBigDecimalValue(payload, "change"));
-            update.setChangePercent(getBigDecimalValue(payload, "changePercent"));
-
-            // Set company name based on symbol
-            update.setCompany(getCompanyName(update.getSymbol()));
-
-            // Broadcast the update
-            broadcastToClients(update);
-
-        } catch (Exception e) {
-            logger.error("Error processing stock update from EventMessage: {}", e.getMessage(), e);
-        }
+    /**
+     * Helper method to get a company name from a stock symbol
+     */
+    private String getCompanyName(String symbol) {
+        return symbol != null ? symbolRegistry.nameOf(symbol) : "Unknown Company";
     }
-}
\ No newline at end of file
+}
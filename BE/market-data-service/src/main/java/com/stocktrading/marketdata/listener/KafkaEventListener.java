@@ -1,46 +1,45 @@
 package com.stocktrading.marketdata.listener;
 
-import com.project.kafkamessagemodels.model.EventMessage;
-import com.stocktrading.marketdata.handler.StockDataWebSocketHandler;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.service.QuoteBus;
 import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 public class KafkaEventListener {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaEventListener.class);
 
-    private final StockDataWebSocketHandler webSocketHandler;
+    private final QuoteBus quoteBus;
 
     /**
-     * Listens to market price data events and forwards them to the WebSocket handler
-     * This listener operates on a different topic than the one in StockDataWebSocketHandler
+     * The service's only consumer of market prices. Each record is decoded once into a Quote by the
+     * container's deserializer, and the quotes of a poll are published to the quote bus, which fans
+     * them out to the WebSocket feeds and the candle aggregator.
      */
     @KafkaListener(
-            topics = "market.price.data",
-            containerFactory = "kafkaListenerContainerFactory",
-            groupId = "${spring.kafka.consumer.group-id}-market-data"
+            topics = {"${kafka.topics.market-price-updates:market.price.updates}", "${kafka.topics.market-price-data:market.price.data}"},
+            containerFactory = "quoteListenerContainerFactory",
+            groupId = "${spring.kafka.consumer.group-id}-quotes"
     )
-    public void listenStockUpdates(EventMessage event, Acknowledgment ack) {
-        try {
-            logger.debug("Received event message from market.price.data topic: {}", event.getType());
-
-            // Forward the event message to the WebSocketHandler for processing
-            // This effectively delegates to the same processing logic
-            webSocketHandler.processAndBroadcastEvent(event);
-
-            // Acknowledge the message
-            ack.acknowledge();
-
-        } catch (Exception e) {
-            logger.error("Error processing stock update received from Kafka: ", e);
-            // Acknowledge despite error to prevent endless reprocessing
-            ack.acknowledge();
+    public void listenStockUpdates(List<ConsumerRecord<String, Quote>> records) {
+        List<Quote> quotes = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Quote> record : records) {
+            // Records that aren't price updates, or couldn't be decoded, come through as null
+            if (record.value() != null) {
+                quotes.add(record.value());
+            }
         }
+
+        logger.debug("Received {} quotes from the market price feed", quotes.size());
+        quoteBus.publishAll(quotes);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.stocktrading.marketdata.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * One OHLCV bar
+ */
+@Getter
+@AllArgsConstructor
+public class Candle {
+    @JsonIgnore
+    private final long startMillis;
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double close;
+    private final long volume;
+    private final int ticks;
+
+    public String getStartTime() {
+        return Instant.ofEpochMilli(startMillis).toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.stocktrading.marketdata.model;
+
+/**
+ * Bar sizes kept by the candle aggregator. Bars are aligned to the epoch in UTC,
+ * so a 1d bar runs from 00:00 to 24:00 UTC.
+ */
+public enum CandleInterval {
+    ONE_SECOND("1s", 1_000L),
+    ONE_MINUTE("1m", 60_000L),
+    FIVE_MINUTES("5m", 300_000L),
+    ONE_HOUR("1h", 3_600_000L),
+    ONE_DAY("1d", 86_400_000L);
+
+    private final String code;
+    private final long millis;
+
+    CandleInterval(String code, long millis) {
+        this.code = code;
+        this.millis = millis;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Start of the bar that contains the given time
+     */
+    public long barStart(long epochMillis) {
+        return epochMillis - Math.floorMod(epochMillis, millis);
+    }
+
+    /**
+     * Look up an interval by its code, e.g. "5m"
+     *
+     * @return the interval, or null if the code is unknown
+     */
+    public static CandleInterval fromCode(String code) {
+        for (CandleInterval interval : values()) {
+            if (interval.code.equalsIgnoreCase(code)) {
+                return interval;
+            }
+        }
+        return null;
+    }
+}
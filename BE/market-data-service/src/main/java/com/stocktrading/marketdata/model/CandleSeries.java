@@ -0,0 +1,182 @@
+package com.stocktrading.marketdata.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OHLCV bars of one symbol at one interval: the bar being built plus the most recent closed bars,
+ * kept in primitive columns of a ring buffer. The columns start small and grow up to the
+ * configured capacity, so quiet symbols don't pay for a full history.
+ * Every tick is O(1): it either updates the current bar or closes it and starts a new one.
+ * Methods are synchronized; a series has one writer and occasional readers.
+ */
+public class CandleSeries {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CandleInterval interval;
+    private final int capacity;
+
+    // Closed bars; bar n lives in slot n % columns length once the columns stopped growing
+    private long[] starts;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private long[] volumes;
+    private int[] tickCounts;
+    private long closedCount;
+    // Start of the newest closed bar; ticks at or before it are too late, even once no bar is open
+    private long lastClosedStart = Long.MIN_VALUE;
+
+    // Bar being built; currentStart < 0 when there is none
+    private long currentStart = -1;
+    private double currentOpen;
+    private double currentHigh;
+    private double currentLow;
+    private double currentClose;
+    private long currentVolume;
+    private int currentTicks;
+
+    public CandleSeries(CandleInterval interval, int capacity) {
+        this.interval = interval;
+        this.capacity = capacity;
+        allocate(Math.min(INITIAL_CAPACITY, capacity));
+    }
+
+    public CandleInterval getInterval() {
+        return interval;
+    }
+
+    /**
+     * Add a tick to the series
+     *
+     * @return the bar closed by this tick, or null if the tick fell in the current bar
+     */
+    public synchronized Candle onTick(long epochMillis, double price, long volume) {
+        long barStart = interval.barStart(epochMillis);
+        if (barStart <= lastClosedStart) {
+            return null; // Late tick for a bar closed by the clock or a newer tick
+        }
+        Candle closed = null;
+
+        if (currentStart >= 0 && barStart != currentStart) {
+            if (barStart < currentStart) {
+                return null; // Late tick for a bar that is already closed
+            }
+            closed = closeCurrent();
+        }
+
+        if (currentStart < 0) {
+            currentStart = barStart;
+            currentOpen = price;
+            currentHigh = price;
+            currentLow = price;
+            currentVolume = 0;
+            currentTicks = 0;
+        }
+        currentHigh = Math.max(currentHigh, price);
+        currentLow = Math.min(currentLow, price);
+        currentClose = price;
+        currentVolume += volume;
+        currentTicks++;
+        return closed;
+    }
+
+    /**
+     * Close the current bar if its interval has ended, for symbols that stopped ticking
+     *
+     * @return the closed bar, or null if the current bar is still open
+     */
+    public synchronized Candle closeIfElapsed(long nowMillis) {
+        if (currentStart >= 0 && nowMillis >= currentStart + interval.getMillis()) {
+            return closeCurrent();
+        }
+        return null;
+    }
+
+    /**
+     * Closed bars starting in [fromMillis, toMillis], oldest first
+     */
+    public synchronized List<Candle> getClosed(long fromMillis, long toMillis) {
+        int retained = (int) Math.min(closedCount, starts.length);
+        List<Candle> result = new ArrayList<>();
+        for (long bar = closedCount - retained; bar < closedCount; bar++) {
+            int slot = slot(bar);
+            if (starts[slot] >= fromMillis && starts[slot] <= toMillis) {
+                result.add(new Candle(starts[slot], opens[slot], highs[slot], lows[slot],
+                        closes[slot], volumes[slot], tickCounts[slot]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The bar being built, or null if there is none
+     */
+    public synchronized Candle getCurrent() {
+        if (currentStart < 0) {
+            return null;
+        }
+        return new Candle(currentStart, currentOpen, currentHigh, currentLow, currentClose,
+                currentVolume, currentTicks);
+    }
+
+    private Candle closeCurrent() {
+        if (closedCount == starts.length && starts.length < capacity) {
+            grow();
+        }
+        int slot = slot(closedCount);
+        starts[slot] = currentStart;
+        opens[slot] = currentOpen;
+        highs[slot] = currentHigh;
+        lows[slot] = currentLow;
+        closes[slot] = currentClose;
+        volumes[slot] = currentVolume;
+        tickCounts[slot] = currentTicks;
+        closedCount++;
+        lastClosedStart = currentStart;
+
+        Candle closed = new Candle(currentStart, currentOpen, currentHigh, currentLow, currentClose,
+                currentVolume, currentTicks);
+        currentStart = -1;
+        return closed;
+    }
+
+    private int slot(long bar) {
+        return (int) (bar % starts.length);
+    }
+
+    /**
+     * Only called while the columns are not yet full, so slot n is still bar n
+     */
+    private void grow() {
+        int size = starts.length;
+        long[] oldStarts = starts;
+        double[] oldOpens = opens;
+        double[] oldHighs = highs;
+        double[] oldLows = lows;
+        double[] oldCloses = closes;
+        long[] oldVolumes = volumes;
+        int[] oldTickCounts = tickCounts;
+
+        allocate(Math.min(size * 2, capacity));
+        System.arraycopy(oldStarts, 0, starts, 0, size);
+        System.arraycopy(oldOpens, 0, opens, 0, size);
+        System.arraycopy(oldHighs, 0, highs, 0, size);
+        System.arraycopy(oldLows, 0, lows, 0, size);
+        System.arraycopy(oldCloses, 0, closes, 0, size);
+        System.arraycopy(oldVolumes, 0, volumes, 0, size);
+        System.arraycopy(oldTickCounts, 0, tickCounts, 0, size);
+    }
+
+    private void allocate(int size) {
+        starts = new long[size];
+        opens = new double[size];
+        highs = new double[size];
+        lows = new double[size];
+        closes = new double[size];
+        volumes = new long[size];
+        tickCounts = new int[size];
+    }
+}
@@ -0,0 +1,167 @@
+package com.stocktrading.marketdata.model;
+
+/**
+ * Streaming SMA, EMA, RSI, VWAP and Bollinger bands of one symbol. Each tick updates every
+ * indicator in constant time: the SMA and bands keep a running sum and sum of squares over a ring
+ * of the latest prices, the EMA and Wilder's RSI are recursive, and the VWAP accumulates price
+ * times volume since the start of the (UTC) trading day. The running sums are recomputed from the
+ * ring once per lap so rounding errors can't pile up, which is still constant time per tick.
+ * <p>
+ * One writer at a time; reads take a consistent {@link Indicators} snapshot.
+ */
+public class IndicatorSeries {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final String symbol;
+    private final int smaPeriod;
+    private final int emaPeriod;
+    private final int rsiPeriod;
+    private final int bollingerPeriod;
+    private final double bollingerWidth; // standard deviations
+
+    // Latest prices for the SMA and bands, oldest overwritten first
+    private final double[] window;
+    private long ticks;
+    private double smaSum;
+    private double bollingerSum;
+    private double bollingerSumOfSquares;
+
+    private double ema;
+    private double averageGain;
+    private double averageLoss;
+    private double vwapNotional;
+    private long vwapVolume;
+    private long vwapDayStart = Long.MIN_VALUE;
+
+    private double lastPrice;
+    private long lastMillis;
+
+    public IndicatorSeries(String symbol, int smaPeriod, int emaPeriod, int rsiPeriod,
+                           int bollingerPeriod, double bollingerWidth) {
+        if (smaPeriod <= 0 || emaPeriod <= 0 || rsiPeriod <= 0 || bollingerPeriod <= 0) {
+            throw new IllegalArgumentException("Indicator periods must be positive");
+        }
+        this.symbol = symbol;
+        this.smaPeriod = smaPeriod;
+        this.emaPeriod = emaPeriod;
+        this.rsiPeriod = rsiPeriod;
+        this.bollingerPeriod = bollingerPeriod;
+        this.bollingerWidth = bollingerWidth;
+        this.window = new double[Math.max(smaPeriod, bollingerPeriod)];
+    }
+
+    /**
+     * Add a tick and update every indicator. A tick older than the latest one, e.g. replayed from
+     * a previous run after warming from history, is dropped: it would land in the windows out of
+     * order, and one from an earlier day would reset the VWAP.
+     *
+     * @return false if the tick was dropped
+     */
+    public synchronized boolean onTick(long epochMillis, double price, long volume) {
+        if (ticks > 0 && epochMillis < lastMillis) {
+            return false;
+        }
+
+        // Prices leaving the SMA and band windows, read before the ring slot is reused
+        double leavingSma = ticks >= smaPeriod ? window[slot(ticks - smaPeriod)] : 0;
+        double leavingBollinger = ticks >= bollingerPeriod ? window[slot(ticks - bollingerPeriod)] : 0;
+        smaSum += price - leavingSma;
+        bollingerSum += price - leavingBollinger;
+        bollingerSumOfSquares += price * price - leavingBollinger * leavingBollinger;
+
+        // EMA seeded with the first price
+        double alpha = 2.0 / (emaPeriod + 1);
+        ema = ticks == 0 ? price : ema + alpha * (price - ema);
+
+        // Wilder's RSI: a plain average over the first period of changes, smoothed afterwards
+        if (ticks > 0) {
+            double change = price - lastPrice;
+            double gain = Math.max(change, 0);
+            double loss = Math.max(-change, 0);
+            long changes = ticks; // including this one
+            int divisor = changes <= rsiPeriod ? (int) changes : rsiPeriod;
+            averageGain += (gain - averageGain) / divisor;
+            averageLoss += (loss - averageLoss) / divisor;
+        }
+
+        long dayStart = epochMillis - Math.floorMod(epochMillis, DAY_MILLIS);
+        if (dayStart != vwapDayStart) {
+            vwapDayStart = dayStart;
+            vwapNotional = 0;
+            vwapVolume = 0;
+        }
+        vwapNotional += price * volume;
+        vwapVolume += volume;
+
+        window[slot(ticks)] = price;
+        ticks++;
+        lastPrice = price;
+        lastMillis = epochMillis;
+
+        if (ticks % window.length == 0) {
+            recomputeSums();
+        }
+        return true;
+    }
+
+    private void recomputeSums() {
+        smaSum = 0;
+        bollingerSum = 0;
+        bollingerSumOfSquares = 0;
+        for (int i = 1; i <= window.length && i <= ticks; i++) {
+            double price = window[slot(ticks - i)];
+            if (i <= smaPeriod) {
+                smaSum += price;
+            }
+            if (i <= bollingerPeriod) {
+                bollingerSum += price;
+                bollingerSumOfSquares += price * price;
+            }
+        }
+    }
+
+    /**
+     * The indicators as of the latest tick, or null if the symbol hasn't ticked yet
+     */
+    public synchronized Indicators snapshot() {
+        if (ticks == 0) {
+            return null;
+        }
+
+        Double sma = ticks >= smaPeriod ? smaSum / smaPeriod : null;
+        Double ema = ticks >= emaPeriod ? this.ema : null;
+        Double rsi = null;
+        if (ticks > rsiPeriod) {
+            if (averageLoss > 0) {
+                rsi = 100 - 100 / (1 + averageGain / averageLoss);
+            } else {
+                rsi = averageGain > 0 ? 100.0 : 50.0; // only gains / a flat price
+            }
+        }
+        Double vwap = vwapVolume > 0 ? vwapNotional / vwapVolume : null;
+
+        Double upper = null;
+        Double middle = null;
+        Double lower = null;
+        if (ticks >= bollingerPeriod) {
+            middle = bollingerSum / bollingerPeriod;
+            // Rounding can leave the running variance a hair below zero
+            double variance = Math.max(0, bollingerSumOfSquares / bollingerPeriod - middle * middle);
+            double width = bollingerWidth * Math.sqrt(variance);
+            upper = middle + width;
+            lower = middle - width;
+        }
+
+        return new Indicators(symbol, lastMillis, lastPrice, round(sma), round(ema), round(rsi), round(vwap),
+                round(upper), round(middle), round(lower));
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % window.length);
+    }
+
+    private static Double round(Double value) {
+        return value != null ? Math.round(value * 10000) / 10000.0 : null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.stocktrading.marketdata.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Technical indicators of one symbol as of its latest tick. An indicator is null until the
+ * symbol has ticked often enough to fill its period.
+ */
+@Getter
+@AllArgsConstructor
+public class Indicators {
+    private final String symbol;
+    @JsonIgnore
+    private final long epochMillis;
+    private final double price;
+    private final Double sma;
+    private final Double ema;
+    private final Double rsi;
+    private final Double vwap;
+    private final Double bollingerUpper;
+    private final Double bollingerMiddle;
+    private final Double bollingerLower;
+
+    public String getTimestamp() {
+        return Instant.ofEpochMilli(epochMillis).toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.stocktrading.marketdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A symbol known to the market data service. The ID is dense (0, 1, 2, ...) and stable while
+ * the service runs, so it can index arrays and identify the symbol on the binary feeds.
+ */
+@Getter
+@AllArgsConstructor
+public class Listing {
+    private final int id;
+    private final String symbol;
+    private final String name;
+    private final int sectorId;
+    private final double referencePrice;
+}
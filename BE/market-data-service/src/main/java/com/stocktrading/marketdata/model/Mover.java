@@ -0,0 +1,17 @@
+package com.stocktrading.marketdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One row of a top movers list, as of the symbol's latest tick
+ */
+@Getter
+@AllArgsConstructor
+public class Mover {
+    private final String symbol;
+    private final String name;
+    private final double price;
+    private final double changePercent;
+    private final long volume;
+}
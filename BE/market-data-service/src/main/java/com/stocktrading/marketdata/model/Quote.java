@@ -0,0 +1,29 @@
+package com.stocktrading.marketdata.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One market price tick, decoded once from the feed and shared read-only by every subscriber
+ * of the {@link com.stocktrading.marketdata.service.QuoteBus}
+ */
+@Getter
+@AllArgsConstructor
+public class Quote {
+    private final String symbol;
+    private final int symbolId; // listing ID, -1 for unlisted symbols
+    private final BigDecimal price;
+    private final BigDecimal bidPrice;
+    private final BigDecimal askPrice;
+    private final long volume;
+    private final BigDecimal change; // null if the tick didn't carry it
+    private final BigDecimal changePercent; // null if the tick didn't carry it
+    private final long epochMillis;
+
+    public String getTimestamp() {
+        return Instant.ofEpochMilli(epochMillis).toString();
+    }
+}
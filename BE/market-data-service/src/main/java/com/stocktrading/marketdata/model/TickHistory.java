@@ -0,0 +1,150 @@
+package com.stocktrading.marketdata.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+
+/**
+ * Fixed-capacity tick history of one symbol, kept in primitive columns (epoch-millis, price, volume)
+ * of a ring buffer. Once full, each new tick overwrites the oldest one, so memory stays constant.
+ * <p>
+ * There is one writer at a time; readers never lock and never copy. A reader takes a {@link View}
+ * of the latest ticks and reads straight from the columns. Writes are bracketed seqlock-style by
+ * two counters, so a reader can tell when a point it read was overwritten during the read and
+ * skip it instead of returning a torn value.
+ */
+public class TickHistory {
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final double[] prices;
+    private final long[] volumes;
+
+    // Ticks whose write has started / completed; tick n lives in slot n % capacity
+    private volatile long started;
+    private volatile long published;
+
+    public TickHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Tick history capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+    }
+
+    /**
+     * Append a tick, overwriting the oldest one when the buffer is full
+     */
+    public synchronized void append(long epochMillis, double price, long volume) {
+        long tick = published;
+        started = tick + 1;
+        VarHandle.storeStoreFence(); // the start mark must be visible before the slot changes
+
+        int slot = (int) (tick % capacity);
+        timestamps[slot] = epochMillis;
+        prices[slot] = price;
+        volumes[slot] = volume;
+
+        published = tick + 1;
+    }
+
+    /**
+     * The latest {@code maxPoints} ticks, oldest first
+     */
+    public View latest(int maxPoints) {
+        long end = published;
+        int size = (int) Math.min(Math.min(end, capacity), Math.max(0, maxPoints));
+        return new View(end - size, size);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of ticks currently retained
+     */
+    public int size() {
+        return (int) Math.min(published, capacity);
+    }
+
+    /**
+     * Whether a point read for tick {@code tick} can't have been overwritten while it was read
+     */
+    private boolean isIntact(long tick) {
+        VarHandle.acquireFence(); // finish reading the slot before checking the start mark
+        return started <= tick + capacity;
+    }
+
+    /**
+     * A window over consecutive ticks of the buffer, read in place
+     */
+    @JsonSerialize(using = ViewSerializer.class)
+    public class View {
+
+        private final long firstTick;
+        private final int size;
+
+        private View(long firstTick, int size) {
+            this.firstTick = firstTick;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Visit the points of the view, oldest first. Points overwritten by newer ticks while
+         * being read are skipped; since the oldest are overwritten first, those form a prefix.
+         */
+        public void forEach(PointVisitor visitor) throws IOException {
+            for (int i = 0; i < size; i++) {
+                long tick = firstTick + i;
+                int slot = (int) (tick % capacity);
+                long timestamp = timestamps[slot];
+                double price = prices[slot];
+                long volume = volumes[slot];
+                if (isIntact(tick)) {
+                    visitor.visit(timestamp, price, volume);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface PointVisitor {
+        void visit(long epochMillis, double price, long volume) throws IOException;
+    }
+
+    /**
+     * Writes a view as [{"price":..,"volume":..,"timestamp":"<ISO-8601>"}, ...] straight
+     * from the columns, the same shape the history endpoints have always returned
+     */
+    static class ViewSerializer extends StdSerializer<View> {
+
+        ViewSerializer() {
+            super(View.class);
+        }
+
+        @Override
+        public void serialize(View view, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray();
+            view.forEach((epochMillis, price, volume) -> {
+                gen.writeStartObject();
+                gen.writeNumberField("price", price);
+                gen.writeNumberField("volume", volume);
+                gen.writeStringField("timestamp", Instant.ofEpochMilli(epochMillis).toString());
+                gen.writeEndObject();
+            });
+            gen.writeEndArray();
+        }
+    }
+}
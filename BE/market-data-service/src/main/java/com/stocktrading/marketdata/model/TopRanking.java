@@ -0,0 +1,154 @@
+package com.stocktrading.marketdata.model;
+
+import java.util.Arrays;
+
+/**
+ * The {@code size} highest-ranked of a fixed set of IDs (0 to capacity - 1), kept up to date as
+ * their keys change. The leaders sit in a min-heap and everyone else in a max-heap, and both
+ * heaps index each ID's position, so changing one key re-sifts one entry and swaps at most one
+ * entry between the heaps: O(log n) per change. Reading the leaders only copies and orders the
+ * small leader heap, never the whole set.
+ * <p>
+ * Not thread-safe; callers serialize access.
+ */
+public class TopRanking {
+
+    private static final byte ABSENT = 0;
+    private static final byte LEADER = 1;
+    private static final byte RUNNER_UP = 2;
+
+    private final double[] keys; // by ID
+    private final byte[] heapOf; // by ID: ABSENT, LEADER or RUNNER_UP
+    private final int[] positions; // by ID: slot in its heap
+
+    // Leaders, lowest key first / the rest, highest key first
+    private final int[] leaders;
+    private int leaderCount;
+    private final int[] runnersUp;
+    private int runnerUpCount;
+
+    public TopRanking(int size, int capacity) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Ranking size must be positive: " + size);
+        }
+        this.keys = new double[capacity];
+        this.heapOf = new byte[capacity];
+        this.positions = new int[capacity];
+        this.leaders = new int[Math.min(size, capacity)];
+        this.runnersUp = new int[capacity];
+    }
+
+    /**
+     * Set the key of an ID, adding the ID to the ranking if it isn't ranked yet
+     */
+    public void update(int id, double key) {
+        double previous = keys[id];
+        keys[id] = key;
+
+        if (heapOf[id] == ABSENT) {
+            if (leaderCount < leaders.length) {
+                heapOf[id] = LEADER;
+                leaders[leaderCount] = id;
+                positions[id] = leaderCount++;
+                siftUp(leaders, positions[id], false);
+            } else {
+                heapOf[id] = RUNNER_UP;
+                runnersUp[runnerUpCount] = id;
+                positions[id] = runnerUpCount++;
+                siftUp(runnersUp, positions[id], true);
+            }
+        } else if (heapOf[id] == LEADER) {
+            if (key < previous) {
+                siftUp(leaders, positions[id], false);
+            } else {
+                siftDown(leaders, leaderCount, positions[id], false);
+            }
+        } else {
+            if (key > previous) {
+                siftUp(runnersUp, positions[id], true);
+            } else {
+                siftDown(runnersUp, runnerUpCount, positions[id], true);
+            }
+        }
+
+        // The best runner-up outranking the weakest leader takes its place
+        if (runnerUpCount > 0 && leaderCount > 0 && keys[runnersUp[0]] > keys[leaders[0]]) {
+            int demoted = leaders[0];
+            int promoted = runnersUp[0];
+            leaders[0] = promoted;
+            heapOf[promoted] = LEADER;
+            positions[promoted] = 0;
+            runnersUp[0] = demoted;
+            heapOf[demoted] = RUNNER_UP;
+            positions[demoted] = 0;
+            siftDown(leaders, leaderCount, 0, false);
+            siftDown(runnersUp, runnerUpCount, 0, true);
+        }
+    }
+
+    /**
+     * IDs of the top {@code limit} entries (at most the ranking size), highest key first
+     */
+    public int[] top(int limit) {
+        // Insertion sort of the few leaders, highest key first
+        int[] ranked = Arrays.copyOf(leaders, leaderCount);
+        for (int i = 1; i < ranked.length; i++) {
+            int id = ranked[i];
+            int j = i - 1;
+            for (; j >= 0 && keys[ranked[j]] < keys[id]; j--) {
+                ranked[j + 1] = ranked[j];
+            }
+            ranked[j + 1] = id;
+        }
+        return Arrays.copyOf(ranked, Math.min(Math.max(limit, 0), ranked.length));
+    }
+
+    public double keyOf(int id) {
+        return keys[id];
+    }
+
+    public int getSize() {
+        return leaders.length;
+    }
+
+    // Max-heap if highFirst, min-heap otherwise
+    private boolean above(int a, int b, boolean highFirst) {
+        return highFirst ? keys[a] > keys[b] : keys[a] < keys[b];
+    }
+
+    private void siftUp(int[] heap, int slot, boolean highFirst) {
+        int id = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!above(id, heap[parent], highFirst)) {
+                break;
+            }
+            heap[slot] = heap[parent];
+            positions[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = id;
+        positions[id] = slot;
+    }
+
+    private void siftDown(int[] heap, int count, int slot, boolean highFirst) {
+        int id = heap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && above(heap[child + 1], heap[child], highFirst)) {
+                child++;
+            }
+            if (!above(heap[child], id, highFirst)) {
+                break;
+            }
+            heap[slot] = heap[child];
+            positions[heap[slot]] = slot;
+            slot = child;
+        }
+        heap[slot] = id;
+        positions[id] = slot;
+    }
+}
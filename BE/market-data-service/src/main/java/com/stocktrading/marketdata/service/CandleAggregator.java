@@ -0,0 +1,122 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Candle;
+import com.stocktrading.marketdata.model.CandleInterval;
+import com.stocktrading.marketdata.model.CandleSeries;
+import com.stocktrading.marketdata.model.Quote;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Builds OHLCV candles for every interval in {@link CandleInterval} as ticks arrive.
+ * Each tick updates one bar per interval, so the cost per tick doesn't depend on how much
+ * history is kept. Bars close on the first tick past their interval, or on the periodic
+ * check for symbols that went quiet, and every closed bar is handed to the listeners.
+ * Ticks come from the {@link QuoteBus}, on the aggregator's own subscriber thread.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CandleAggregator implements QuoteListener {
+
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+
+    // Symbol -> one series per interval, indexed by ordinal
+    private final Map<String, CandleSeries[]> seriesBySymbol = new ConcurrentHashMap<>();
+
+    private final List<CandleListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final QuoteBus quoteBus;
+
+    @Value("${market.data.candles.capacity:720}")
+    private int capacity; // closed bars retained per symbol and interval
+
+    @PostConstruct
+    public void init() {
+        quoteBus.subscribe("candles", this);
+    }
+
+    public void addListener(CandleListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onQuote(Quote quote) {
+        onTick(quote.getSymbol(), quote.getEpochMillis(), quote.getPrice().doubleValue(), quote.getVolume());
+    }
+
+    /**
+     * Add a trade tick to the candles of a symbol
+     */
+    public void onTick(String symbol, long epochMillis, double price, long volume) {
+        CandleSeries[] series = seriesBySymbol.computeIfAbsent(symbol, this::newSeries);
+        for (CandleSeries candles : series) {
+            Candle closed = candles.onTick(epochMillis, price, volume);
+            if (closed != null) {
+                notifyBarClose(symbol, candles.getInterval(), closed);
+            }
+        }
+    }
+
+    /**
+     * Close bars whose interval has ended without a newer tick to close them
+     */
+    @Scheduled(fixedRateString = "${market.data.candles.close-check-ms:1000}")
+    public void closeElapsedBars() {
+        long now = System.currentTimeMillis();
+        seriesBySymbol.forEach((symbol, series) -> {
+            for (CandleSeries candles : series) {
+                Candle closed = candles.closeIfElapsed(now);
+                if (closed != null) {
+                    notifyBarClose(symbol, candles.getInterval(), closed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Closed bars of a symbol starting in [fromMillis, toMillis], oldest first
+     */
+    public List<Candle> getCandles(String symbol, CandleInterval interval, long fromMillis, long toMillis) {
+        CandleSeries[] series = seriesBySymbol.get(symbol);
+        return series != null
+                ? series[interval.ordinal()].getClosed(fromMillis, toMillis)
+                : Collections.emptyList();
+    }
+
+    /**
+     * The bar of a symbol still being built, or null if there is none
+     */
+    public Candle getCurrentCandle(String symbol, CandleInterval interval) {
+        CandleSeries[] series = seriesBySymbol.get(symbol);
+        return series != null ? series[interval.ordinal()].getCurrent() : null;
+    }
+
+    private CandleSeries[] newSeries(String symbol) {
+        CandleSeries[] series = new CandleSeries[INTERVALS.length];
+        for (CandleInterval interval : INTERVALS) {
+            series[interval.ordinal()] = new CandleSeries(interval, capacity);
+        }
+        return series;
+    }
+
+    private void notifyBarClose(String symbol, CandleInterval interval, Candle candle) {
+        for (CandleListener listener : listeners) {
+            try {
+                listener.onBarClose(symbol, interval, candle);
+            } catch (Exception e) {
+                log.error("Error notifying bar close of {} {}", symbol, interval.getCode(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Candle;
+import com.stocktrading.marketdata.model.CandleInterval;
+
+/**
+ * Notified by the {@link CandleAggregator} whenever a bar closes
+ */
+public interface CandleListener {
+
+    void onBarClose(String symbol, CandleInterval interval, Candle candle);
+}
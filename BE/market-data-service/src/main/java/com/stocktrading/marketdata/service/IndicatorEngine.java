@@ -0,0 +1,122 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.IndicatorSeries;
+import com.stocktrading.marketdata.model.Indicators;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Computes SMA, EMA, RSI, VWAP and Bollinger bands for every symbol once on the server, so
+ * clients don't each recompute them from history. Each tick updates one {@link IndicatorSeries}
+ * in constant time and hands the new values to the listeners.
+ * Ticks come from the {@link QuoteBus}, on the engine's own subscriber thread.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IndicatorEngine implements QuoteListener {
+
+    // Symbol -> its indicators
+    private final Map<String, IndicatorSeries> seriesBySymbol = new ConcurrentHashMap<>();
+
+    private final List<IndicatorListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final QuoteBus quoteBus;
+    private final MarketPricePublisher marketPricePublisher;
+    private final SymbolRegistry symbolRegistry;
+
+    @Value("${market.data.indicators.sma-period:20}")
+    private int smaPeriod;
+
+    @Value("${market.data.indicators.ema-period:20}")
+    private int emaPeriod;
+
+    @Value("${market.data.indicators.rsi-period:14}")
+    private int rsiPeriod;
+
+    @Value("${market.data.indicators.bollinger-period:20}")
+    private int bollingerPeriod;
+
+    @Value("${market.data.indicators.bollinger-width:2.0}")
+    private double bollingerWidth;
+
+    @PostConstruct
+    public void init() {
+        warmFromHistory();
+        quoteBus.subscribe("indicators", this);
+    }
+
+    /**
+     * Replay the simulator's tick history, so indicators are available right after a restart
+     * instead of once every period has filled up again
+     */
+    private void warmFromHistory() {
+        int points = Math.max(Math.max(smaPeriod, bollingerPeriod), Math.max(emaPeriod, rsiPeriod) * 4);
+        for (Listing listing : symbolRegistry.getListings()) {
+            IndicatorSeries series = seriesBySymbol.computeIfAbsent(listing.getSymbol(), this::newSeries);
+            try {
+                marketPricePublisher.getHistoricalData(listing.getSymbol(), points).forEach(series::onTick);
+            } catch (IOException e) {
+                log.error("Error replaying tick history of {}", listing.getSymbol(), e);
+            }
+        }
+        log.info("Warmed indicators of {} stocks from up to {} ticks each", seriesBySymbol.size(), points);
+    }
+
+    public void addListener(IndicatorListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onQuote(Quote quote) {
+        IndicatorSeries series = seriesBySymbol.computeIfAbsent(quote.getSymbol(), this::newSeries);
+        if (!series.onTick(quote.getEpochMillis(), quote.getPrice().doubleValue(), quote.getVolume())
+                || listeners.isEmpty()) {
+            return; // nothing changed, or nobody to tell
+        }
+
+        Indicators indicators = series.snapshot();
+        for (IndicatorListener listener : listeners) {
+            try {
+                listener.onIndicators(indicators);
+            } catch (Exception e) {
+                log.error("Error notifying indicators of {}", quote.getSymbol(), e);
+            }
+        }
+    }
+
+    /**
+     * The indicators of a symbol as of its latest tick, or null if it hasn't ticked
+     */
+    public Indicators getIndicators(String symbol) {
+        IndicatorSeries series = seriesBySymbol.get(symbol);
+        return series != null ? series.snapshot() : null;
+    }
+
+    /**
+     * Periods the indicators are computed over, for clients labelling them
+     */
+    public Map<String, Object> getSettings() {
+        return Map.of(
+                "smaPeriod", smaPeriod,
+                "emaPeriod", emaPeriod,
+                "rsiPeriod", rsiPeriod,
+                "bollingerPeriod", bollingerPeriod,
+                "bollingerWidth", bollingerWidth);
+    }
+
+    private IndicatorSeries newSeries(String symbol) {
+        return new IndicatorSeries(symbol, smaPeriod, emaPeriod, rsiPeriod, bollingerPeriod, bollingerWidth);
+    }
+}
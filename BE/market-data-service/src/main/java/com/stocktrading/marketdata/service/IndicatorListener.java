@@ -0,0 +1,11 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Indicators;
+
+/**
+ * Notified by the {@link IndicatorEngine} with the new indicators of a symbol after each tick
+ */
+public interface IndicatorListener {
+
+    void onIndicators(Indicators indicators);
+}
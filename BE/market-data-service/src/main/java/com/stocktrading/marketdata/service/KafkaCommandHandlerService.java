@@ -18,14 +18,10 @@ import java.util.*;
 public class KafkaCommandHandlerService {
 
     private final MarketPricePublisher marketPricePublisher;
+    private final SymbolRegistry symbolRegistry;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final Random random = new Random();
 
-    private final List<String> trackedSymbols = Arrays.asList(
-            "AAPL", "MSFT", "GOOGL", "AMZN", "TSLA", "META", "NVDA", "JPM", "V", "JNJ",
-            "ABBV", "WMT", "PG", "MA", "UNH"
-    );
-
     /**
      * Handle MARKET_VALIDATE_STOCK command
      */
@@ -43,8 +39,8 @@ public class KafkaCommandHandlerService {
         event.setTimestamp(Instant.now());
 
         try {
-            // check exist in trackedSymbols
-            boolean stockExists = trackedSymbols.contains(stockSymbol);
+            // check the symbol is listed
+            boolean stockExists = symbolRegistry.isListed(stockSymbol);
 
             if (stockExists) {
                 // Success case
@@ -1,6 +1,12 @@
 package com.stocktrading.marketdata.service;
 
 import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.model.TickHistory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,18 +16,26 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Service that periodically publishes market price updates
- * Uses random price generation for demonstration
+ * Service that simulates market prices and publishes them as MARKET_PRICES_UPDATED events.
+ * <p>
+ * Prices follow a geometric Brownian motion: each tick's log return is the drift plus a shock that
+ * mixes a factor shared by the symbol's sector with the symbol's own noise, so stocks in a sector
+ * move together by the configured correlation. Every listing in the {@link SymbolRegistry} is simulated,
+ * including its synthetic load-test listings. Symbols are split into partitions, one per worker thread; each
+ * partition keeps its state in primitive arrays and publishes a whole round of ticks at a time,
+ * leaving the producer to batch them.
  */
 @Slf4j
 @Service
@@ -30,412 +44,398 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MarketPricePublisher {
 
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private final Random random = new Random();
+    private final MeterRegistry meterRegistry;
+    private final SymbolRegistry symbolRegistry;
 
-    // Map to store the last price for each symbol to create realistic price movements
-    private final Map<String, StockData> stockDataMap = new ConcurrentHashMap<>();
+    // Returned for symbols without history
+    private static final TickHistory EMPTY_HISTORY = new TickHistory(1);
 
-    // Store historical data for each stock (for generating sparklines)
-    private final Map<String, List<StockDataPoint>> historicalData = new ConcurrentHashMap<>();
-    private final int MAX_HISTORY_POINTS = 50;
+    // Tick history for each stock (for sparklines), a fixed-size ring buffer per symbol
+    private final Map<String, TickHistory> historicalData = new ConcurrentHashMap<>();
 
-    // Default symbols to track
-    private final List<String> trackedSymbols = Arrays.asList(
-            "AAPL", "MSFT", "GOOGL", "AMZN", "TSLA", "META", "NVDA", "JPM", "V", "JNJ",
-            "ABBV", "WMT", "PG", "MA", "UNH"
-    );
+    // Where the state of each listing lives, indexed by listing ID
+    private SymbolSlot[] slots;
+
+    private Partition[] partitions;
+    private ScheduledExecutorService simulatorExecutor;
+
+    private Counter ticksCounter;
+    private volatile double ticksPerSecond;
+    private double lastTickCount;
+    private long lastSampleNanos;
 
     @Value("${kafka.topics.market-price-updates:market.price.updates}")
     private String marketPriceUpdatesTopic;
 
-    // Data class to hold stock information
-    private static class StockData {
-        BigDecimal currentPrice;
-        BigDecimal previousPrice;
-        BigDecimal openPrice;
-        BigDecimal highPrice;
-        BigDecimal lowPrice;
-        BigDecimal bidPrice;
-        BigDecimal askPrice;
-        long volume;
-        long cumulativeVolume;
-        Instant lastUpdate;
-
-        // For calculating percent changes
-        BigDecimal dayStartPrice;
-        BigDecimal weekStartPrice;
-        BigDecimal monthStartPrice;
-
-        public BigDecimal getPercentChange() {
-            if (previousPrice == null || previousPrice.compareTo(BigDecimal.ZERO) <= 0) {
-                return BigDecimal.ZERO;
-            }
+    @Value("${market.data.history.capacity:1024}")
+    private int historyCapacity; // ticks retained per symbol
 
-            return currentPrice.subtract(previousPrice)
-                    .divide(previousPrice, 4, RoundingMode.HALF_UP)
-                    .multiply(new BigDecimal(100));
-        }
+    @Value("${market.data.history.default-points:50}")
+    private int defaultHistoryPoints; // ticks returned when the caller doesn't ask for a number
 
-        public BigDecimal getDayPercentChange() {
-            if (dayStartPrice == null || dayStartPrice.compareTo(BigDecimal.ZERO) <= 0) {
-                return getPercentChange();
-            }
+    @Value("${market.data.simulator.interval-ms:15000}")
+    private long intervalMs; // time between two ticks of a symbol
 
-            return currentPrice.subtract(dayStartPrice)
-                    .divide(dayStartPrice, 4, RoundingMode.HALF_UP)
-                    .multiply(new BigDecimal(100));
-        }
+    @Value("${market.data.simulator.workers:1}")
+    private int workerCount; // partitions, each published by its own thread
 
-        public BigDecimal getWeekPercentChange() {
-            if (weekStartPrice == null || weekStartPrice.compareTo(BigDecimal.ZERO) <= 0) {
-                return getDayPercentChange();
-            }
+    @Value("${market.data.simulator.drift:0.0}")
+    private double drift; // mean log return per tick
+
+    @Value("${market.data.simulator.volatility:0.0115}")
+    private double volatility; // standard deviation of the log return per tick
+
+    @Value("${market.data.simulator.sector-correlation:0.5}")
+    private double sectorCorrelation; // correlation of the returns of two stocks in one sector
 
-            return currentPrice.subtract(weekStartPrice)
-                    .divide(weekStartPrice, 4, RoundingMode.HALF_UP)
-                    .multiply(new BigDecimal(100));
+    @Value("${market.data.simulator.seed:0}")
+    private long seed; // 0 for a different market on every start
+
+    /**
+     * Set up the listed symbols at their reference prices and start the workers
+     */
+    @PostConstruct
+    public void init() {
+        if (seed == 0) {
+            seed = System.nanoTime();
         }
 
-        public BigDecimal getMonthPercentChange() {
-            if (monthStartPrice == null || monthStartPrice.compareTo(BigDecimal.ZERO) <= 0) {
-                return getWeekPercentChange();
-            }
+        partitions = new Partition[Math.max(1, workerCount)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(new Random(seed + i + 1));
+        }
+        slots = new SymbolSlot[symbolRegistry.size()];
+        for (Listing listing : symbolRegistry.getListings()) {
+            addSymbol(listing);
+        }
 
-            return currentPrice.subtract(monthStartPrice)
-                    .divide(monthStartPrice, 4, RoundingMode.HALF_UP)
-                    .multiply(new BigDecimal(100));
+        ticksCounter = Counter.builder("market.data.simulator.ticks")
+                .description("Price ticks published by the simulator")
+                .register(meterRegistry);
+        Gauge.builder("market.data.simulator.ticks-per-second", this, publisher -> publisher.ticksPerSecond)
+                .description("Price ticks published per second, sampled every second")
+                .register(meterRegistry);
+        lastSampleNanos = System.nanoTime();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        simulatorExecutor = Executors.newScheduledThreadPool(partitions.length, runnable -> {
+            Thread thread = new Thread(runnable, "market-simulator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Partition partition : partitions) {
+            simulatorExecutor.scheduleAtFixedRate(partition::publishRound, 0, intervalMs, TimeUnit.MILLISECONDS);
         }
+
+        log.info("Initialized market price publisher with {} stocks in {} partitions, one tick every {} ms",
+                slots.length, partitions.length, intervalMs);
     }
 
-    // Data point for historical data
-    private static class StockDataPoint {
-        BigDecimal price;
-        BigDecimal volume;
-        Instant timestamp;
+    @PreDestroy
+    public void shutdown() {
+        simulatorExecutor.shutdownNow();
+    }
 
-        public StockDataPoint(BigDecimal price, BigDecimal volume, Instant timestamp) {
-            this.price = price;
-            this.volume = volume;
-            this.timestamp = timestamp;
-        }
+    /**
+     * Sample the publish rate for the ticks-per-second gauge
+     */
+    @Scheduled(fixedRate = 1000)
+    public void sampleTickRate() {
+        long now = System.nanoTime();
+        double count = ticksCounter.count();
+        ticksPerSecond = (count - lastTickCount) * 1e9 / Math.max(1, now - lastSampleNanos);
+        lastTickCount = count;
+        lastSampleNanos = now;
+    }
 
-        public Map<String, Object> toMap() {
-            Map<String, Object> map = new HashMap<>();
-            map.put("price", price);
-            map.put("volume", volume);
-            map.put("timestamp", timestamp.toString());
-            return map;
-        }
+    /**
+     * Get the latest historical data points for a stock, oldest first.
+     * The view reads the ring buffer in place and serializes as a list of {price, volume, timestamp}.
+     */
+    public TickHistory.View getHistoricalData(String symbol) {
+        return getHistoricalData(symbol, defaultHistoryPoints);
     }
 
     /**
-     * Initialize default prices on startup
+     * Get up to {@code maxPoints} of the latest historical data points for a stock, oldest first
      */
-    @PostConstruct
-    public void init() {
-        log.info("Initializing market price publisher with {} stocks", trackedSymbols.size());
-
-        // Initialize with reasonable starting prices
-        Map<String, BigDecimal> initialPrices = new HashMap<>();
-        initialPrices.put("AAPL", new BigDecimal("185.50"));
-        initialPrices.put("MSFT", new BigDecimal("328.75"));
-        initialPrices.put("GOOGL", new BigDecimal("142.30"));
-        initialPrices.put("AMZN", new BigDecimal("178.25"));
-        initialPrices.put("TSLA", new BigDecimal("245.65"));
-        initialPrices.put("META", new BigDecimal("326.90"));
-        initialPrices.put("NVDA", new BigDecimal("450.20"));
-        initialPrices.put("JPM", new BigDecimal("153.40"));
-        initialPrices.put("V", new BigDecimal("275.60"));
-        initialPrices.put("JNJ", new BigDecimal("156.80"));
-        initialPrices.put("ABBV", new BigDecimal("170.25"));
-        initialPrices.put("WMT", new BigDecimal("165.40"));
-        initialPrices.put("PG", new BigDecimal("145.60"));
-        initialPrices.put("MA", new BigDecimal("405.80"));
-        initialPrices.put("UNH", new BigDecimal("530.20"));
-
-        Instant now = Instant.now();
-
-        for (String symbol : trackedSymbols) {
-            BigDecimal initialPrice = initialPrices.getOrDefault(
-                    symbol, BigDecimal.valueOf(100 + random.nextInt(400)));
-
-            StockData data = new StockData();
-            data.currentPrice = initialPrice;
-            data.previousPrice = initialPrice;
-            data.openPrice = initialPrice;
-            data.highPrice = initialPrice;
-            data.lowPrice = initialPrice;
-            data.bidPrice = initialPrice.multiply(BigDecimal.valueOf(0.999)).setScale(2, RoundingMode.HALF_UP);
-            data.askPrice = initialPrice.multiply(BigDecimal.valueOf(1.001)).setScale(2, RoundingMode.HALF_UP);
-            data.volume = 1000 + random.nextInt(99000);
-            data.cumulativeVolume = data.volume;
-            data.lastUpdate = now;
-
-            // Initialize reference prices for different time periods
-            data.dayStartPrice = initialPrice;
-            data.weekStartPrice = initialPrice.multiply(BigDecimal.valueOf(0.9 + random.nextDouble() * 0.2))
-                    .setScale(2, RoundingMode.HALF_UP);
-            data.monthStartPrice = initialPrice.multiply(BigDecimal.valueOf(0.8 + random.nextDouble() * 0.4))
-                    .setScale(2, RoundingMode.HALF_UP);
-
-            stockDataMap.put(symbol, data);
-            historicalData.put(symbol, new ArrayList<>());
+    public TickHistory.View getHistoricalData(String symbol, int maxPoints) {
+        TickHistory history = historicalData.get(symbol);
+        return history != null ? history.latest(maxPoints) : EMPTY_HISTORY.latest(0);
+    }
 
-            // Add initial data point
-            addHistoricalDataPoint(symbol, data);
+    /**
+     * Get current stock data as a map
+     */
+    public Map<String, Object> getCurrentStockData(String symbol) {
+        int id = symbolRegistry.idOf(symbol);
+        if (id < 0) {
+            return null;
         }
+        SymbolSlot slot = slots[id];
+        return slot.partition.snapshot(slot.index);
     }
 
     /**
-     * Publish price updates for all tracked stocks every 15 seconds
+     * Get the last quote of a listed symbol, or null if the symbol isn't listed
      */
-    @Scheduled(fixedRate = 15000)
-    public void publishPriceUpdates() {
-        log.info("--- publishPriceUpdates START at {} ---", LocalDateTime.now());
-        // Check if market is open (simplified for simulation)
-//        LocalDateTime now = LocalDateTime.now();
-//        if (now.getDayOfWeek().getValue() >= 6 || // Weekend
-//                now.getHour() < 9 || now.getHour() >= 16) { // Outside trading hours (9 AM - 4 PM)
-//            // Market closed - no updates
-//            return;
-//        }
-
-        log.info("Publishing market price updates for {} stocks", trackedSymbols.size());
-
-        try {
-            // Generate and publish updates for each tracked symbol
-            for (String symbol : trackedSymbols) {
-                updateAndPublishStockData(symbol);
-            }
-        } catch (Exception e) {
-            log.error("Error publishing market price updates", e);
+    public Quote getLastQuote(String symbol) {
+        Listing listing = symbolRegistry.get(symbol);
+        if (listing == null) {
+            return null;
         }
+        SymbolSlot slot = slots[listing.getId()];
+        return slot.partition.lastQuote(slot.index, listing);
     }
 
-    private void updateAndPublishStockData(String symbol) {
-        StockData stockData = stockDataMap.getOrDefault(symbol, new StockData());
-
-        // Store previous price
-        BigDecimal lastPrice = stockData.currentPrice;
+    /**
+     * Get all current stock data
+     */
+    public List<Map<String, Object>> getAllStockData() {
+        List<Map<String, Object>> result = new ArrayList<>();
 
-        if (lastPrice == null) {
-            lastPrice = BigDecimal.valueOf(100 + random.nextInt(400));
+        for (Listing listing : symbolRegistry.getListings()) {
+            SymbolSlot slot = slots[listing.getId()];
+            Map<String, Object> data = slot.partition.snapshot(slot.index);
+            // Add company name
+            data.put("name", listing.getName());
+            result.add(data);
         }
 
-        // Calculate a random price change (-2% to +2%)
-        double changePercent = (random.nextDouble() * 4 - 2) / 100.0;
-        BigDecimal newPrice = lastPrice.multiply(BigDecimal.valueOf(1 + changePercent))
-                .setScale(2, RoundingMode.HALF_UP);
-
-        // Calculate bid/ask with a random spread (0.1% to 0.3%)
-        double spreadPercent = (0.1 + random.nextDouble() * 0.2) / 100.0;
-        BigDecimal halfSpread = newPrice.multiply(BigDecimal.valueOf(spreadPercent / 2))
-                .setScale(2, RoundingMode.HALF_UP);
-
-        BigDecimal bidPrice = newPrice.subtract(halfSpread);
-        BigDecimal askPrice = newPrice.add(halfSpread);
-
-        // Generate a random volume between 1,000 and 100,000
-        long volume = 1000 + random.nextInt(99000);
-
-        // Update stock data
-        /*
-        Explain these below fields:
-        - previousPrice: The last price before the update
-        - currentPrice: The new price after the update
-        - bidPrice: The price at which buyers are willing to buy the stock
-        - askPrice: The price at which sellers are willing to sell the stock
-        - volume: The number of shares traded in the last update
-        - cumulativeVolume: The total volume of shares traded since the last update
-        - lastUpdate: The timestamp of the last update
-         */
-        stockData.previousPrice = lastPrice;
-        stockData.currentPrice = newPrice;
-        stockData.bidPrice = bidPrice;
-        stockData.askPrice = askPrice;
-        stockData.volume = volume;
-        stockData.cumulativeVolume += volume;
-        stockData.lastUpdate = Instant.now();
-
-
+        return result;
+    }
 
-        // Update high/low prices
-        if (stockData.highPrice == null || newPrice.compareTo(stockData.highPrice) > 0) {
-            stockData.highPrice = newPrice;
-        }
-        if (stockData.lowPrice == null || newPrice.compareTo(stockData.lowPrice) < 0) {
-            stockData.lowPrice = newPrice;
+    private void addSymbol(Listing listing) {
+        // Fill the smallest partition
+        Partition partition = partitions[0];
+        for (Partition candidate : partitions) {
+            if (candidate.size() < partition.size()) {
+                partition = candidate;
+            }
         }
 
-        // Store in map
-        stockDataMap.put(symbol, stockData);
-
-        // Add to historical data
-        addHistoricalDataPoint(symbol, stockData);
-
-        // Create and send event
-        EventMessage event = EventMessage.builder()
-                .messageId(UUID.randomUUID().toString())
-                .type("MARKET_PRICES_UPDATED")
-                .sourceService("MARKET_DATA_SERVICE")
-                .timestamp(Instant.now())
-                .success(true)
-                .build();
-
-        // Set payload with price data
-        event.setPayloadValue("symbol", symbol);
-        event.setPayloadValue("price", newPrice);
-        event.setPayloadValue("bidPrice", bidPrice);
-        event.setPayloadValue("askPrice", askPrice);
-        event.setPayloadValue("volume", volume);
-        event.setPayloadValue("timestamp", Instant.now().toString());
-        event.setPayloadValue("change", newPrice.subtract(lastPrice));
-        event.setPayloadValue("changePercent", stockData.getPercentChange());
-        event.setPayloadValue("dayChangePercent", stockData.getDayPercentChange());
-        event.setPayloadValue("weekChangePercent", stockData.getWeekPercentChange());
-        event.setPayloadValue("monthChangePercent", stockData.getMonthPercentChange());
-
-        // Publish with symbol as key for partitioning
-        kafkaTemplate.send(marketPriceUpdatesTopic, symbol, event);
-
-        log.info("Published price update for {}: {} (bid: {}, ask: {})",
-                symbol, newPrice, bidPrice, askPrice);
+        String symbol = listing.getSymbol();
+        historicalData.put(symbol, new TickHistory(historyCapacity));
+        int index = partition.add(symbol, listing.getSectorId(), listing.getReferencePrice());
+        slots[listing.getId()] = new SymbolSlot(partition, index);
     }
 
-    private void addHistoricalDataPoint(String symbol, StockData data) {
-        if (!historicalData.containsKey(symbol)) {
-            historicalData.put(symbol, new ArrayList<>());
-        }
+    private static double roundToCents(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
 
-        List<StockDataPoint> history = historicalData.get(symbol);
+    private static BigDecimal toPrice(double price) {
+        return BigDecimal.valueOf(Math.round(price * 100), 2);
+    }
 
-        // Add new data point
-        history.add(new StockDataPoint(
-                data.currentPrice,
-                BigDecimal.valueOf(data.volume),
-                data.lastUpdate
-        ));
+    private static BigDecimal percentChange(double price, double reference) {
+        double percent = reference > 0 ? (price - reference) / reference * 100 : 0;
+        return BigDecimal.valueOf(Math.round(percent * 100), 2);
+    }
 
-        // Trim history to maximum size
-        if (history.size() > MAX_HISTORY_POINTS) {
-            history = history.subList(history.size() - MAX_HISTORY_POINTS, history.size());
-            historicalData.put(symbol, history);
-        }
+    /**
+     * A random version 4 UUID without going through the shared SecureRandom of UUID.randomUUID
+     */
+    private static String randomMessageId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
     }
 
     /**
-     * Get historical data for a stock as a list of maps
+     * Where a symbol's state lives
      */
-    public List<Map<String, Object>> getHistoricalData(String symbol) {
-        List<StockDataPoint> history = historicalData.getOrDefault(symbol, new ArrayList<>());
-        List<Map<String, Object>> result = new ArrayList<>();
+    private static class SymbolSlot {
+        final Partition partition;
+        final int index;
 
-        for (StockDataPoint point : history) {
-            result.add(point.toMap());
+        SymbolSlot(Partition partition, int index) {
+            this.partition = partition;
+            this.index = index;
         }
-
-        return result;
     }
 
     /**
-     * Get current stock data as a map
+     * The symbols published by one worker, with their state in primitive columns.
+     * A round and a snapshot read both hold the partition's lock; the Kafka sends happen outside it.
      */
-    public Map<String, Object> getCurrentStockData(String symbol) {
-        StockData data = stockDataMap.get(symbol);
-        if (data == null) {
-            return null;
+    private class Partition {
+
+        private final Random random;
+        private final double[] sectorShocks = new double[symbolRegistry.getSectors().size()];
+        private long round;
+        private int size;
+
+        private String[] symbols = new String[0];
+        private int[] sectors = new int[0];
+        private double[] prices = new double[0];
+        private double[] previousPrices = new double[0];
+        private double[] bidPrices = new double[0];
+        private double[] askPrices = new double[0];
+        private long[] volumes = new long[0];
+        private long[] lastUpdates = new long[0];
+
+        // Reference prices for the day, week and month percent changes
+        private double[] dayStartPrices = new double[0];
+        private double[] weekStartPrices = new double[0];
+        private double[] monthStartPrices = new double[0];
+
+        Partition(Random random) {
+            this.random = random;
         }
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("symbol", symbol);
-        result.put("price", data.currentPrice);
-        result.put("bidPrice", data.bidPrice);
-        result.put("askPrice", data.askPrice);
-        result.put("volume", data.volume);
-        result.put("changePercent", data.getPercentChange());
-        result.put("dayChangePercent", data.getDayPercentChange());
-        result.put("weekChangePercent", data.getWeekPercentChange());
-        result.put("monthChangePercent", data.getMonthPercentChange());
-        result.put("timestamp", data.lastUpdate.toString());
+        synchronized int size() {
+            return size;
+        }
 
-        return result;
-    }
+        synchronized int add(String symbol, int sector, double initialPrice) {
+            if (size == symbols.length) {
+                grow(Math.max(16, size * 2));
+            }
+            int i = size++;
+            long now = System.currentTimeMillis();
+
+            symbols[i] = symbol;
+            sectors[i] = sector;
+            prices[i] = initialPrice;
+            previousPrices[i] = initialPrice;
+            bidPrices[i] = roundToCents(initialPrice * 0.999);
+            askPrices[i] = roundToCents(initialPrice * 1.001);
+            volumes[i] = 1000 + random.nextInt(99000);
+            lastUpdates[i] = now;
+            dayStartPrices[i] = initialPrice;
+            weekStartPrices[i] = roundToCents(initialPrice * (0.9 + random.nextDouble() * 0.2));
+            monthStartPrices[i] = roundToCents(initialPrice * (0.8 + random.nextDouble() * 0.4));
 
-    /**
-     * Get all current stock data
-     */
-    public List<Map<String, Object>> getAllStockData() {
-        List<Map<String, Object>> result = new ArrayList<>();
+            // Add initial data point
+            historicalData.get(symbol).append(now, initialPrice, volumes[i]);
+            return i;
+        }
 
-        for (String symbol : trackedSymbols) {
-            Map<String, Object> data = getCurrentStockData(symbol);
-            if (data != null) {
-                // Add company name
-                data.put("name", getCompanyName(symbol));
-                result.add(data);
+        /**
+         * Move every symbol of the partition one tick and publish the ticks
+         */
+        void publishRound() {
+            try {
+                List<EventMessage> events = nextRound();
+                for (EventMessage event : events) {
+                    // Publish with symbol as key for partitioning
+                    kafkaTemplate.send(marketPriceUpdatesTopic, (String) event.getPayloadValue("symbol"), event);
+                }
+                ticksCounter.increment(events.size());
+                log.debug("Published {} price updates", events.size());
+            } catch (Exception e) {
+                log.error("Error publishing market price updates", e);
             }
         }
 
-        return result;
-    }
+        private synchronized List<EventMessage> nextRound() {
+            round++;
+            drawSectorShocks();
 
-    /**
-     * Add a symbol to track
-     */
-    public void addSymbol(String symbol) {
-        if (!trackedSymbols.contains(symbol)) {
-            trackedSymbols.add(symbol);
-
-            // Initialize with a reasonable price if not already present
-            if (!stockDataMap.containsKey(symbol)) {
-                StockData data = new StockData();
-                BigDecimal initialPrice = BigDecimal.valueOf(100 + random.nextInt(400));
-                data.currentPrice = initialPrice;
-                data.previousPrice = initialPrice;
-                data.openPrice = initialPrice;
-                data.highPrice = initialPrice;
-                data.lowPrice = initialPrice;
-                data.bidPrice = initialPrice.multiply(BigDecimal.valueOf(0.999)).setScale(2, RoundingMode.HALF_UP);
-                data.askPrice = initialPrice.multiply(BigDecimal.valueOf(1.001)).setScale(2, RoundingMode.HALF_UP);
-                data.volume = 1000 + random.nextInt(99000);
-                data.cumulativeVolume = data.volume;
-                data.lastUpdate = Instant.now();
-                data.dayStartPrice = initialPrice;
-                data.weekStartPrice = initialPrice.multiply(BigDecimal.valueOf(0.9 + random.nextDouble() * 0.2))
-                        .setScale(2, RoundingMode.HALF_UP);
-                data.monthStartPrice = initialPrice.multiply(BigDecimal.valueOf(0.8 + random.nextDouble() * 0.4))
-                        .setScale(2, RoundingMode.HALF_UP);
-
-                stockDataMap.put(symbol, data);
-                historicalData.put(symbol, new ArrayList<>());
-
-                // Add initial data point
-                addHistoricalDataPoint(symbol, data);
+            double sharedWeight = Math.sqrt(sectorCorrelation);
+            double ownWeight = Math.sqrt(1 - sectorCorrelation);
+            double meanLogReturn = drift - 0.5 * volatility * volatility;
+            long now = System.currentTimeMillis();
+            Instant timestamp = Instant.ofEpochMilli(now);
+
+            List<EventMessage> events = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                double shock = sharedWeight * sectorShocks[sectors[i]] + ownWeight * random.nextGaussian();
+                double newPrice = Math.max(0.01, roundToCents(prices[i] * Math.exp(meanLogReturn + volatility * shock)));
+
+                // Bid/ask with a random spread (0.1% to 0.3%)
+                double spreadPercent = (0.1 + random.nextDouble() * 0.2) / 100.0;
+                double halfSpread = roundToCents(newPrice * spreadPercent / 2);
+
+                previousPrices[i] = prices[i];
+                prices[i] = newPrice;
+                bidPrices[i] = newPrice - halfSpread;
+                askPrices[i] = newPrice + halfSpread;
+                volumes[i] = 1000 + random.nextInt(99000);
+                lastUpdates[i] = now;
+
+                // Add to historical data
+                historicalData.get(symbols[i]).append(now, newPrice, volumes[i]);
+
+                events.add(priceUpdatedEvent(i, timestamp));
             }
+            return events;
+        }
+
+        /**
+         * Draw this round's shock of every sector. The shocks only depend on the seed and the round,
+         * so all partitions see the same ones without talking to each other.
+         */
+        private void drawSectorShocks() {
+            for (int sector = 0; sector < sectorShocks.length; sector++) {
+                SplittableRandom sectorRandom = new SplittableRandom(seed ^ (round * 0x9E3779B97F4A7C15L) ^ sector);
+                // Box-Muller transform of two uniform draws
+                double u1 = 1.0 - sectorRandom.nextDouble();
+                double u2 = sectorRandom.nextDouble();
+                sectorShocks[sector] = Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+            }
+        }
 
-            log.info("Added symbol {} to tracked list", symbol);
+        private EventMessage priceUpdatedEvent(int i, Instant timestamp) {
+            EventMessage event = EventMessage.builder()
+                    .messageId(randomMessageId())
+                    .type("MARKET_PRICES_UPDATED")
+                    .sourceService("MARKET_DATA_SERVICE")
+                    .timestamp(timestamp)
+                    .success(true)
+                    .build();
+
+            // Set payload with price data
+            event.setPayloadValue("symbol", symbols[i]);
+            event.setPayloadValue("price", toPrice(prices[i]));
+            event.setPayloadValue("bidPrice", toPrice(bidPrices[i]));
+            event.setPayloadValue("askPrice", toPrice(askPrices[i]));
+            event.setPayloadValue("volume", volumes[i]);
+            event.setPayloadValue("timestamp", timestamp.toString());
+            event.setPayloadValue("change", toPrice(prices[i] - previousPrices[i]));
+            event.setPayloadValue("changePercent", percentChange(prices[i], previousPrices[i]));
+            event.setPayloadValue("dayChangePercent", percentChange(prices[i], dayStartPrices[i]));
+            event.setPayloadValue("weekChangePercent", percentChange(prices[i], weekStartPrices[i]));
+            event.setPayloadValue("monthChangePercent", percentChange(prices[i], monthStartPrices[i]));
+            return event;
         }
-    }
 
-    // Mock method to get company names - in production, you'd load from a database
-    private String getCompanyName(String symbol) {
-        Map<String, String> companyNames = new HashMap<>();
-        companyNames.put("AAPL", "APPLE INC.");
-        companyNames.put("MSFT", "MICROSOFT CORP.");
-        companyNames.put("GOOGL", "ALPHABET INC.");
-        companyNames.put("AMZN", "AMAZON.COM INC.");
-        companyNames.put("META", "META PLATFORMS INC.");
-        companyNames.put("TSLA", "TESLA INC.");
-        companyNames.put("NVDA", "NVIDIA CORP.");
-        companyNames.put("JPM", "JPMORGAN CHASE & CO.");
-        companyNames.put("V", "VISA INC.");
-        companyNames.put("ABBV", "ABBVIE INC.");
-        companyNames.put("JNJ", "JOHNSON & JOHNSON");
-        companyNames.put("WMT", "WALMART INC.");
-        companyNames.put("PG", "PROCTER & GAMBLE CO.");
-        companyNames.put("MA", "MASTERCARD INC.");
-        companyNames.put("UNH", "UNITEDHEALTH GROUP INC.");
-
-        return companyNames.getOrDefault(symbol, symbol + " CORP.");
+        synchronized Map<String, Object> snapshot(int i) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("symbol", symbols[i]);
+            result.put("price", toPrice(prices[i]));
+            result.put("bidPrice", toPrice(bidPrices[i]));
+            result.put("askPrice", toPrice(askPrices[i]));
+            result.put("volume", volumes[i]);
+            result.put("change", toPrice(prices[i] - previousPrices[i]));
+            result.put("changePercent", percentChange(prices[i], previousPrices[i]));
+            result.put("dayChangePercent", percentChange(prices[i], dayStartPrices[i]));
+            result.put("weekChangePercent", percentChange(prices[i], weekStartPrices[i]));
+            result.put("monthChangePercent", percentChange(prices[i], monthStartPrices[i]));
+            result.put("timestamp", Instant.ofEpochMilli(lastUpdates[i]).toString());
+            return result;
+        }
+
+        synchronized Quote lastQuote(int i, Listing listing) {
+            return new Quote(listing.getSymbol(), listing.getId(), toPrice(prices[i]), toPrice(bidPrices[i]),
+                    toPrice(askPrices[i]), volumes[i], toPrice(prices[i] - previousPrices[i]),
+                    percentChange(prices[i], previousPrices[i]), lastUpdates[i]);
+        }
+
+        private void grow(int capacity) {
+            symbols = Arrays.copyOf(symbols, capacity);
+            sectors = Arrays.copyOf(sectors, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            previousPrices = Arrays.copyOf(previousPrices, capacity);
+            bidPrices = Arrays.copyOf(bidPrices, capacity);
+            askPrices = Arrays.copyOf(askPrices, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+            lastUpdates = Arrays.copyOf(lastUpdates, capacity);
+            dayStartPrices = Arrays.copyOf(dayStartPrices, capacity);
+            weekStartPrices = Arrays.copyOf(weekStartPrices, capacity);
+            monthStartPrices = Arrays.copyOf(monthStartPrices, capacity);
+        }
     }
 }
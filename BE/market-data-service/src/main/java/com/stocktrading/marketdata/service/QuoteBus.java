@@ -0,0 +1,174 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Quote;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process fan-out of decoded quotes. The feed consumer publishes each quote once into a
+ * preallocated ring buffer, and every subscriber reads the ring on its own thread at its own
+ * pace, so a subscriber never waits for another and nothing is copied or decoded twice.
+ * <p>
+ * A quote is only overwritten once every subscriber has read it: when the slowest subscriber is a
+ * whole ring behind, publishing waits, which in turn slows down the Kafka consumer instead of
+ * losing ticks. Subscribers sleep while the ring is empty and are woken by the next publish.
+ */
+@Slf4j
+@Component
+public class QuoteBus {
+
+    // How long a publisher waiting for a full ring sleeps between checks
+    private static final long FULL_RING_WAIT_NANOS = 50_000;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Sequence of the last published quote; quote n lives in slot n & mask
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private Quote[] ring;
+    private int mask;
+
+    @Value("${market.data.quote-bus.size:65536}")
+    private int size; // rounded up to a power of two
+
+    @PostConstruct
+    public void init() {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        ring = new Quote[capacity];
+        mask = capacity - 1;
+        log.info("Initialized quote bus with {} slots", capacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.stop();
+        }
+    }
+
+    /**
+     * Start delivering the quotes published from now on to a listener, on a thread of its own
+     */
+    public synchronized void subscribe(String name, QuoteListener listener) {
+        Subscriber subscriber = new Subscriber(name, listener, cursor.get());
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+    }
+
+    /**
+     * Publish a quote to every subscriber, waiting while the slowest one is a whole ring behind
+     */
+    public synchronized void publish(Quote quote) {
+        append(quote);
+        wakeUpSubscribers();
+    }
+
+    /**
+     * Publish a batch of quotes in order, waking the subscribers once for the whole batch
+     */
+    public synchronized void publishAll(List<Quote> quotes) {
+        for (Quote quote : quotes) {
+            append(quote);
+        }
+        wakeUpSubscribers();
+    }
+
+    private void append(Quote quote) {
+        long next = cursor.get() + 1;
+        while (next - ring.length > slowestSequence()) {
+            // The subscribers may still be asleep from before this batch
+            wakeUpSubscribers();
+            LockSupport.parkNanos(FULL_RING_WAIT_NANOS);
+        }
+
+        ring[(int) (next & mask)] = quote;
+        cursor.set(next); // the volatile write makes the slot visible to the subscribers
+    }
+
+    private void wakeUpSubscribers() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.wakeUp();
+        }
+    }
+
+    private long slowestSequence() {
+        long slowest = cursor.get();
+        for (Subscriber subscriber : subscribers) {
+            slowest = Math.min(slowest, subscriber.sequence);
+        }
+        return slowest;
+    }
+
+    /**
+     * A listener and how far it has read the ring
+     */
+    private class Subscriber implements Runnable {
+
+        private final String name;
+        private final QuoteListener listener;
+        private final Thread thread;
+
+        // Sequence of the last quote handed to the listener
+        private volatile long sequence;
+        private volatile boolean waiting;
+        private volatile boolean running = true;
+
+        Subscriber(String name, QuoteListener listener, long sequence) {
+            this.name = name;
+            this.listener = listener;
+            this.sequence = sequence;
+            this.thread = new Thread(this, "quote-bus-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence + 1;
+            while (running) {
+                long available = cursor.get();
+                if (available < next) {
+                    // Announce the wait before checking again, so a publish in between still wakes us
+                    waiting = true;
+                    if (cursor.get() < next && running) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    continue;
+                }
+
+                for (; next <= available; next++) {
+                    Quote quote = ring[(int) (next & mask)];
+                    try {
+                        listener.onQuote(quote);
+                    } catch (Exception e) {
+                        log.error("Error in quote subscriber {} for {}", name, quote.getSymbol(), e);
+                    }
+                }
+                try {
+                    listener.onBatchEnd();
+                } catch (Exception e) {
+                    log.error("Error in quote subscriber {} at the end of a batch", name, e);
+                }
+                sequence = available; // frees the slots for the publisher
+            }
+        }
+
+        void wakeUp() {
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+}
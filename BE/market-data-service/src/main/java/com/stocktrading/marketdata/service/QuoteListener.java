@@ -0,0 +1,18 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Quote;
+
+/**
+ * Subscriber of the {@link QuoteBus}, called with every quote in feed order on its own thread
+ */
+public interface QuoteListener {
+
+    void onQuote(Quote quote);
+
+    /**
+     * Called after the quotes of one publish have been handed to {@link #onQuote}, for listeners
+     * that want to act once per batch rather than per quote
+     */
+    default void onBatchEnd() {
+    }
+}
@@ -0,0 +1,145 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Listing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The listings the service knows about, loaded once at startup from a resource file plus the
+ * simulator's synthetic listings, and never changed afterwards. Every lookup is a single hash
+ * or array access and returns shared objects, so it is safe to use per tick from any thread.
+ */
+@Slf4j
+@Service
+public class SymbolRegistry {
+
+    @Value("${market.data.symbols.resource:symbols.csv}")
+    private String resource;
+
+    @Value("${market.data.simulator.extra-symbols:0}")
+    private int extraSymbols; // synthetic SIMnnnnn listings for load tests
+
+    private List<Listing> listings;
+    private Map<String, Listing> listingsBySymbol;
+    private List<String> sectors;
+
+    @PostConstruct
+    public void init() {
+        List<Listing> loaded = new ArrayList<>();
+        Map<String, Listing> bySymbol = new HashMap<>();
+        List<String> sectorNames = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(resource).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",", 4);
+                if (fields.length < 4) {
+                    throw new IllegalStateException("Malformed listing in " + resource + ": " + line);
+                }
+                String symbol = fields[0].trim().toUpperCase();
+                int sectorId = sectorNames.indexOf(fields[2].trim());
+                if (sectorId < 0) {
+                    sectorId = sectorNames.size();
+                    sectorNames.add(fields[2].trim());
+                }
+                add(new Listing(loaded.size(), symbol, fields[1].trim(), sectorId,
+                        Double.parseDouble(fields[3].trim())), loaded, bySymbol);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load listings from " + resource, e);
+        }
+
+        // Synthetic listings are spread over the real sectors, with prices between 20 and 500
+        for (int i = 1; i <= extraSymbols; i++) {
+            String symbol = String.format("SIM%05d", i);
+            add(new Listing(loaded.size(), symbol, "SIMULATED " + symbol, i % Math.max(1, sectorNames.size()),
+                    20.0 + (i * 37L) % 480), loaded, bySymbol);
+        }
+
+        listings = Collections.unmodifiableList(loaded);
+        listingsBySymbol = Collections.unmodifiableMap(bySymbol);
+        sectors = Collections.unmodifiableList(sectorNames);
+        log.info("Loaded {} listings in {} sectors ({} synthetic)", listings.size(), sectors.size(), extraSymbols);
+    }
+
+    private static void add(Listing listing, List<Listing> listings, Map<String, Listing> bySymbol) {
+        if (bySymbol.putIfAbsent(listing.getSymbol(), listing) != null) {
+            throw new IllegalStateException("Duplicate listing: " + listing.getSymbol());
+        }
+        listings.add(listing);
+    }
+
+    /**
+     * Whether a symbol is listed
+     */
+    public boolean isListed(String symbol) {
+        return symbol != null && listingsBySymbol.containsKey(symbol);
+    }
+
+    /**
+     * The listing of a symbol, or null if it isn't listed
+     */
+    public Listing get(String symbol) {
+        return symbol != null ? listingsBySymbol.get(symbol) : null;
+    }
+
+    /**
+     * The listing with the given ID
+     */
+    public Listing get(int id) {
+        return listings.get(id);
+    }
+
+    /**
+     * ID of a symbol, or -1 if it isn't listed
+     */
+    public int idOf(String symbol) {
+        Listing listing = get(symbol);
+        return listing != null ? listing.getId() : -1;
+    }
+
+    /**
+     * Company name of a symbol; unlisted symbols get a placeholder
+     */
+    public String nameOf(String symbol) {
+        Listing listing = get(symbol);
+        return listing != null ? listing.getName() : symbol + " CORP.";
+    }
+
+    /**
+     * All listings, ordered by ID
+     */
+    public List<Listing> getListings() {
+        return listings;
+    }
+
+    /**
+     * Sector names, indexed by sector ID
+     */
+    public List<String> getSectors() {
+        return sectors;
+    }
+
+    public int size() {
+        return listings.size();
+    }
+}
@@ -0,0 +1,252 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Listing;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Search over the symbols and company names of the {@link SymbolRegistry}, built once at startup
+ * since the listings never change. Prefixes are looked up in tries of symbols and of name words,
+ * and substrings of three characters or more through trigram indexes of symbols and of names whose
+ * candidates are then verified, so no lookup walks all listings.
+ * <p>
+ * Results are ranked: the exact symbol first, then symbol prefixes, name word prefixes, symbol
+ * substrings and name substrings. Prefix matches list shorter symbols first, substring matches
+ * come in listing order.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SymbolSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final SymbolRegistry symbolRegistry;
+
+    @Value("${market.data.search.max-results:50}")
+    private int maxResults;
+
+    private TrieNode symbolTrie;
+    private TrieNode nameWordTrie;
+    // Trigram -> IDs of the listings whose symbol / name contains it, ascending
+    private Map<String, int[]> symbolTrigrams;
+    private Map<String, int[]> nameTrigrams;
+
+    // Lower-cased symbols and names by listing ID, for verifying trigram candidates
+    private String[] symbols;
+    private String[] names;
+
+    @PostConstruct
+    public void init() {
+        long start = System.nanoTime();
+        List<Listing> listings = symbolRegistry.getListings();
+        symbols = new String[listings.size()];
+        names = new String[listings.size()];
+
+        // Shorter symbols first, so every trie node lists its best matches first
+        Integer[] ranked = new Integer[listings.size()];
+        for (Listing listing : listings) {
+            symbols[listing.getId()] = normalize(listing.getSymbol());
+            names[listing.getId()] = normalize(listing.getName());
+            ranked[listing.getId()] = listing.getId();
+        }
+        Arrays.sort(ranked, Comparator.comparingInt((Integer id) -> symbols[id].length())
+                .thenComparing(id -> symbols[id]));
+
+        TrieBuilder symbolTrieBuilder = new TrieBuilder();
+        TrieBuilder nameWordTrieBuilder = new TrieBuilder();
+        for (int id : ranked) {
+            symbolTrieBuilder.add(symbols[id], id);
+            for (String word : names[id].split("[^\\p{L}\\p{N}]+")) {
+                nameWordTrieBuilder.add(word, id);
+            }
+        }
+        symbolTrie = symbolTrieBuilder.build();
+        nameWordTrie = nameWordTrieBuilder.build();
+
+        symbolTrigrams = trigramIndex(symbols);
+        nameTrigrams = trigramIndex(names);
+
+        log.info("Indexed {} listings for search ({} symbol and {} name trigrams) in {} ms", symbols.length,
+                symbolTrigrams.size(), nameTrigrams.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Listings matching a query on symbol or company name, best matches first
+     *
+     * @param query case-insensitive; blank queries match nothing
+     * @param limit most listings to return, capped at the configured maximum
+     */
+    public List<Listing> search(String query, int limit) {
+        limit = Math.min(limit, maxResults);
+        List<Listing> results = new ArrayList<>();
+        String normalized = query != null ? normalize(query.trim()) : "";
+        if (normalized.isEmpty() || limit <= 0) {
+            return results;
+        }
+        TrieNode symbolNode = symbolTrie.find(normalized);
+        if (symbolNode != null) {
+            // The exact symbol is the shortest one under its node
+            collect(symbolNode.ids, results, limit);
+        }
+        TrieNode nameWordNode = nameWordTrie.find(normalized);
+        if (nameWordNode != null) {
+            collect(nameWordNode.ids, results, limit);
+        }
+
+        if (normalized.length() >= GRAM) {
+            collectContaining(symbolTrigrams, symbols, normalized, results, limit);
+            collectContaining(nameTrigrams, names, normalized, results, limit);
+        }
+        return results;
+    }
+
+    private void collect(int[] ids, List<Listing> results, int limit) {
+        for (int i = 0; i < ids.length && results.size() < limit; i++) {
+            add(ids[i], results);
+        }
+    }
+
+    /**
+     * Add the listings whose text really contains the query. The candidates are the IDs in every
+     * posting list of the query's trigrams: the shortest list is walked and the others probed, so
+     * the walk stops as soon as enough results are found.
+     */
+    private void collectContaining(Map<String, int[]> index, String[] texts, String query,
+                                   List<Listing> results, int limit) {
+        if (results.size() >= limit) {
+            return;
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            int[] ids = index.get(query.substring(i, i + GRAM));
+            if (ids == null) {
+                return;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+
+        int[] shortest = lists.get(0);
+        for (int i = 0; i < shortest.length && results.size() < limit; i++) {
+            int id = shortest[i];
+            if (inAll(lists, id) && texts[id].contains(query)) {
+                add(id, results);
+            }
+        }
+    }
+
+    private static boolean inAll(List<int[]> lists, int id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (Arrays.binarySearch(lists.get(i), id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(int id, List<Listing> results) {
+        // Results are few, so checking them beats allocating a set per query
+        Listing listing = symbolRegistry.get(id);
+        if (!results.contains(listing)) {
+            results.add(listing);
+        }
+    }
+
+    private static Map<String, int[]> trigramIndex(String[] texts) {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int id = 0; id < texts.length; id++) {
+            String text = texts[id];
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                List<Integer> ids = postings.computeIfAbsent(text.substring(i, i + GRAM), gram -> new ArrayList<>());
+                // IDs are added in ascending order, so a repeat can only be the last one
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        Map<String, int[]> index = new HashMap<>(postings.size() * 2);
+        postings.forEach((gram, ids) -> index.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return index;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Trie node with the IDs of every listing below it, best ranked first
+     */
+    private static class TrieNode {
+        private final char[] labels; // sorted
+        private final TrieNode[] children;
+        private final int[] ids;
+
+        TrieNode(char[] labels, TrieNode[] children, int[] ids) {
+            this.labels = labels;
+            this.children = children;
+            this.ids = ids;
+        }
+
+        TrieNode find(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                int child = Arrays.binarySearch(node.labels, prefix.charAt(i));
+                node = child >= 0 ? node.children[child] : null;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Mutable trie used while indexing, frozen into {@link TrieNode}s of arrays
+     */
+    private static class TrieBuilder {
+        private final Map<Character, TrieBuilder> children = new HashMap<>();
+        private final List<Integer> ids = new ArrayList<>();
+
+        void add(String key, int id) {
+            TrieBuilder node = this;
+            node.addId(id);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieBuilder());
+                node.addId(id);
+            }
+        }
+
+        private void addId(int id) {
+            // A name can hold several words with the same prefix
+            if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                ids.add(id);
+            }
+        }
+
+        TrieNode build() {
+            char[] labels = new char[children.size()];
+            int i = 0;
+            for (char label : children.keySet()) {
+                labels[i++] = label;
+            }
+            Arrays.sort(labels);
+
+            TrieNode[] built = new TrieNode[labels.length];
+            for (i = 0; i < labels.length; i++) {
+                built[i] = children.get(labels[i]).build();
+            }
+            return new TrieNode(labels, built, ids.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.stocktrading.marketdata.service;
+
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Mover;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.model.TopRanking;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top gainers, losers and most active listings, kept up to date on every tick instead of sorting
+ * all stocks on each read. Each list is a {@link TopRanking} over listing IDs, so a tick costs
+ * O(log n) per list and a read only touches the listed rows.
+ * Ticks come from the {@link QuoteBus}, on this service's own subscriber thread.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TopMovers implements QuoteListener {
+
+    private final QuoteBus quoteBus;
+    private final MarketPricePublisher marketPricePublisher;
+    private final SymbolRegistry symbolRegistry;
+
+    @Value("${market.data.movers.size:20}")
+    private int size; // longest list kept per ranking
+
+    // Latest values by listing ID
+    private double[] prices;
+    private double[] changePercents;
+    private long[] volumes;
+
+    private TopRanking gainers;
+    private TopRanking losers;
+    private TopRanking mostActive;
+
+    // Bumped on every ranked tick, so pushers can skip unchanged lists
+    private volatile long version;
+
+    @PostConstruct
+    public void init() {
+        int listings = symbolRegistry.size();
+        prices = new double[listings];
+        changePercents = new double[listings];
+        volumes = new long[listings];
+        gainers = new TopRanking(size, listings);
+        losers = new TopRanking(size, listings);
+        mostActive = new TopRanking(size, listings);
+
+        // Rank the simulator's last values right away rather than after the next tick of every symbol
+        for (Listing listing : symbolRegistry.getListings()) {
+            Quote lastQuote = marketPricePublisher.getLastQuote(listing.getSymbol());
+            if (lastQuote != null) {
+                onQuote(lastQuote);
+            }
+        }
+        log.info("Ranked top movers of {} listings", listings);
+        quoteBus.subscribe("movers", this);
+    }
+
+    @Override
+    public void onQuote(Quote quote) {
+        int id = quote.getSymbolId();
+        if (id < 0) {
+            return; // only listings are ranked
+        }
+
+        double price = quote.getPrice().doubleValue();
+        synchronized (this) {
+            double changePercent;
+            if (quote.getChangePercent() != null) {
+                changePercent = quote.getChangePercent().doubleValue();
+            } else {
+                // Ticks without a change are compared to the previous price we saw
+                double previous = prices[id];
+                changePercent = previous > 0 ? (price - previous) / previous * 100 : 0;
+            }
+
+            prices[id] = price;
+            changePercents[id] = changePercent;
+            volumes[id] = quote.getVolume();
+
+            gainers.update(id, changePercent);
+            losers.update(id, -changePercent);
+            mostActive.update(id, quote.getVolume());
+            version++;
+        }
+    }
+
+    /**
+     * All three lists, each at most {@code limit} long, as returned by the REST endpoint and
+     * pushed on the WebSocket channel
+     */
+    public synchronized Map<String, Object> getMovers(int limit) {
+        Map<String, Object> movers = new HashMap<>();
+        movers.put("gainers", rowsOf(gainers, limit));
+        movers.put("losers", rowsOf(losers, limit));
+        movers.put("mostActive", rowsOf(mostActive, limit));
+        movers.put("version", version);
+        return movers;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private List<Mover> rowsOf(TopRanking ranking, int limit) {
+        int[] ids = ranking.top(limit);
+        List<Mover> rows = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Listing listing = symbolRegistry.get(id);
+            rows.add(new Mover(listing.getSymbol(), listing.getName(), prices[id],
+                    Math.round(changePercents[id] * 10000) / 10000.0,
+                    volumes[id]));
+        }
+        return rows;
+    }
+}
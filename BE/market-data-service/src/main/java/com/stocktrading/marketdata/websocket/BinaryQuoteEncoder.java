@@ -0,0 +1,74 @@
+package com.stocktrading.marketdata.websocket;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Frames of the binary market data feed ({@value WireFormat#BINARY_SUBPROTOCOL}), big-endian:
+ * <pre>
+ * dictionary: u8 type=1, u8 price scale, u16 count, count x (u16 symbol id, u8 length, ASCII symbol)
+ * quote:      u8 type=2, u16 symbol id, i64 price, i64 bid, i64 ask, i64 volume, i64 epoch millis
+ * </pre>
+ * Prices are integers scaled by 10^scale (scale is {@value #PRICE_SCALE}), so a price of 185.5 is 1855000.
+ * A quote is 43 bytes against about 200 for the same update in JSON. Frames are returned as arrays
+ * so one encoding can be shared: wrap it in a new BinaryMessage per session, since sending
+ * consumes the message's buffer.
+ */
+public final class BinaryQuoteEncoder {
+
+    public static final byte DICTIONARY_FRAME = 1;
+    public static final byte QUOTE_FRAME = 2;
+    public static final int PRICE_SCALE = 4;
+    public static final int QUOTE_FRAME_SIZE = 1 + 2 + 5 * Long.BYTES;
+
+    private BinaryQuoteEncoder() {
+    }
+
+    /**
+     * A dictionary frame mapping symbol IDs to symbols
+     */
+    public static byte[] dictionary(Map<String, Integer> entries) {
+        if (entries.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Binary feed symbol IDs are 16-bit, got " + entries.size() + " symbols");
+        }
+        int size = 1 + 1 + 2;
+        for (String symbol : entries.keySet()) {
+            size += 2 + 1 + symbol.length();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(DICTIONARY_FRAME);
+        buffer.put((byte) PRICE_SCALE);
+        buffer.putShort((short) entries.size());
+        entries.forEach((symbol, id) -> {
+            byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+            buffer.putShort(id.shortValue());
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        });
+        return buffer.array();
+    }
+
+    /**
+     * A quote frame; missing prices or volume are sent as 0
+     */
+    public static byte[] quote(int symbolId, BigDecimal price, BigDecimal bidPrice, BigDecimal askPrice,
+                                      long volume, long epochMillis) {
+        ByteBuffer buffer = ByteBuffer.allocate(QUOTE_FRAME_SIZE);
+        buffer.put(QUOTE_FRAME);
+        buffer.putShort((short) symbolId);
+        buffer.putLong(scaled(price));
+        buffer.putLong(scaled(bidPrice));
+        buffer.putLong(scaled(askPrice));
+        buffer.putLong(volume);
+        buffer.putLong(epochMillis);
+        return buffer.array();
+    }
+
+    private static long scaled(BigDecimal price) {
+        return price != null ? price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValue() : 0L;
+    }
+}
@@ -2,28 +2,58 @@ package com.stocktrading.marketdata.websocket;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.marketdata.model.Candle;
+import com.stocktrading.marketdata.model.CandleInterval;
+import com.stocktrading.marketdata.model.Indicators;
+import com.stocktrading.marketdata.model.Listing;
+import com.stocktrading.marketdata.model.Quote;
+import com.stocktrading.marketdata.model.TickHistory;
+import com.stocktrading.marketdata.service.CandleAggregator;
+import com.stocktrading.marketdata.service.CandleListener;
+import com.stocktrading.marketdata.service.IndicatorEngine;
+import com.stocktrading.marketdata.service.IndicatorListener;
 import com.stocktrading.marketdata.service.MarketPricePublisher;
-
+import com.stocktrading.marketdata.service.QuoteBus;
+import com.stocktrading.marketdata.service.QuoteListener;
+import com.stocktrading.marketdata.service.SymbolRegistry;
+import com.stocktrading.marketdata.service.SymbolSearchIndex;
+import com.stocktrading.marketdata.service.TopMovers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
-public class MarketDataWebSocketHandler extends TextWebSocketHandler {
+public class MarketDataWebSocketHandler extends TextWebSocketHandler
+        implements CandleListener, IndicatorListener, QuoteListener, SubProtocolCapable {
+
+    private static final String MOVERS_CHANNEL = "movers";
+    private static final String INDICATORS_CHANNEL = "indicators";
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -31,33 +61,175 @@ public class MarketDataWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private MarketPricePublisher marketPricePublisher;
 
-    // Store sessions and their filter preferences
+    @Autowired
+    private CandleAggregator candleAggregator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SymbolRegistry symbolRegistry;
+
+    @Autowired
+    private QuoteBus quoteBus;
+
+    @Autowired
+    private TopMovers topMovers;
+
+    @Autowired
+    private SymbolSearchIndex symbolSearchIndex;
+
+    @Autowired
+    private IndicatorEngine indicatorEngine;
+
+    // Symbol dictionary frame for binary clients; the registry never changes, so it is encoded once
+    private byte[] dictionaryFrame;
+
+    // Store sessions and the symbols they subscribed to
     private final List<WebSocketSession> sessions = new CopyOnWriteArrayList<>();
+    private final SymbolSubscriptions subscriptions = new SymbolSubscriptions();
+
+    // Symbols each session wants indicators of; unlike quotes, sessions get none until they subscribe
+    private final SymbolSubscriptions indicatorSubscriptions = new SymbolSubscriptions();
+
+    // Sessions on the top movers channel, and the movers version they were last sent
+    private final Set<WebSocketSession> moversSessions = ConcurrentHashMap.newKeySet();
+    private volatile long moversVersionSent = -1;
+
+    // Session ID -> bounded, conflating outbound queue for broadcasts, drained by the send workers
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private ExecutorService sendExecutor;
+    private Counter evictedCounter;
+    private Counter droppedCounter;
     private final Map<String, Map<String, Object>> stockData = new ConcurrentHashMap<>();
 
-    // Historical data for sparklines - keep last 50 data points for each stock
-    private final Map<String, List<Map<String, Object>>> stockHistory = new ConcurrentHashMap<>();
-    private final int MAX_HISTORY_POINTS = 50;
+    // Historical data for sparklines - a ring buffer per stock, sent to new connections;
+    // afterwards clients extend their sparklines from the updates
+    private final Map<String, TickHistory> stockHistory = new ConcurrentHashMap<>();
+
+    // Bumped once per batch of quotes applied; the initial data is re-encoded only when it moves
+    private volatile long dataVersion;
+    private volatile InitialDataSnapshot initialDataSnapshot;
+    private final Object initialDataLock = new Object();
+
+    @Value("${market.data.history.capacity:1024}")
+    private int historyCapacity;
+
+    @Value("${market.data.search.max-results:50}")
+    private int maxFilterResults;
+
+    @Value("${market.data.websocket.send-threads:4}")
+    private int sendThreads;
+
+    @Value("${market.data.websocket.session.max-buffered-bytes:524288}")
+    private int maxBufferedBytes;
+
+    @Value("${market.data.websocket.session.slow-timeout-ms:5000}")
+    private long slowSessionTimeoutMs;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        sendExecutor = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "market-data-ws-send-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictedCounter = Counter.builder("market.data.websocket.sessions.evicted")
+                .description("WebSocket sessions closed for falling behind the market data feed")
+                .tag("endpoint", "market-data")
+                .register(meterRegistry);
+        // Aggregates only: per-session meters would add series on every reconnect
+        droppedCounter = Counter.builder("market.data.websocket.dropped")
+                .description("Messages replaced by a newer one, or refused by a full queue, before they were sent")
+                .tag("endpoint", "market-data")
+                .register(meterRegistry);
+        Gauge.builder("market.data.websocket.queue-depth.total", outboxes,
+                        queues -> queues.values().stream().mapToInt(SessionOutbox::size).sum())
+                .description("Messages waiting to be sent, across all WebSocket sessions")
+                .tag("endpoint", "market-data")
+                .register(meterRegistry);
+        Gauge.builder("market.data.websocket.queue-depth.max", outboxes,
+                        queues -> queues.values().stream().mapToInt(SessionOutbox::size).max().orElse(0))
+                .description("Messages waiting to be sent to the WebSocket session furthest behind")
+                .tag("endpoint", "market-data")
+                .register(meterRegistry);
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        symbolRegistry.getListings().forEach(listing -> dictionary.put(listing.getSymbol(), listing.getId()));
+        dictionaryFrame = BinaryQuoteEncoder.dictionary(dictionary);
+        candleAggregator.addListener(this);
+        indicatorEngine.addListener(this);
+        warmFromLastValues();
+        quoteBus.subscribe("market-data-ws", this);
+    }
+
+    /**
+     * Seed the quotes and sparklines from the simulator's last values, so clients connecting right
+     * after a restart get a full table instead of waiting for the next tick of every symbol.
+     * The feed consumer only starts once the context is up, so live ticks always land on top.
+     */
+    private void warmFromLastValues() {
+        for (Map<String, Object> quote : marketPricePublisher.getAllStockData()) {
+            String symbol = (String) quote.get("symbol");
+
+            Map<String, Object> stockInfo = new HashMap<>();
+            stockInfo.put("symbol", symbol);
+            stockInfo.put("name", quote.get("name"));
+            stockInfo.put("price", quote.get("price"));
+            stockInfo.put("bidPrice", quote.get("bidPrice"));
+            stockInfo.put("askPrice", quote.get("askPrice"));
+            stockInfo.put("volume", quote.get("volume"));
+            stockInfo.put("timestamp", quote.get("timestamp"));
+            stockInfo.put("changePercent", quote.get("changePercent"));
+            stockData.putIfAbsent(symbol, stockInfo);
+
+            TickHistory history = stockHistory.computeIfAbsent(symbol, s -> new TickHistory(historyCapacity));
+            try {
+                marketPricePublisher.getHistoricalData(symbol, historyCapacity).forEach(history::append);
+            } catch (IOException e) {
+                log.error("Error copying tick history of {}", symbol, e);
+            }
+        }
+        log.info("Warmed market data feed with the last values of {} stocks", stockData.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return WireFormat.SUBPROTOCOLS;
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        log.info("New WebSocket connection established: {}", session.getId());
+        WireFormat format = WireFormat.negotiate(session);
+        log.info("New WebSocket connection established: {} ({})", session.getId(), format);
+        SessionOutbox outbox = new SessionOutbox(session, sendExecutor, maxBufferedBytes, droppedCounter);
+        outboxes.put(session.getId(), outbox);
         sessions.add(session);
+        subscriptions.register(session);
 
-        // Send initial stock data to new connection
+        // Updates are queued from here on, but only sent after the symbol dictionary for binary
+        // clients and the initial data; taking the initial data after registering loses no quote
+        List<WebSocketMessage<?>> firstMessages = new ArrayList<>(2);
+        if (format == WireFormat.BINARY) {
+            firstMessages.add(new BinaryMessage(dictionaryFrame));
+        }
         try {
-            log.info("Sending initial data to session: {}", session.getId());
-            sendInitialData(session);
-            log.info("Initial data sent successfully to session: {}", session.getId());
+            firstMessages.add(initialDataMessage());
         } catch (IOException e) {
-            log.error("Error sending initial data to client", e);
+            log.error("Error preparing initial data for client", e);
         }
+        outbox.start(firstMessages);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         log.info("WebSocket connection closed: {} with status: {}", session.getId(), status);
-        sessions.remove(session);
+        removeSession(session);
     }
 
     @Override
@@ -68,10 +240,19 @@ public class MarketDataWebSocketHandler extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
-            // Handle client messages (filtering, etc.)
+            // Handle client messages (subscriptions, filtering, etc.)
             Map<String, Object> request = objectMapper.readValue(message.getPayload(), Map.class);
-
-            if (request.containsKey("filter")) {
+            Object action = request.get("action");
+
+            if (MOVERS_CHANNEL.equals(request.get("channel"))) {
+                handleMoversRequest(session, action);
+            } else if (INDICATORS_CHANNEL.equals(request.get("channel"))) {
+                handleIndicatorsRequest(session, action, SymbolSubscriptions.symbolsOf(request));
+            } else if ("subscribe".equals(action)) {
+                sendSubscriptions(session, subscriptions.subscribe(session, SymbolSubscriptions.symbolsOf(request)));
+            } else if ("unsubscribe".equals(action)) {
+                sendSubscriptions(session, subscriptions.unsubscribe(session, SymbolSubscriptions.symbolsOf(request)));
+            } else if (request.containsKey("filter")) {
                 String filter = (String) request.get("filter");
                 // Implement filtering logic
                 sendFilteredData(session, filter);
@@ -82,187 +263,354 @@ public class MarketDataWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    @KafkaListener(
-            topics = "${kafka.topics.market-price-updates}",
-            containerFactory = "kafkaListenerContainerFactory"
-    )
-    public void handleMarketPriceUpdate(EventMessage event) {
-        if ("MARKET_PRICES_UPDATED".equals(event.getType())) {
-            try {
-                String symbol = event.getPayloadValue("symbol");
-                BigDecimal price = BigDecimal.valueOf((Double) event.getPayloadValue("price"));
-                BigDecimal bidPrice = BigDecimal.valueOf((Double) event.getPayloadValue("bidPrice"));
-                BigDecimal askPrice = BigDecimal.valueOf((Double) event.getPayloadValue("askPrice"));
-                Object volumeObj = event.getPayloadValue("volume");
-                Long volume;
-                if (volumeObj instanceof Integer) {
-                    volume = ((Integer) volumeObj).longValue();
-                } else if (volumeObj instanceof Long) {
-                    volume = (Long) volumeObj;
-                } else if (volumeObj instanceof Number) {
-                    volume = ((Number) volumeObj).longValue();
-                } else {
-                    volume = 0L; // Default value
-                }
-
-                // Update current stock data
-                Map<String, Object> stockInfo = new HashMap<>();
-                stockInfo.put("symbol", symbol);
-                stockInfo.put("name", getCompanyName(symbol));
-                stockInfo.put("price", price);
-                stockInfo.put("bidPrice", bidPrice);
-                stockInfo.put("askPrice", askPrice);
-                stockInfo.put("volume", volume);
-                stockInfo.put("timestamp", Instant.now().toString());
-
-                // Calculate percent change (for now using a simple simulation)
-                BigDecimal previousPrice = stockData.containsKey(symbol) ?
-                        (BigDecimal) stockData.get(symbol).get("price") : price;
-                if (previousPrice != null && previousPrice.compareTo(BigDecimal.ZERO) > 0) {
-                    BigDecimal changePercent = price.subtract(previousPrice)
-                            .divide(previousPrice, 4, BigDecimal.ROUND_HALF_UP)
-                            .multiply(new BigDecimal(100));
-                    stockInfo.put("changePercent", changePercent);
-                }
-
-                stockData.put(symbol, stockInfo);
+    /**
+     * Apply a quote from the feed, on this handler's quote bus thread
+     */
+    @Override
+    public void onQuote(Quote quote) {
+        String symbol = quote.getSymbol();
+        BigDecimal price = quote.getPrice();
+
+        // Update current stock data
+        Map<String, Object> stockInfo = new HashMap<>();
+        stockInfo.put("symbol", symbol);
+        stockInfo.put("name", symbolRegistry.nameOf(symbol));
+        stockInfo.put("price", price);
+        stockInfo.put("bidPrice", quote.getBidPrice());
+        stockInfo.put("askPrice", quote.getAskPrice());
+        stockInfo.put("volume", quote.getVolume());
+        stockInfo.put("timestamp", quote.getTimestamp());
+
+        // Percent change since the previous quote of the symbol
+        Map<String, Object> previous = stockData.get(symbol);
+        BigDecimal previousPrice = previous != null ? (BigDecimal) previous.get("price") : price;
+        if (previousPrice != null && previousPrice.compareTo(BigDecimal.ZERO) > 0) {
+            BigDecimal changePercent = price.subtract(previousPrice)
+                    .divide(previousPrice, 4, BigDecimal.ROUND_HALF_UP)
+                    .multiply(new BigDecimal(100));
+            stockInfo.put("changePercent", changePercent);
+        }
 
-                // Update historical data for sparklines
-                updateHistoricalData(symbol, stockInfo);
+        stockData.put(symbol, stockInfo);
 
-                // Broadcast to all connected clients
-                broadcastUpdate(symbol, stockInfo);
+        // Update historical data for sparklines
+        stockHistory.computeIfAbsent(symbol, s -> new TickHistory(historyCapacity))
+                .append(quote.getEpochMillis(), price.doubleValue(), quote.getVolume());
 
-            } catch (Exception e) {
-                log.error("Error processing market price update", e);
-            }
-        }
+        // Broadcast to all connected clients
+        broadcastUpdate(quote, stockInfo);
     }
 
-    private void updateHistoricalData(String symbol, Map<String, Object> stockInfo) {
-        if (!stockHistory.containsKey(symbol)) {
-            stockHistory.put(symbol, new ArrayList<>());
+    /**
+     * The encoded initial data, shared by every connect until the next batch of quotes has been
+     * applied. Only one connect re-encodes it when it is out of date; the others wait for and reuse
+     * that result, so a reconnect storm costs one encoding per batch instead of one per client.
+     */
+    private TextMessage initialDataMessage() throws IOException {
+        InitialDataSnapshot snapshot = initialDataSnapshot;
+        if (snapshot != null && snapshot.version == dataVersion) {
+            return snapshot.message;
         }
 
-        List<Map<String, Object>> history = stockHistory.get(symbol);
-
-        // Create a copy of relevant data for history
-        Map<String, Object> historyPoint = new HashMap<>();
-        historyPoint.put("price", stockInfo.get("price"));
-        historyPoint.put("volume", stockInfo.get("volume"));
-        historyPoint.put("timestamp", stockInfo.get("timestamp"));
-
-        history.add(historyPoint);
-
-        // Trim history to maximum size
-        if (history.size() > MAX_HISTORY_POINTS) {
-            history = history.subList(history.size() - MAX_HISTORY_POINTS, history.size());
-            stockHistory.put(symbol, history);
+        synchronized (initialDataLock) {
+            snapshot = initialDataSnapshot;
+            long version = dataVersion;
+            if (snapshot == null || snapshot.version != version) {
+                snapshot = new InitialDataSnapshot(version, new TextMessage(encodeInitialData(version)));
+                initialDataSnapshot = snapshot;
+            }
+            return snapshot.message;
         }
     }
 
-    private void sendInitialData(WebSocketSession session) throws IOException {
+    private byte[] encodeInitialData(long version) throws IOException {
         Map<String, Object> initialData = new HashMap<>();
         initialData.put("type", "initialData");
+        initialData.put("version", version);
         initialData.put("stocks", new ArrayList<>(stockData.values()));
 
         // Limit history data size - only send most recent 20 points per stock
-        Map<String, List<Map<String, Object>>> limitedHistory = new HashMap<>();
-        stockHistory.forEach((symbol, history) -> {
-            int size = history.size();
-            int start = Math.max(0, size - 20); // Only take last 20 points
-            limitedHistory.put(symbol, history.subList(start, size));
-        });
+        Map<String, TickHistory.View> limitedHistory = new HashMap<>();
+        stockHistory.forEach((symbol, history) -> limitedHistory.put(symbol, history.latest(20)));
 
         initialData.put("history", limitedHistory);
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(initialData)));
+        return objectMapper.writeValueAsBytes(initialData);
+    }
+
+    /**
+     * Mark the initial data out of date once the quotes of a batch are all applied
+     */
+    @Override
+    public void onBatchEnd() {
+        dataVersion++; // only this handler's quote bus thread writes it
     }
 
     private void sendFilteredData(WebSocketSession session, String filter) throws IOException {
         List<Map<String, Object>> filteredStocks = new ArrayList<>();
 
-        for (Map<String, Object> stock : stockData.values()) {
-            String symbol = (String) stock.get("symbol");
-            String name = (String) stock.get("name");
-
-            if (filter == null || filter.isEmpty() ||
-                    symbol.toLowerCase().contains(filter.toLowerCase()) ||
-                    name.toLowerCase().contains(filter.toLowerCase())) {
-                filteredStocks.add(stock);
+        if (filter == null || filter.trim().isEmpty()) {
+            filteredStocks.addAll(stockData.values());
+        } else {
+            // Matches come ranked from the search index; stocks without a quote yet are left out
+            for (Listing listing : symbolSearchIndex.search(filter, maxFilterResults)) {
+                Map<String, Object> stock = stockData.get(listing.getSymbol());
+                if (stock != null) {
+                    filteredStocks.add(stock);
+                }
             }
         }
 
         Map<String, Object> response = new HashMap<>();
         response.put("type", "filteredData");
         response.put("stocks", filteredStocks);
+        reply(session, objectMapper.writeValueAsBytes(response));
+    }
 
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+    private void sendSubscriptions(WebSocketSession session, Set<String> symbols) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "subscriptions");
+        response.put("symbols", symbols);
+        reply(session, objectMapper.writeValueAsBytes(response));
+    }
+
+    /**
+     * Queue a reply to a client request on the session's outbox, so a slow socket never holds up
+     * the thread handling the request
+     */
+    private void reply(WebSocketSession session, byte[] message) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox != null) {
+            outbox.send(new TextMessage(message));
+        }
+    }
+
+    /**
+     * Join or leave the top movers channel; joining sends the current lists straight away
+     */
+    private void handleMoversRequest(WebSocketSession session, Object action) throws IOException {
+        if ("subscribe".equals(action)) {
+            moversSessions.add(session);
+            reply(session, moversMessage());
+        } else if ("unsubscribe".equals(action)) {
+            moversSessions.remove(session);
+        }
+    }
+
+    /**
+     * Subscribe to or unsubscribe from the indicators of symbols. Subscribing replies with the
+     * symbols now subscribed and the current indicators of the ones just added.
+     */
+    private void handleIndicatorsRequest(WebSocketSession session, Object action, List<String> symbols)
+            throws IOException {
+        Set<String> subscribed;
+        if ("subscribe".equals(action)) {
+            subscribed = indicatorSubscriptions.subscribe(session, symbols);
+        } else if ("unsubscribe".equals(action)) {
+            subscribed = indicatorSubscriptions.unsubscribe(session, symbols);
+        } else {
+            return;
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "indicatorSubscriptions");
+        response.put("symbols", subscribed);
+        response.put("settings", indicatorEngine.getSettings());
+
+        reply(session, objectMapper.writeValueAsBytes(response));
+        if ("subscribe".equals(action)) {
+            List<String> added = symbols.contains(SymbolSubscriptions.ALL_SYMBOLS)
+                    ? new ArrayList<>(stockData.keySet()) : symbols;
+            for (String symbol : added) {
+                Indicators indicators = indicatorEngine.getIndicators(symbol);
+                if (indicators != null) {
+                    reply(session, indicatorsMessage(indicators));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream the new indicators of a symbol to the sessions subscribed to them
+     */
+    @Override
+    public void onIndicators(Indicators indicators) {
+        String symbol = indicators.getSymbol();
+        if (!indicatorSubscriptions.hasSessions(symbol)) {
+            return; // skip encoding what nobody asked for
+        }
+
+        try {
+            broadcastMessage(indicatorSubscriptions, symbol, "indicators:" + symbol,
+                    indicatorsMessage(indicators), null);
+        } catch (IOException e) {
+            log.error("Error preparing indicators message", e);
+        }
+    }
+
+    private byte[] indicatorsMessage(Indicators indicators) throws IOException {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", INDICATORS_CHANNEL);
+        message.put("symbol", indicators.getSymbol());
+        message.put("data", indicators);
+        return objectMapper.writeValueAsBytes(message);
     }
 
-    private void broadcastUpdate(String symbol, Map<String, Object> stockInfo) {
+    /**
+     * Push the top movers to the channel's sessions when they changed since the last push.
+     * The lists are encoded once per push and conflated per session like quote updates.
+     */
+    @Scheduled(fixedRateString = "${market.data.movers.push-ms:1000}")
+    public void pushMovers() {
+        long version = topMovers.getVersion();
+        if (moversSessions.isEmpty() || version == moversVersionSent) {
+            return;
+        }
+        moversVersionSent = version;
+
+        try {
+            TextMessage message = new TextMessage(moversMessage());
+            for (WebSocketSession session : moversSessions) {
+                SessionOutbox outbox = outboxes.get(session.getId());
+                if (outbox != null) {
+                    outbox.offer(MOVERS_CHANNEL, message);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error preparing top movers message", e);
+        }
+    }
+
+    private byte[] moversMessage() throws IOException {
+        Map<String, Object> movers = topMovers.getMovers(topMovers.getSize());
+        movers.put("type", MOVERS_CHANNEL);
+        return objectMapper.writeValueAsBytes(movers);
+    }
+
+    /**
+     * Send the new quote only; clients append it to the sparkline they got with the initial data
+     */
+    private void broadcastUpdate(Quote quote, Map<String, Object> stockInfo) {
+        String symbol = quote.getSymbol();
         Map<String, Object> update = new HashMap<>();
         update.put("type", "update");
         update.put("symbol", symbol);
         update.put("data", stockInfo);
 
-        // Add historical data for sparklines
-        if (stockHistory.containsKey(symbol)) {
-            update.put("history", stockHistory.get(symbol));
+        // Unlisted symbols have no ID, so binary clients get those as JSON
+        byte[] binaryUpdate = quote.getSymbolId() < 0 ? null : BinaryQuoteEncoder.quote(quote.getSymbolId(),
+                quote.getPrice(), quote.getBidPrice(), quote.getAskPrice(), quote.getVolume(), quote.getEpochMillis());
+
+        try {
+            broadcastMessage(symbol, "update:" + symbol, objectMapper.writeValueAsBytes(update), binaryUpdate);
+        } catch (IOException e) {
+            log.error("Error preparing broadcast message", e);
         }
+    }
+
+    /**
+     * Stream every closed candle to the clients subscribed to its symbol
+     */
+    @Override
+    public void onBarClose(String symbol, CandleInterval interval, Candle candle) {
+        Map<String, Object> barClose = new HashMap<>();
+        barClose.put("type", "barClose");
+        barClose.put("symbol", symbol);
+        barClose.put("interval", interval.getCode());
+        barClose.put("candle", candle);
 
-        String message;
         try {
-            message = objectMapper.writeValueAsString(update);
-
-            List<WebSocketSession> sessionsToRemove = new ArrayList<>();
-
-            for (WebSocketSession session : sessions) {
-                try {
-                    if (session.isOpen()) {
-                        synchronized (session) {
-                            // Synchronize on the session to prevent concurrent sends
-                            session.sendMessage(new TextMessage(message));
-                        }
-                    } else {
-                        // Session is closed, mark for removal
-                        sessionsToRemove.add(session);
-                    }
-                } catch (IOException e) {
-                    log.warn("Error sending message to session {}: {}", session.getId(), e.getMessage());
-                    // If there was an error, mark the session for removal
-                    sessionsToRemove.add(session);
-                }
+            broadcastMessage(symbol, "barClose:" + symbol + ":" + interval.getCode(),
+                    objectMapper.writeValueAsBytes(barClose), null);
+        } catch (IOException e) {
+            log.error("Error preparing bar close message", e);
+        }
+    }
+
+    /**
+     * Queue a message about a symbol for the sessions subscribed to its quotes
+     */
+    private void broadcastMessage(String symbol, String conflationKey, byte[] message, byte[] binaryMessage) {
+        broadcastMessage(subscriptions, symbol, conflationKey, message, binaryMessage);
+    }
+
+    /**
+     * Queue a message about a symbol for the sessions the given index has subscribed to it.
+     * The message is encoded once per wire format and shared by all of them; sending happens on
+     * the send workers, so this never waits on a socket. A message still queued for a session under
+     * the same conflation key is replaced rather than sent, and sessions that keep falling behind
+     * are evicted.
+     *
+     * @param binaryMessage the message for binary clients, or null to send them the JSON one too
+     */
+    private void broadcastMessage(SymbolSubscriptions audience, String symbol, String conflationKey,
+                                  byte[] message, byte[] binaryMessage) {
+        List<WebSocketSession> sessionsToRemove = new ArrayList<>();
+        List<WebSocketSession> sessionsToEvict = new ArrayList<>();
+        TextMessage textMessage = new TextMessage(message);
+
+        audience.forEachSession(symbol, session -> {
+            SessionOutbox outbox = outboxes.get(session.getId());
+            if (!session.isOpen() || outbox == null) {
+                // Session is closed, mark for removal
+                sessionsToRemove.add(session);
+            } else if (outbox.isSlowerThan(slowSessionTimeoutMs)) {
+                sessionsToEvict.add(session);
+            } else if (binaryMessage != null && WireFormat.of(session) == WireFormat.BINARY) {
+                // Sending consumes the buffer, so each session gets its own wrapper of the shared bytes
+                outbox.offer(conflationKey, new BinaryMessage(binaryMessage));
+            } else {
+                outbox.offer(conflationKey, textMessage);
             }
+        });
+
+        // Remove any problematic sessions after iteration
+        if (!sessionsToRemove.isEmpty()) {
+            sessionsToRemove.forEach(this::removeSession);
+            log.info("Removed {} closed WebSocket sessions", sessionsToRemove.size());
+        }
+        sessionsToEvict.forEach(this::evictSession);
+    }
 
-            // Remove any problematic sessions after iteration
-            if (!sessionsToRemove.isEmpty()) {
-                sessions.removeAll(sessionsToRemove);
-                log.info("Removed {} problematic WebSocket sessions", sessionsToRemove.size());
+    /**
+     * Drop a session that can't keep up. The close runs on a send worker since it may wait
+     * for a send in progress.
+     */
+    private void evictSession(WebSocketSession session) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        log.warn("Evicting slow WebSocket session {} ({} messages queued, {} dropped)", session.getId(),
+                outbox != null ? outbox.size() : 0, outbox != null ? outbox.getDropped() : 0);
+        removeSession(session);
+        evictedCounter.increment();
+        sendExecutor.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.warn("Error closing slow WebSocket session {}: {}", session.getId(), e.getMessage());
             }
-        } catch (IOException e) {
-            log.error("Error preparing broadcast message", e);
+        });
+    }
+
+    private void removeSession(WebSocketSession session) {
+        sessions.remove(session);
+        moversSessions.remove(session);
+        subscriptions.remove(session);
+        indicatorSubscriptions.remove(session);
+        SessionOutbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            outbox.close();
         }
     }
 
-    // Mock method for company names - in production, you'd load this from a database
-    private String getCompanyName(String symbol) {
-        Map<String, String> companyNames = new HashMap<>();
-        companyNames.put("AAPL", "APPLE INC.");
-        companyNames.put("MSFT", "MICROSOFT CORP.");
-        companyNames.put("GOOGL", "ALPHABET INC.");
-        companyNames.put("AMZN", "AMAZON.COM INC.");
-        companyNames.put("META", "META PLATFORMS INC.");
-        companyNames.put("TSLA", "TESLA INC.");
-        companyNames.put("NVDA", "NVIDIA CORP.");
-        companyNames.put("JPM", "JPMORGAN CHASE & CO.");
-        companyNames.put("V", "VISA INC.");
-        companyNames.put("ABBV", "ABBVIE INC.");
-        companyNames.put("JNJ", "JOHNSON & JOHNSON");
-        companyNames.put("WMT", "WALMART INC.");
-        companyNames.put("PG", "PROCTER & GAMBLE CO.");
-        companyNames.put("MA", "MASTERCARD INC.");
-        companyNames.put("UNH", "UNITEDHEALTH GROUP INC.");
-
-        return companyNames.getOrDefault(symbol, symbol + " CORP.");
+    /**
+     * The initial data as of one version, encoded once for every connect
+     */
+    private static class InitialDataSnapshot {
+        private final long version;
+        private final TextMessage message; // immutable, so one instance serves every session
+
+        InitialDataSnapshot(long version, TextMessage message) {
+            this.version = version;
+            this.message = message;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,237 @@
+package com.stocktrading.marketdata.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded, conflating outbound queue of one WebSocket session, drained by the shared send workers.
+ * Messages are queued under a key (e.g. the symbol) and a newer message replaces a queued one with
+ * the same key, so a client that can't keep up gets the latest quote per symbol instead of a growing
+ * backlog. A replaced message keeps its place in line.
+ * <p>
+ * Queuing never blocks: the caller only adds to the queue, and at most one send worker drains it at
+ * a time. Once the queued bytes reach the limit, messages under new keys are dropped, and a session
+ * that stays over the limit (or stuck in one send) longer than the slow-session timeout should be evicted.
+ * <p>
+ * A new outbox only queues until it is {@link #start started} with the session's first messages, so a
+ * session can be subscribed before its initial data is ready without receiving updates ahead of it.
+ * <p>
+ * Outboxes register no meters of their own: session IDs change on every reconnect, so the owner
+ * exports aggregates across its outboxes instead, and drops go to the counter it passes in.
+ */
+@Slf4j
+public class SessionOutbox {
+
+    // Messages sent per drain task before the worker moves on to other sessions
+    private static final int MAX_SENDS_PER_DRAIN = 64;
+
+    private final WebSocketSession session;
+    private final Executor sendExecutor;
+    private final int maxBufferedBytes;
+    private final Counter droppedCounter;
+    private long dropped;
+
+    // Key -> latest message not yet sent, oldest key first
+    private final Map<String, WebSocketMessage<?>> pending = new LinkedHashMap<>();
+    private long pendingBytes;
+    private long nextReplyId;
+
+    // Sent before anything queued, outside the byte limit: the session's dictionary and initial data
+    private final Queue<WebSocketMessage<?>> first = new ArrayDeque<>();
+    private boolean started;
+    private boolean draining;
+    private boolean failed;
+
+    // When the queue went over its byte limit / the current send started, 0 if not
+    private long overLimitSince;
+    private volatile long sendStartedAt;
+
+    /**
+     * @param droppedCounter shared by the owner's outboxes, counts messages replaced or refused
+     *                       before they were sent
+     */
+    public SessionOutbox(WebSocketSession session, Executor sendExecutor, int maxBufferedBytes,
+                         Counter droppedCounter) {
+        this.session = session;
+        this.sendExecutor = sendExecutor;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.droppedCounter = droppedCounter;
+    }
+
+    /**
+     * Queue a message, replacing a queued one with the same key, and have a send worker drain the
+     * queue if none is on it already. Returns immediately.
+     */
+    public void offer(String key, WebSocketMessage<?> message) {
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+
+            WebSocketMessage<?> replaced = pending.get(key);
+            if (replaced == null && pendingBytes + message.getPayloadLength() > maxBufferedBytes) {
+                countDropped();
+                if (overLimitSince == 0) {
+                    overLimitSince = System.currentTimeMillis();
+                }
+                return;
+            }
+
+            pending.put(key, message);
+            pendingBytes += message.getPayloadLength();
+            if (replaced != null) {
+                pendingBytes -= replaced.getPayloadLength();
+                countDropped();
+            }
+            if (!claimDrain()) {
+                return;
+            }
+        }
+        sendExecutor.execute(this::drain);
+    }
+
+    /**
+     * Queue a reply to one of the client's own requests. Replies are never replaced or dropped for
+     * the byte limit, but they count towards it, so a client that keeps asking without reading is
+     * still evicted as slow. Returns immediately.
+     */
+    public void send(WebSocketMessage<?> message) {
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+
+            pending.put("reply:" + nextReplyId++, message);
+            pendingBytes += message.getPayloadLength();
+            if (pendingBytes > maxBufferedBytes && overLimitSince == 0) {
+                overLimitSince = System.currentTimeMillis();
+            }
+            if (!claimDrain()) {
+                return;
+            }
+        }
+        sendExecutor.execute(this::drain);
+    }
+
+    /**
+     * Send the session's first messages, then whatever was queued in the meantime
+     */
+    public void start(List<WebSocketMessage<?>> messages) {
+        synchronized (this) {
+            if (failed || started) {
+                return;
+            }
+            started = true;
+            first.addAll(messages);
+            if (!claimDrain()) {
+                return;
+            }
+        }
+        sendExecutor.execute(this::drain);
+    }
+
+    /**
+     * Whether the caller should hand the queue to a send worker: the outbox is started and no
+     * worker is on it yet
+     */
+    private boolean claimDrain() {
+        if (!started || draining) {
+            return false;
+        }
+        draining = true;
+        return true;
+    }
+
+    public synchronized int size() {
+        return first.size() + pending.size();
+    }
+
+    /**
+     * Messages of this session replaced or refused so far
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    private void countDropped() {
+        dropped++;
+        droppedCounter.increment();
+    }
+
+    /**
+     * Whether the session has been over its queue limit, or inside a single send, for longer than
+     * {@code timeoutMs}, or a send to it failed
+     */
+    public synchronized boolean isSlowerThan(long timeoutMs) {
+        long now = System.currentTimeMillis();
+        long sendStarted = sendStartedAt;
+        return failed
+                || (overLimitSince != 0 && now - overLimitSince > timeoutMs)
+                || (sendStarted != 0 && now - sendStarted > timeoutMs);
+    }
+
+    /**
+     * Drop whatever is queued once the session is gone
+     */
+    public synchronized void close() {
+        failed = true;
+        first.clear();
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    private void drain() {
+        for (int sent = 0; sent < MAX_SENDS_PER_DRAIN; sent++) {
+            WebSocketMessage<?> next;
+            synchronized (this) {
+                Iterator<WebSocketMessage<?>> queued = pending.values().iterator();
+                if (failed || (first.isEmpty() && !queued.hasNext())) {
+                    draining = false;
+                    return;
+                }
+                next = first.poll();
+                if (next == null) {
+                    next = queued.next();
+                    queued.remove();
+                    pendingBytes -= next.getPayloadLength();
+                    if (pendingBytes <= maxBufferedBytes) {
+                        overLimitSince = 0;
+                    }
+                }
+            }
+
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                synchronized (session) {
+                    // Synchronize on the session to prevent concurrent sends
+                    session.sendMessage(next);
+                }
+            } catch (Exception e) {
+                log.warn("Error sending message to session {}: {}", session.getId(), e.getMessage());
+                synchronized (this) {
+                    failed = true;
+                    first.clear();
+                    pending.clear();
+                    pendingBytes = 0;
+                    draining = false;
+                }
+                return;
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+
+        // Give the other sessions a turn, then carry on
+        sendExecutor.execute(this::drain);
+    }
+}
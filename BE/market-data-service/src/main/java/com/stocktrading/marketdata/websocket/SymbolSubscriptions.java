@@ -0,0 +1,150 @@
+package com.stocktrading.marketdata.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Which WebSocket sessions want which symbols, indexed by symbol so a tick only visits
+ * the sessions interested in it. A session that never subscribed gets every symbol, which
+ * keeps clients written before subscriptions existed working; its first subscribe narrows
+ * it down to the symbols it asked for. Subscribing to {@link #ALL_SYMBOLS} widens it again.
+ */
+public class SymbolSubscriptions {
+
+    public static final String ALL_SYMBOLS = "*";
+
+    // Symbol -> sessions subscribed to it
+    private final Map<String, Set<WebSocketSession>> sessionsBySymbol = new ConcurrentHashMap<>();
+
+    // Sessions receiving every symbol
+    private final Set<WebSocketSession> allSymbolSessions = ConcurrentHashMap.newKeySet();
+
+    // Session ID -> symbols it subscribed to, to clean up the index when it goes away
+    private final Map<String, Set<String>> symbolsBySession = new ConcurrentHashMap<>();
+
+    /**
+     * Start tracking a new session; it receives every symbol until it subscribes
+     */
+    public void register(WebSocketSession session) {
+        allSymbolSessions.add(session);
+    }
+
+    /**
+     * Subscribe a session to symbols
+     *
+     * @return the symbols the session is now subscribed to
+     */
+    public Set<String> subscribe(WebSocketSession session, Collection<String> symbols) {
+        Set<String> subscribed = symbolsBySession.computeIfAbsent(session.getId(), id -> ConcurrentHashMap.newKeySet());
+        if (symbols.contains(ALL_SYMBOLS)) {
+            // Single symbols are covered now; dropping them keeps a tick from being sent twice
+            subscribed.forEach(symbol -> removeFromIndex(symbol, session));
+            subscribed.clear();
+            allSymbolSessions.add(session);
+            return getSubscriptions(session);
+        }
+
+        allSymbolSessions.remove(session);
+        for (String symbol : symbols) {
+            if (subscribed.add(symbol)) {
+                sessionsBySymbol.computeIfAbsent(symbol, s -> ConcurrentHashMap.newKeySet()).add(session);
+            }
+        }
+        return getSubscriptions(session);
+    }
+
+    /**
+     * Unsubscribe a session from symbols; unsubscribing from {@link #ALL_SYMBOLS} drops them all
+     *
+     * @return the symbols the session is still subscribed to
+     */
+    public Set<String> unsubscribe(WebSocketSession session, Collection<String> symbols) {
+        allSymbolSessions.remove(session);
+        Set<String> subscribed = symbolsBySession.computeIfAbsent(session.getId(), id -> ConcurrentHashMap.newKeySet());
+        Collection<String> removed = symbols.contains(ALL_SYMBOLS) ? new TreeSet<>(subscribed) : symbols;
+        for (String symbol : removed) {
+            if (subscribed.remove(symbol)) {
+                removeFromIndex(symbol, session);
+            }
+        }
+        return getSubscriptions(session);
+    }
+
+    /**
+     * Forget a session and all its subscriptions
+     */
+    public void remove(WebSocketSession session) {
+        allSymbolSessions.remove(session);
+        Set<String> subscribed = symbolsBySession.remove(session.getId());
+        if (subscribed != null) {
+            subscribed.forEach(symbol -> removeFromIndex(symbol, session));
+        }
+    }
+
+    /**
+     * Visit every session interested in a symbol
+     */
+    public void forEachSession(String symbol, Consumer<WebSocketSession> action) {
+        allSymbolSessions.forEach(action);
+        Set<WebSocketSession> subscribers = sessionsBySymbol.get(symbol);
+        if (subscribers != null) {
+            subscribers.forEach(action);
+        }
+    }
+
+    /**
+     * Whether any session is interested in a symbol
+     */
+    public boolean hasSessions(String symbol) {
+        if (!allSymbolSessions.isEmpty()) {
+            return true;
+        }
+        Set<WebSocketSession> subscribers = sessionsBySymbol.get(symbol);
+        return subscribers != null && !subscribers.isEmpty();
+    }
+
+    /**
+     * Symbols a session subscribed to, or just {@link #ALL_SYMBOLS} if it receives every symbol
+     */
+    public Set<String> getSubscriptions(WebSocketSession session) {
+        if (allSymbolSessions.contains(session)) {
+            return Collections.singleton(ALL_SYMBOLS);
+        }
+        Set<String> subscribed = symbolsBySession.get(session.getId());
+        return subscribed != null ? new TreeSet<>(subscribed) : Collections.emptySet();
+    }
+
+    /**
+     * Symbols named by a client message, either {"symbols": [..]} or {"symbol": ".."}, upper-cased
+     */
+    public static List<String> symbolsOf(Map<String, Object> request) {
+        List<String> symbols = new ArrayList<>();
+        Object value = request.containsKey("symbols") ? request.get("symbols") : request.get("symbol");
+        if (value instanceof Collection) {
+            for (Object symbol : (Collection<?>) value) {
+                if (symbol != null) {
+                    symbols.add(symbol.toString().trim().toUpperCase());
+                }
+            }
+        } else if (value != null) {
+            symbols.add(value.toString().trim().toUpperCase());
+        }
+        return symbols;
+    }
+
+    private void removeFromIndex(String symbol, WebSocketSession session) {
+        sessionsBySymbol.computeIfPresent(symbol, (s, subscribers) -> {
+            subscribers.remove(session);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+}
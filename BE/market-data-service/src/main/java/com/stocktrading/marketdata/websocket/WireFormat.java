@@ -0,0 +1,49 @@
+package com.stocktrading.marketdata.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encoding of the market data feeds. Clients get JSON unless they ask for binary, either with the
+ * {@value #BINARY_SUBPROTOCOL} subprotocol or a {@code ?format=binary} query parameter.
+ * Only the high-rate quote updates change encoding; replies and one-off messages stay JSON.
+ */
+public enum WireFormat {
+    JSON,
+    BINARY;
+
+    public static final String JSON_SUBPROTOCOL = "market-data.json";
+    public static final String BINARY_SUBPROTOCOL = "market-data.binary.v1";
+    public static final List<String> SUBPROTOCOLS = Arrays.asList(BINARY_SUBPROTOCOL, JSON_SUBPROTOCOL);
+
+    private static final String SESSION_ATTRIBUTE = WireFormat.class.getName();
+
+    /**
+     * Work out the format a new session asked for and remember it on the session
+     */
+    public static WireFormat negotiate(WebSocketSession session) {
+        WireFormat format = JSON;
+        if (BINARY_SUBPROTOCOL.equals(session.getAcceptedProtocol())) {
+            format = BINARY;
+        } else if (session.getUri() != null) {
+            String requested = UriComponentsBuilder.fromUri(session.getUri()).build()
+                    .getQueryParams().getFirst("format");
+            if ("binary".equalsIgnoreCase(requested)) {
+                format = BINARY;
+            }
+        }
+        session.getAttributes().put(SESSION_ATTRIBUTE, format);
+        return format;
+    }
+
+    /**
+     * The format negotiated for a session
+     */
+    public static WireFormat of(WebSocketSession session) {
+        Object format = session.getAttributes().get(SESSION_ATTRIBUTE);
+        return format instanceof WireFormat ? (WireFormat) format : JSON;
+    }
+}
@@ -0,0 +1,93 @@
+package com.stocktrading.marketdata.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CandleSeriesTest {
+
+    // Midnight UTC, so every interval has a bar starting at T
+    private static final long T = 1_699_920_000_000L;
+
+    @Test
+    void closesTheBarOnTheFirstTickOfTheNextOne() {
+        CandleSeries series = new CandleSeries(CandleInterval.ONE_SECOND, 10);
+
+        assertNull(series.onTick(T + 100, 10.0, 5));
+        assertNull(series.onTick(T + 500, 12.0, 1));
+        assertNull(series.onTick(T + 999, 9.0, 2));
+
+        Candle closed = series.onTick(T + 1000, 11.0, 3);
+        assertCandle(closed, T, 10.0, 12.0, 9.0, 9.0, 8, 3);
+        assertCandle(series.getCurrent(), T + 1000, 11.0, 11.0, 11.0, 11.0, 3, 1);
+        assertEquals(List.of(T), starts(series.getClosed(0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    void dropsLateTicksForBarsAlreadyClosed() {
+        CandleSeries series = new CandleSeries(CandleInterval.ONE_SECOND, 10);
+        series.onTick(T + 100, 10.0, 1);
+
+        // Closed by the clock: no bar is open when the late tick comes in
+        assertCandle(series.closeIfElapsed(T + 1200), T, 10.0, 10.0, 10.0, 10.0, 1, 1);
+        assertNull(series.onTick(T + 900, 8.0, 1));
+        assertNull(series.getCurrent());
+
+        // Late for a bar that was closed by a newer tick
+        series.onTick(T + 2100, 11.0, 1);
+        assertNull(series.onTick(T + 1500, 7.0, 1));
+        assertNull(series.onTick(T + 600, 7.0, 1));
+        assertCandle(series.getCurrent(), T + 2000, 11.0, 11.0, 11.0, 11.0, 1, 1);
+
+        // Each bar is closed once only
+        series.onTick(T + 3000, 12.0, 1);
+        assertEquals(List.of(T, T + 2000), starts(series.getClosed(0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    void growsToCapacityThenKeepsTheNewestBars() {
+        CandleSeries series = new CandleSeries(CandleInterval.ONE_SECOND, 40);
+        for (int bar = 0; bar <= 100; bar++) {
+            series.onTick(T + bar * 1000L, bar, 1);
+        }
+
+        List<Candle> closed = series.getClosed(0, Long.MAX_VALUE);
+        assertEquals(LongStream.range(60, 100).mapToObj(bar -> T + bar * 1000).collect(Collectors.toList()),
+                starts(closed));
+        assertEquals(60.0, closed.get(0).getClose());
+        assertEquals(99.0, closed.get(39).getClose());
+    }
+
+    @Test
+    void returnsTheClosedBarsStartingInTheRange() {
+        CandleSeries series = new CandleSeries(CandleInterval.ONE_MINUTE, 20);
+        for (int bar = 0; bar <= 10; bar++) {
+            series.onTick(T + bar * 60_000L + 30_000, bar, 1);
+        }
+
+        // Both ends are included, and bars starting before the range are left out even if they overlap it
+        assertEquals(List.of(T + 180_000, T + 240_000, T + 300_000, T + 360_000),
+                starts(series.getClosed(T + 150_000, T + 360_000)));
+        assertEquals(List.of(), starts(series.getClosed(T + 600_000, T + 700_000)));
+    }
+
+    private static List<Long> starts(List<Candle> candles) {
+        return candles.stream().map(Candle::getStartMillis).collect(Collectors.toList());
+    }
+
+    private static void assertCandle(Candle candle, long start, double open, double high, double low,
+                                     double close, long volume, int ticks) {
+        assertEquals(start, candle.getStartMillis());
+        assertEquals(open, candle.getOpen());
+        assertEquals(high, candle.getHigh());
+        assertEquals(low, candle.getLow());
+        assertEquals(close, candle.getClose());
+        assertEquals(volume, candle.getVolume());
+        assertEquals(ticks, candle.getTicks());
+    }
+}
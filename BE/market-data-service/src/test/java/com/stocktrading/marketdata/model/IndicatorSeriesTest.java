@@ -0,0 +1,109 @@
+package com.stocktrading.marketdata.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndicatorSeriesTest {
+
+    // Midnight UTC
+    private static final long DAY = 1_699_920_000_000L;
+    // Indicators are rounded to four decimals
+    private static final double DELTA = 1e-4;
+
+    @Test
+    void keepsTheRollingSumsInLineWithTheWindow() {
+        IndicatorSeries series = new IndicatorSeries("AAPL", 5, 3, 3, 4, 2.0);
+        Random random = new Random(7);
+        List<Double> prices = new ArrayList<>();
+
+        // Enough ticks for several laps of the ring, so the periodic recompute is covered too
+        for (int i = 0; i < 1000; i++) {
+            double price = 100 + random.nextDouble() * 10;
+            prices.add(price);
+            series.onTick(DAY + i * 1000L, price, 1);
+
+            Indicators indicators = series.snapshot();
+            if (prices.size() < 4) {
+                assertNull(indicators.getBollingerMiddle());
+                continue;
+            }
+            double mean = mean(prices, 4);
+            double variance = prices.subList(prices.size() - 4, prices.size()).stream()
+                    .mapToDouble(p -> (p - mean) * (p - mean)).sum() / 4;
+            assertEquals(mean, indicators.getBollingerMiddle(), DELTA);
+            assertEquals(mean + 2 * Math.sqrt(variance), indicators.getBollingerUpper(), DELTA);
+            assertEquals(mean - 2 * Math.sqrt(variance), indicators.getBollingerLower(), DELTA);
+            if (prices.size() >= 5) {
+                assertEquals(mean(prices, 5), indicators.getSma(), DELTA);
+            } else {
+                assertNull(indicators.getSma());
+            }
+        }
+    }
+
+    @Test
+    void seedsTheRsiWithAPlainAverageThenSmoothsIt() {
+        IndicatorSeries series = new IndicatorSeries("AAPL", 1, 1, 3, 1, 2.0);
+        series.onTick(DAY, 10, 1);
+        series.onTick(DAY + 1, 11, 1);
+        series.onTick(DAY + 2, 10, 1);
+        assertNull(series.snapshot().getRsi());
+
+        // First period of changes +1, -1, +2: average gain 1, average loss 1/3
+        series.onTick(DAY + 3, 12, 1);
+        assertEquals(75.0, series.snapshot().getRsi(), DELTA);
+
+        // Smoothed: gain (1 * 2 + 0) / 3, loss (1/3 * 2 + 1) / 3
+        series.onTick(DAY + 4, 11, 1);
+        assertEquals(100 - 100 / (1 + (2.0 / 3) / (5.0 / 9)), series.snapshot().getRsi(), DELTA);
+    }
+
+    @Test
+    void startsTheVwapOverEachDay() {
+        IndicatorSeries series = new IndicatorSeries("AAPL", 2, 2, 2, 2, 2.0);
+        series.onTick(DAY + 1000, 10, 100);
+        series.onTick(DAY + 2000, 20, 300);
+        assertEquals(17.5, series.snapshot().getVwap(), DELTA);
+
+        series.onTick(DAY + 86_400_000L, 30, 10);
+        assertEquals(30.0, series.snapshot().getVwap(), DELTA);
+        // The other indicators carry on across the day boundary
+        assertEquals(25.0, series.snapshot().getSma(), DELTA);
+    }
+
+    @Test
+    void dropsTicksOlderThanTheLatestOne() {
+        IndicatorSeries series = new IndicatorSeries("AAPL", 2, 2, 2, 2, 2.0);
+        assertTrue(series.onTick(DAY + 5000, 10, 100));
+        assertTrue(series.onTick(DAY + 6000, 20, 100));
+        Indicators before = series.snapshot();
+
+        // From a previous day, as replayed from an earlier run's offsets, and from earlier today
+        assertFalse(series.onTick(DAY - 1000, 1000, 1_000_000));
+        assertFalse(series.onTick(DAY + 5500, 1000, 1_000_000));
+
+        Indicators after = series.snapshot();
+        assertEquals(before.getEpochMillis(), after.getEpochMillis());
+        assertEquals(20.0, after.getPrice());
+        assertEquals(before.getSma(), after.getSma());
+        assertEquals(before.getVwap(), after.getVwap());
+        assertEquals(before.getRsi(), after.getRsi());
+
+        // A tick at the same time as the latest is still in order
+        assertTrue(series.onTick(DAY + 6000, 30, 100));
+        assertEquals(25.0, series.snapshot().getSma(), DELTA);
+    }
+
+    private static double mean(List<Double> prices, int period) {
+        return prices.subList(prices.size() - period, prices.size()).stream()
+                .mapToDouble(Double::doubleValue).sum() / period;
+    }
+}
@@ -0,0 +1,94 @@
+package com.stocktrading.marketdata.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopRankingTest {
+
+    @Test
+    void movesEntriesBothWaysAcrossTheLeaderBoundary() {
+        TopRanking ranking = new TopRanking(3, 6);
+        for (int id = 0; id < 6; id++) {
+            ranking.update(id, id);
+        }
+        assertArrayEquals(new int[]{5, 4, 3}, ranking.top(3));
+
+        // The strongest leader drops to last, the weakest runner-up climbs to first
+        ranking.update(5, -1);
+        assertArrayEquals(new int[]{4, 3, 2}, ranking.top(3));
+        ranking.update(0, 10);
+        assertArrayEquals(new int[]{0, 4, 3}, ranking.top(3));
+
+        // Moves within either side leave the other alone
+        ranking.update(3, 9);
+        ranking.update(1, 1.5);
+        assertArrayEquals(new int[]{0, 3, 4}, ranking.top(3));
+        assertArrayEquals(new int[]{0}, ranking.top(1));
+    }
+
+    @Test
+    void ranksFewerIdsThanItsSize() {
+        TopRanking ranking = new TopRanking(5, 10);
+        ranking.update(7, 2.0);
+        ranking.update(3, 4.0);
+
+        assertArrayEquals(new int[]{3, 7}, ranking.top(5));
+        assertArrayEquals(new int[]{3, 7}, ranking.top(50));
+        assertArrayEquals(new int[0], ranking.top(0));
+    }
+
+    @Test
+    void matchesASortOfAllKeysAfterRandomUpdates() {
+        int size = 10;
+        int capacity = 200;
+        TopRanking ranking = new TopRanking(size, capacity);
+        Random random = new Random(42);
+        double[] keys = new double[capacity];
+        List<Integer> ranked = new ArrayList<>();
+
+        for (int step = 0; step < 20_000; step++) {
+            int id;
+            double key;
+            int[] top = ranking.top(size);
+            int move = random.nextInt(4);
+            if (move == 0 && top.length == size) {
+                // A leader falls below everyone
+                id = top[random.nextInt(size)];
+                key = -1 - random.nextDouble();
+            } else if (move == 1 && ranked.size() > size) {
+                // Someone outside the leaders rises above everyone
+                int[] all = bruteForceTop(keys, ranked, ranked.size());
+                id = all[size + random.nextInt(all.length - size)];
+                key = 1 + random.nextDouble();
+            } else {
+                id = random.nextInt(capacity);
+                key = random.nextDouble() * 2 - 1;
+            }
+
+            if (!ranked.contains(id)) {
+                ranked.add(id);
+            }
+            keys[id] = key;
+            ranking.update(id, key);
+
+            assertArrayEquals(bruteForceTop(keys, ranked, size), ranking.top(size), "after step " + step);
+            assertEquals(key, ranking.keyOf(id));
+        }
+        assertEquals(capacity, ranked.size());
+    }
+
+    private static int[] bruteForceTop(double[] keys, List<Integer> ranked, int limit) {
+        return ranked.stream()
+                .sorted(Comparator.comparingDouble((Integer id) -> keys[id]).reversed())
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,46 @@
+package com.stocktrading.brokerage.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client of the market data service's REST API
+ */
+@Component
+public class MarketDataClient {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${market.data.service.baseUrl:http://localhost:8088}")
+    private String marketDataServiceBaseUrl;
+
+    public MarketDataClient(RestTemplateBuilder restTemplateBuilder,
+                            @Value("${market.price-cache.bootstrap.timeout-ms:2000}") long timeoutMs) {
+        // Called while the service starts, so a market data service that is down must fail fast
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(timeoutMs))
+                .setReadTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+    }
+
+    /**
+     * Get the last quote of every listed symbol, as {symbol, price, bidPrice, askPrice, timestamp, ...} maps
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> getLastValues() {
+        String url = marketDataServiceBaseUrl + "/api/stocks/snapshot";
+
+        Map<String, Object> snapshot = restTemplate.getForObject(url, Map.class);
+        if (snapshot == null || !(snapshot.get("quotes") instanceof List)) {
+            return Collections.emptyList();
+        }
+        return (List<Map<String, Object>>) snapshot.get("quotes");
+    }
+}
@@ -37,6 +37,15 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id:mock-brokerage-service-group}")
     private String groupId;
 
+    @Value("${spring.kafka.producer.linger-ms:5}")
+    private int producerLingerMs;
+
+    @Value("${spring.kafka.producer.batch-size:65536}")
+    private int producerBatchSize;
+
+    @Value("${spring.kafka.producer.compression-type:lz4}")
+    private String producerCompressionType;
+
     @Bean
     public ConsumerFactory<String, CommandMessage> commandConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -99,6 +108,10 @@ public class KafkaConfig {
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        // A price move can fill thousands of orders at once; let the producer batch and compress them
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, producerLingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, producerBatchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompressionType);
         configProps.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, true);
 
         return new DefaultKafkaProducerFactory<>(configProps);
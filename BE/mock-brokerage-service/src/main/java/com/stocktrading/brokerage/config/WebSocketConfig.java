@@ -0,0 +1,23 @@
+package com.stocktrading.brokerage.config;
+
+import com.stocktrading.brokerage.websocket.OrderBookWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@RequiredArgsConstructor
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final OrderBookWebSocketHandler orderBookWebSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // Served under /brokerage so it goes through the gateway's brokerage route
+        registry.addHandler(orderBookWebSocketHandler, "/brokerage/ws/book")
+                .setAllowedOrigins("*"); // In production, specify exact origins
+    }
+}
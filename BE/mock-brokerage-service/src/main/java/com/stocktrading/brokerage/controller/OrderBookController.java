@@ -0,0 +1,58 @@
+package com.stocktrading.brokerage.controller;
+
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import com.stocktrading.brokerage.model.MockOrderBook;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Read-only view of the in-memory order book, reached through the gateway's /brokerage route
+ */
+@Slf4j
+@RestController
+@RequestMapping("/brokerage")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*") // In production, restrict to specific origins
+public class OrderBookController {
+
+    private static final int MAX_DEPTH_LEVELS = 100;
+
+    private final MockOrderBook mockOrderBook;
+
+    /**
+     * Symbols with a book and the number of pending orders
+     */
+    @GetMapping("/books")
+    public ResponseEntity<Map<String, Object>> getBooks() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("symbols", new TreeSet<>(mockOrderBook.getBookSymbols()));
+        response.put("pendingOrderCount", mockOrderBook.getPendingOrderCount());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Aggregated L2 depth of a symbol
+     */
+    @GetMapping("/books/{symbol}/depth")
+    public ResponseEntity<DepthUpdate> getDepth(@PathVariable String symbol,
+                                                @RequestParam(defaultValue = "10") int levels) {
+        int maxLevels = Math.max(1, Math.min(levels, MAX_DEPTH_LEVELS));
+        return ResponseEntity.ok(mockOrderBook.getDepth(symbol.toUpperCase(), maxLevels));
+    }
+
+    /**
+     * Status of a pending limit order; orders that were filled, cancelled or expired are no longer found
+     */
+    @GetMapping("/orders/{orderId}")
+    public ResponseEntity<Map<String, Object>> getOrderStatus(@PathVariable String orderId) {
+        return mockOrderBook.getOrderStatus(orderId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,429 @@
+package com.stocktrading.brokerage.journal;
+
+import com.stocktrading.brokerage.matching.FixedPointPrice;
+import com.stocktrading.brokerage.model.PendingOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of pending limit order events, so the order book survives a restart.
+ *
+ * Events are appended to memory-mapped segment files (journal-N.log). A snapshot
+ * (snapshot-N.snap) holds every order that was resting when it was taken, and N is the first
+ * segment that has to be replayed on top of it; older segments and snapshots are deleted.
+ * Replay is idempotent - a FILL record carries the cumulative fill of the order - so records
+ * that are already reflected in the snapshot can safely be applied again.
+ *
+ * Record layout in a segment: int body length, byte type, body. The length is written last,
+ * so a record torn by a crash reads as the end of the segment.
+ */
+@Slf4j
+@Component
+public class OrderJournal {
+
+    private static final byte ADD = 1;
+    private static final byte FILL = 2;
+    private static final byte CANCEL = 3;
+    private static final byte EXPIRE = 4;
+
+    private static final int SNAPSHOT_MAGIC = 0x4F424A53; // "OBJS"
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    @Value("${brokerage.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${brokerage.journal.dir:data/order-journal}")
+    private String directory;
+
+    @Value("${brokerage.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    private Path journalDir;
+    private long segmentNumber;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+
+    // Reused to encode one record at a time; guarded by this
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBytes);
+
+    /**
+     * Rebuild the pending orders from the latest snapshot plus the journal tail and open
+     * a new segment for appending. Must be called once before anything is recorded.
+     *
+     * @return the recovered orders, oldest first
+     */
+    public synchronized List<PendingOrder> recover() {
+        if (!enabled) {
+            return new ArrayList<>();
+        }
+
+        long startedAt = System.currentTimeMillis();
+        Map<String, PendingOrder> orders = new LinkedHashMap<>();
+
+        try {
+            journalDir = Paths.get(directory);
+            Files.createDirectories(journalDir);
+
+            long firstSegmentToReplay = 0;
+            List<Long> snapshots = listNumbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if (!snapshots.isEmpty()) {
+                firstSegmentToReplay = snapshots.get(snapshots.size() - 1);
+                readSnapshot(snapshotPath(firstSegmentToReplay), orders);
+            }
+
+            int snapshotOrders = orders.size();
+            long lastSegment = firstSegmentToReplay - 1;
+            for (long number : listNumbers(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (number >= firstSegmentToReplay) {
+                    replaySegment(segmentPath(number), orders);
+                    lastSegment = number;
+                }
+            }
+
+            openSegment(Math.max(lastSegment + 1, firstSegmentToReplay));
+
+            log.info("Recovered {} pending orders ({} from snapshot, journal segments {}-{}) in {} ms",
+                    orders.size(), snapshotOrders, firstSegmentToReplay, lastSegment,
+                    System.currentTimeMillis() - startedAt);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to recover order journal from " + directory, e);
+        }
+
+        return new ArrayList<>(orders.values());
+    }
+
+    public synchronized void recordAdd(PendingOrder order) {
+        try {
+            writeOrder(beginRecord(ADD), order);
+            endRecord();
+        } catch (IOException e) {
+            log.error("Error journaling ADD for order: {}", order.getOrderId(), e);
+        }
+    }
+
+    /**
+     * Record the cumulative fill state of an order
+     */
+    public synchronized void recordFill(PendingOrder order) {
+        try {
+            DataOutput out = beginRecord(FILL);
+            out.writeUTF(order.getOrderId());
+            out.writeInt(order.getExecutedQuantity());
+            out.writeLong(order.getExecutedNotional());
+            endRecord();
+        } catch (IOException e) {
+            log.error("Error journaling FILL for order: {}", order.getOrderId(), e);
+        }
+    }
+
+    public synchronized void recordCancel(String orderId) {
+        recordRemoval(CANCEL, orderId);
+    }
+
+    public synchronized void recordExpire(String orderId) {
+        recordRemoval(EXPIRE, orderId);
+    }
+
+    /**
+     * Write a compacted snapshot of the pending orders and drop the journal segments it replaces.
+     * Appends continue in a new segment while the snapshot is written. The orders are only read
+     * once that segment is open, so any change they miss is journaled in it and replayed on top.
+     */
+    public void writeSnapshot(Supplier<? extends Collection<PendingOrder>> orders) {
+        if (!enabled || segment == null) {
+            return;
+        }
+
+        long firstSegmentToReplay;
+        synchronized (this) {
+            firstSegmentToReplay = segmentNumber + 1;
+            try {
+                openSegment(firstSegmentToReplay);
+            } catch (IOException e) {
+                log.error("Error rolling order journal segment", e);
+                return;
+            }
+        }
+
+        long startedAt = System.currentTimeMillis();
+        List<PendingOrder> snapshot = new ArrayList<>(orders.get());
+        snapshot.sort(Comparator.comparing(PendingOrder::getCreatedAt));
+
+        Path target = snapshotPath(firstSegmentToReplay);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(snapshot.size());
+            for (PendingOrder order : snapshot) {
+                writeOrder(out, order);
+                out.writeInt(order.getExecutedQuantity() != null ? order.getExecutedQuantity() : 0);
+                out.writeLong(order.getExecutedNotional() != null ? order.getExecutedNotional() : 0);
+            }
+        } catch (IOException e) {
+            log.error("Error writing order journal snapshot", e);
+            return;
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            deleteBefore(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, firstSegmentToReplay);
+            deleteBefore(SEGMENT_PREFIX, SEGMENT_SUFFIX, firstSegmentToReplay);
+        } catch (IOException e) {
+            log.error("Error installing order journal snapshot", e);
+            return;
+        }
+
+        log.info("Wrote order journal snapshot of {} orders in {} ms",
+                snapshot.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+        }
+        closeSegmentChannel();
+    }
+
+    private void recordRemoval(byte type, String orderId) {
+        try {
+            beginRecord(type).writeUTF(orderId);
+            endRecord();
+        } catch (IOException e) {
+            log.error("Error journaling removal of order: {}", orderId, e);
+        }
+    }
+
+    private DataOutput beginRecord(byte type) throws IOException {
+        recordBytes.reset();
+        recordOut.writeByte(type);
+        return recordOut;
+    }
+
+    /**
+     * Copy the encoded record into the mapped segment, rolling to a new segment when it doesn't fit
+     */
+    private void endRecord() throws IOException {
+        if (segment == null) {
+            return; // Journal disabled or not recovered yet
+        }
+
+        int length = recordBytes.size();
+        if (segment.remaining() < length + Integer.BYTES) {
+            openSegment(segmentNumber + 1);
+        }
+
+        int start = segment.position();
+        segment.position(start + Integer.BYTES);
+        segment.put(recordBytes.toByteArray());
+        // Publish the record by writing its length last
+        segment.putInt(start, length);
+    }
+
+    private void openSegment(long number) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        closeSegmentChannel();
+
+        segmentNumber = number;
+        segmentChannel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentSizeMb << 20);
+
+        // Continue after the last complete record if the segment already has data
+        while (segment.remaining() >= Integer.BYTES) {
+            int length = segment.getInt(segment.position());
+            if (length <= 0 || length > segment.remaining() - Integer.BYTES) {
+                break;
+            }
+            segment.position(segment.position() + Integer.BYTES + length);
+        }
+    }
+
+    private void closeSegmentChannel() {
+        if (segmentChannel != null) {
+            try {
+                segmentChannel.close();
+            } catch (IOException e) {
+                log.warn("Error closing order journal segment", e);
+            }
+            segmentChannel = null;
+        }
+    }
+
+    private void replaySegment(Path path, Map<String, PendingOrder> orders) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] record = new byte[256];
+
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break; // End of segment, or a record torn by a crash
+                }
+                if (record.length < length) {
+                    record = new byte[length];
+                }
+                buffer.get(record, 0, length);
+                applyRecord(new DataInputStream(new ByteArrayInputStream(record, 0, length)), orders);
+            }
+        }
+    }
+
+    private void applyRecord(DataInput in, Map<String, PendingOrder> orders) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD: {
+                PendingOrder order = readOrder(in);
+                order.setExecutedQuantity(0);
+                order.setExecutedNotional(0L);
+                orders.putIfAbsent(order.getOrderId(), order);
+                break;
+            }
+            case FILL: {
+                PendingOrder order = orders.get(in.readUTF());
+                int executedQuantity = in.readInt();
+                long executedNotional = in.readLong();
+                if (order != null && executedQuantity >= order.getExecutedQuantity()) {
+                    order.setExecutedQuantity(executedQuantity);
+                    order.setExecutedNotional(executedNotional);
+                    if (executedQuantity >= order.getQuantity()) {
+                        orders.remove(order.getOrderId());
+                    }
+                }
+                break;
+            }
+            case CANCEL:
+            case EXPIRE:
+                orders.remove(in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown order journal record type: " + type);
+        }
+    }
+
+    private void readSnapshot(Path path, Map<String, PendingOrder> orders) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not an order journal snapshot: " + path);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                PendingOrder order = readOrder(in);
+                order.setExecutedQuantity(in.readInt());
+                order.setExecutedNotional(in.readLong());
+                orders.put(order.getOrderId(), order);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated order journal snapshot: " + path, e);
+        }
+    }
+
+    private static void writeOrder(DataOutput out, PendingOrder order) throws IOException {
+        out.writeUTF(order.getOrderId());
+        out.writeUTF(order.getStockSymbol());
+        writeNullableUTF(out, order.getOrderType());
+        out.writeUTF(order.getSide());
+        writeNullableUTF(out, order.getTimeInForce());
+        writeNullableUTF(out, order.getSagaId());
+        writeNullableUTF(out, order.getBrokerOrderId());
+        out.writeInt(order.getQuantity());
+        out.writeLong(FixedPointPrice.fromBigDecimal(order.getLimitPrice()));
+        out.writeLong(order.getCreatedAt().toEpochMilli());
+        out.writeLong(order.getExpirationTime().toEpochMilli());
+    }
+
+    private static PendingOrder readOrder(DataInput in) throws IOException {
+        return PendingOrder.builder()
+                .orderId(in.readUTF())
+                .stockSymbol(in.readUTF())
+                .orderType(readNullableUTF(in))
+                .side(in.readUTF())
+                .timeInForce(readNullableUTF(in))
+                .sagaId(readNullableUTF(in))
+                .brokerOrderId(readNullableUTF(in))
+                .quantity(in.readInt())
+                .limitPrice(FixedPointPrice.toBigDecimal(in.readLong()))
+                .createdAt(Instant.ofEpochMilli(in.readLong()))
+                .expirationTime(Instant.ofEpochMilli(in.readLong()))
+                .build();
+    }
+
+    private static void writeNullableUTF(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private Path segmentPath(long number) {
+        return journalDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private Path snapshotPath(long number) {
+        return journalDir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Numbers of the files with the given prefix/suffix, ascending
+     */
+    private List<Long> listNumbers(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void deleteBefore(String prefix, String suffix, long number) throws IOException {
+        for (long existing : listNumbers(prefix, suffix)) {
+            if (existing < number) {
+                Files.deleteIfExists(journalDir.resolve(
+                        String.format("%s%020d%s", prefix, existing, suffix)));
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.stocktrading.brokerage.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregated quantity resting at one price. In a delta, a quantity of 0 means the level is gone.
+ */
+@Getter
+@AllArgsConstructor
+public class DepthLevel {
+    private final BigDecimal price;
+    private final long quantity;
+    private final int orders;
+}
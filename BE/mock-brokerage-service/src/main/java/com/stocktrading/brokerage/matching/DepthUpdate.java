@@ -0,0 +1,21 @@
+package com.stocktrading.brokerage.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * L2 depth of one symbol book: either a snapshot of the best levels, or a delta holding only the
+ * levels that changed. Deltas are numbered consecutively per symbol; a client applies those with
+ * a sequence above its snapshot's and resubscribes when it sees a gap.
+ */
+@Getter
+@AllArgsConstructor
+public class DepthUpdate {
+    private final String symbol;
+    private final long sequence;
+    private final boolean snapshot;
+    private final List<DepthLevel> bids; // best (highest) price first
+    private final List<DepthLevel> asks; // best (lowest) price first
+}
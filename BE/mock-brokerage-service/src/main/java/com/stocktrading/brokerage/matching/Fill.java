@@ -0,0 +1,29 @@
+package com.stocktrading.brokerage.matching;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Execution report for one fill of a resting or incoming order.
+ * Prices are fixed point, see {@link FixedPointPrice}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class Fill {
+    private final PendingOrder order;
+    private final long price;
+    private final int quantity;
+    private final int cumulativeQuantity;
+    private final int remainingQuantity;
+    private final long averagePrice;
+    private final String counterpartyOrderId; // null when filled against the market quote
+
+    /**
+     * Whether this fill completed the order
+     */
+    public boolean isComplete() {
+        return remainingQuantity == 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.stocktrading.brokerage.matching;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between BigDecimal prices and the fixed-point longs used on the matching path.
+ * A fixed-point price is the price multiplied by 10^4, e.g. 150.25 is stored as 1502500.
+ */
+public final class FixedPointPrice {
+
+    public static final int SCALE = 4;
+
+    private FixedPointPrice() {
+    }
+
+    /**
+     * Convert a price to fixed point, rounding half up to 4 decimals
+     */
+    public static long fromBigDecimal(BigDecimal price) {
+        return price.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convert a fixed-point price back to a BigDecimal with 4 decimals
+     */
+    public static BigDecimal toBigDecimal(long price) {
+        return BigDecimal.valueOf(price, SCALE);
+    }
+
+    /**
+     * Average fixed-point price of {@code quantity} shares worth {@code notional} (fixed-point price
+     * times shares), rounding half up like {@link #fromBigDecimal}. Every average reported for an
+     * order goes through here, so fill events, the status endpoint and settlement agree.
+     */
+    public static long average(long notional, long quantity) {
+        return (notional + quantity / 2) / quantity;
+    }
+}
@@ -0,0 +1,87 @@
+package com.stocktrading.brokerage.matching;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs one {@link OrderMatcher} per stock symbol.
+ * Symbols are spread over a fixed number of single-threaded shards, and every task for a symbol
+ * runs on its shard's thread, so a symbol's book is only ever touched by one thread and needs no locks.
+ */
+@Slf4j
+@Component
+public class MatchingEngine {
+
+    private final Map<String, OrderMatcher> matchers = new ConcurrentHashMap<>();
+
+    @Value("${matching.engine.threads:4}")
+    private int threadCount;
+
+    private ExecutorService[] shards;
+
+    @PostConstruct
+    public void init() {
+        shards = new ExecutorService[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            String threadName = "matching-engine-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("Matching engine started with {} threads", threadCount);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Run a task against a symbol's book on that symbol's thread
+     */
+    public <T> CompletableFuture<T> submit(String stockSymbol, Function<OrderMatcher, T> task) {
+        OrderMatcher matcher = matchers.computeIfAbsent(stockSymbol, OrderMatcher::new);
+        return CompletableFuture.supplyAsync(() -> task.apply(matcher), shardFor(stockSymbol));
+    }
+
+    /**
+     * Run a task against a symbol's book and wait for its result.
+     * Must not be called from a matching thread.
+     */
+    public <T> T call(String stockSymbol, Function<OrderMatcher, T> task) {
+        return submit(stockSymbol, task).join();
+    }
+
+    /**
+     * Whether a book has ever been created for the symbol
+     */
+    public boolean hasBook(String stockSymbol) {
+        return matchers.containsKey(stockSymbol);
+    }
+
+    /**
+     * Symbols that have a book
+     */
+    public Set<String> getSymbols() {
+        return matchers.keySet();
+    }
+
+    private ExecutorService shardFor(String stockSymbol) {
+        return shards[Math.floorMod(stockSymbol.hashCode(), shards.length)];
+    }
+}
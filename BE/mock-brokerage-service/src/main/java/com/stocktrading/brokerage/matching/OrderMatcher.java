@@ -0,0 +1,252 @@
+package com.stocktrading.brokerage.matching;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Price-time priority limit order book for a single stock symbol.
+ * Incoming orders are crossed against the best opposite levels at the resting order's price,
+ * oldest order first within a level, and may be filled partially. Whatever is left rests in the book.
+ * Not thread-safe: a matcher is only ever used from its symbol's thread in {@link MatchingEngine}.
+ */
+public class OrderMatcher {
+
+    private final String stockSymbol;
+
+    // Fixed-point limit price -> level; bids are read from the highest price, asks from the lowest
+    private final NavigableMap<Long, PriceLevel> bids = new TreeMap<>();
+    private final NavigableMap<Long, PriceLevel> asks = new TreeMap<>();
+
+    // orderId -> resting order, for O(1) cancel
+    private final Map<String, RestingOrder> orders = new HashMap<>();
+
+    private long nextSequence;
+
+    // Prices of the levels changed since the last depth delta
+    private final Set<Long> changedBids = new HashSet<>();
+    private final Set<Long> changedAsks = new HashSet<>();
+    private long depthSequence;
+
+    public OrderMatcher(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    /**
+     * Cross an incoming order against the opposite side of the book and rest the remainder
+     *
+     * @return fills for both the incoming order and the resting orders it traded with
+     */
+    public List<Fill> submit(PendingOrder pendingOrder) {
+        RestingOrder incoming = new RestingOrder(pendingOrder, nextSequence++);
+        NavigableMap<Long, PriceLevel> opposite = incoming.isBuy() ? asks : bids;
+        List<Fill> fills = Collections.emptyList();
+
+        while (incoming.getRemainingQuantity() > 0 && !opposite.isEmpty()) {
+            PriceLevel best = incoming.isBuy() ? opposite.firstEntry().getValue() : opposite.lastEntry().getValue();
+            if (incoming.isBuy() ? best.getPrice() > incoming.getLimitPrice() : best.getPrice() < incoming.getLimitPrice()) {
+                break;
+            }
+
+            RestingOrder resting = best.head();
+            int quantity = Math.min(incoming.getRemainingQuantity(), resting.getRemainingQuantity());
+            if (fills.isEmpty()) {
+                fills = new ArrayList<>();
+            }
+            fills.add(fillResting(opposite, best, resting, best.getPrice(), quantity, incoming.getOrderId()));
+            fills.add(incoming.fill(best.getPrice(), quantity, resting.getOrderId()));
+        }
+
+        if (incoming.getRemainingQuantity() > 0) {
+            rest(incoming);
+        }
+        return fills;
+    }
+
+    /**
+     * Put an order recovered after a restart back in the book without matching it.
+     * Orders must be restored oldest first to keep their time priority.
+     */
+    public void restore(PendingOrder pendingOrder) {
+        RestingOrder order = new RestingOrder(pendingOrder, nextSequence++);
+        if (order.getRemainingQuantity() > 0) {
+            rest(order);
+        }
+    }
+
+    /**
+     * Fill every resting order that crosses the market quote: BUY orders with a limit at or above
+     * the ask are filled at the ask, SELL orders with a limit at or below the bid are filled at the bid.
+     * The market is treated as having unlimited size, so each crossing order is filled completely.
+     *
+     * @param bidPrice fixed-point bid, or 0 if unknown
+     * @param askPrice fixed-point ask, or 0 if unknown
+     */
+    public List<Fill> matchQuote(long bidPrice, long askPrice) {
+        List<Fill> fills = Collections.emptyList();
+
+        if (askPrice > 0) {
+            while (!bids.isEmpty() && bids.lastKey() >= askPrice) {
+                PriceLevel level = bids.lastEntry().getValue();
+                RestingOrder resting = level.head();
+                if (fills.isEmpty()) {
+                    fills = new ArrayList<>();
+                }
+                fills.add(fillResting(bids, level, resting, askPrice, resting.getRemainingQuantity(), null));
+            }
+        }
+
+        if (bidPrice > 0) {
+            while (!asks.isEmpty() && asks.firstKey() <= bidPrice) {
+                PriceLevel level = asks.firstEntry().getValue();
+                RestingOrder resting = level.head();
+                if (fills.isEmpty()) {
+                    fills = new ArrayList<>();
+                }
+                fills.add(fillResting(asks, level, resting, bidPrice, resting.getRemainingQuantity(), null));
+            }
+        }
+
+        return fills;
+    }
+
+    /**
+     * Remove a resting order from the book
+     *
+     * @return the removed order, or null if it wasn't resting here
+     */
+    public RestingOrder cancel(String orderId) {
+        RestingOrder order = orders.remove(orderId);
+        if (order != null) {
+            unlink(order.isBuy() ? bids : asks, order);
+        }
+        return order;
+    }
+
+    public RestingOrder find(String orderId) {
+        return orders.get(orderId);
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    /**
+     * The levels changed since the previous call, with their current quantity, or null if nothing changed
+     */
+    public DepthUpdate drainDepthChanges() {
+        if (changedBids.isEmpty() && changedAsks.isEmpty()) {
+            return null;
+        }
+        DepthUpdate update = new DepthUpdate(stockSymbol, ++depthSequence, false,
+                changedLevels(bids, changedBids, true), changedLevels(asks, changedAsks, false));
+        changedBids.clear();
+        changedAsks.clear();
+        return update;
+    }
+
+    /**
+     * Forget the changed levels without building a delta, when nobody is watching the depth
+     */
+    public void discardDepthChanges() {
+        if (!changedBids.isEmpty() || !changedAsks.isEmpty()) {
+            depthSequence++;
+            changedBids.clear();
+            changedAsks.clear();
+        }
+    }
+
+    /**
+     * The best levels on each side, stamped with the sequence of the last delta
+     */
+    public DepthUpdate depthSnapshot(int maxLevels) {
+        return new DepthUpdate(stockSymbol, depthSequence, true,
+                topLevels(bidLevels(), maxLevels), topLevels(askLevels(), maxLevels));
+    }
+
+    /**
+     * Bid levels, best (highest) price first
+     */
+    public Iterable<PriceLevel> bidLevels() {
+        return bids.descendingMap().values();
+    }
+
+    /**
+     * Ask levels, best (lowest) price first
+     */
+    public Iterable<PriceLevel> askLevels() {
+        return asks.values();
+    }
+
+    private void rest(RestingOrder order) {
+        NavigableMap<Long, PriceLevel> side = order.isBuy() ? bids : asks;
+        side.computeIfAbsent(order.getLimitPrice(), PriceLevel::new).append(order);
+        orders.put(order.getOrderId(), order);
+        (order.isBuy() ? changedBids : changedAsks).add(order.getLimitPrice());
+    }
+
+    private Fill fillResting(NavigableMap<Long, PriceLevel> side, PriceLevel level, RestingOrder resting,
+                             long price, int quantity, String counterpartyOrderId) {
+        Fill fill = resting.fill(price, quantity, counterpartyOrderId);
+        if (resting.getRemainingQuantity() == 0) {
+            orders.remove(resting.getOrderId());
+            unlink(side, resting);
+        }
+        level.reduce(quantity);
+        (side == bids ? changedBids : changedAsks).add(level.getPrice());
+        return fill;
+    }
+
+    private void unlink(NavigableMap<Long, PriceLevel> side, RestingOrder order) {
+        PriceLevel level = side.get(order.getLimitPrice());
+        level.remove(order);
+        if (level.isEmpty()) {
+            side.remove(order.getLimitPrice());
+        }
+        (side == bids ? changedBids : changedAsks).add(order.getLimitPrice());
+    }
+
+    private static List<DepthLevel> changedLevels(NavigableMap<Long, PriceLevel> side, Set<Long> prices,
+                                                  boolean descending) {
+        List<DepthLevel> levels = new ArrayList<>(prices.size());
+        for (Long price : prices) {
+            PriceLevel level = side.get(price);
+            levels.add(level != null ? toDepthLevel(level) : new DepthLevel(FixedPointPrice.toBigDecimal(price), 0, 0));
+        }
+        levels.sort(descending
+                ? (a, b) -> b.getPrice().compareTo(a.getPrice())
+                : (a, b) -> a.getPrice().compareTo(b.getPrice()));
+        return levels;
+    }
+
+    private static List<DepthLevel> topLevels(Iterable<PriceLevel> side, int maxLevels) {
+        List<DepthLevel> levels = new ArrayList<>();
+        for (PriceLevel level : side) {
+            if (levels.size() == maxLevels) {
+                break;
+            }
+            levels.add(toDepthLevel(level));
+        }
+        return levels;
+    }
+
+    private static DepthLevel toDepthLevel(PriceLevel level) {
+        return new DepthLevel(FixedPointPrice.toBigDecimal(level.getPrice()), level.getTotalQuantity(), level.getOrderCount());
+    }
+}
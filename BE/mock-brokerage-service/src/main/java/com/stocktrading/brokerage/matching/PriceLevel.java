@@ -0,0 +1,74 @@
+package com.stocktrading.brokerage.matching;
+
+/**
+ * All orders resting at one price on one side of the book, oldest first
+ */
+public class PriceLevel {
+
+    private final long price;
+    private RestingOrder head;
+    private RestingOrder tail;
+    private int orderCount;
+    private long totalQuantity;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    void append(RestingOrder order) {
+        order.previous = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        orderCount++;
+        totalQuantity += order.getRemainingQuantity();
+    }
+
+    void remove(RestingOrder order) {
+        if (order.previous == null) {
+            head = order.next;
+        } else {
+            order.previous.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.previous;
+        } else {
+            order.next.previous = order.previous;
+        }
+        order.previous = null;
+        order.next = null;
+        orderCount--;
+        totalQuantity -= order.getRemainingQuantity();
+    }
+
+    /**
+     * Account for a fill of an order that stays in this level
+     */
+    void reduce(int quantity) {
+        totalQuantity -= quantity;
+    }
+
+    RestingOrder head() {
+        return head;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public boolean isEmpty() {
+        return head == null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.stocktrading.brokerage.matching;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+
+/**
+ * An order resting in an {@link OrderMatcher} book.
+ * Orders of the same price level are chained in arrival order, so a level can drop any
+ * order in O(1) while keeping time priority.
+ */
+public class RestingOrder {
+
+    private final PendingOrder pendingOrder;
+    private final boolean buy;
+    private final long limitPrice;
+    private final long sequence;
+    private int remainingQuantity;
+    private int filledQuantity;
+    private long filledNotional; // sum of fixed-point price * quantity over all fills
+
+    // Neighbours within the price level
+    RestingOrder previous;
+    RestingOrder next;
+
+    RestingOrder(PendingOrder pendingOrder, long sequence) {
+        this.pendingOrder = pendingOrder;
+        this.buy = !"SELL".equals(pendingOrder.getSide());
+        this.limitPrice = FixedPointPrice.fromBigDecimal(pendingOrder.getLimitPrice());
+        this.sequence = sequence;
+        // Carry over fills from before a restart, see OrderMatcher#restore
+        this.filledQuantity = pendingOrder.getExecutedQuantity() != null ? pendingOrder.getExecutedQuantity() : 0;
+        this.filledNotional = pendingOrder.getExecutedNotional() != null ? pendingOrder.getExecutedNotional() : 0;
+        this.remainingQuantity = pendingOrder.getQuantity() - filledQuantity;
+    }
+
+    /**
+     * Record a fill against this order and return the resulting execution report
+     */
+    Fill fill(long price, int quantity, String counterpartyOrderId) {
+        remainingQuantity -= quantity;
+        filledQuantity += quantity;
+        filledNotional += price * quantity;
+        pendingOrder.setExecutedQuantity(filledQuantity);
+        pendingOrder.setExecutedNotional(filledNotional);
+        return new Fill(pendingOrder, price, quantity, filledQuantity, remainingQuantity,
+                averagePrice(), counterpartyOrderId);
+    }
+
+    private long averagePrice() {
+        return FixedPointPrice.average(filledNotional, filledQuantity);
+    }
+
+    public PendingOrder getPendingOrder() {
+        return pendingOrder;
+    }
+
+    public String getOrderId() {
+        return pendingOrder.getOrderId();
+    }
+
+    public boolean isBuy() {
+        return buy;
+    }
+
+    public long getLimitPrice() {
+        return limitPrice;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getRemainingQuantity() {
+        return remainingQuantity;
+    }
+
+    public int getFilledQuantity() {
+        return filledQuantity;
+    }
+}
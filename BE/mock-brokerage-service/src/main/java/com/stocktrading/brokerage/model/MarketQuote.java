@@ -0,0 +1,26 @@
+package com.stocktrading.brokerage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable snapshot of the market quote for one symbol.
+ * A new instance replaces the previous one on every tick, so readers always see a price,
+ * bid and ask that belong together. Fixed-point copies of bid/ask (price * 10^4, 0 when unknown)
+ * are precomputed once per tick for the matching path.
+ */
+@Getter
+@AllArgsConstructor
+public class MarketQuote {
+    private final String symbol;
+    private final int symbolId;
+    private final BigDecimal price;
+    private final BigDecimal bidPrice; // null if never received for this symbol
+    private final BigDecimal askPrice; // null if never received for this symbol
+    private final long fixedBidPrice;
+    private final long fixedAskPrice;
+    private final long sequence; // increases by one per accepted tick of this symbol
+    private final long timestamp; // epoch millis of the tick
+}
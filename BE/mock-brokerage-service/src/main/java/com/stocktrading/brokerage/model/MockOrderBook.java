@@ -1,43 +1,278 @@
 package com.stocktrading.brokerage.model;
 
 import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.journal.OrderJournal;
+import com.stocktrading.brokerage.matching.FixedPointPrice;
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import com.stocktrading.brokerage.matching.Fill;
+import com.stocktrading.brokerage.matching.MatchingEngine;
+import com.stocktrading.brokerage.matching.OrderMatcher;
+import com.stocktrading.brokerage.publisher.BrokerEvent;
+import com.stocktrading.brokerage.publisher.BrokerEventPublisher;
 import com.stocktrading.brokerage.service.MarketPriceCache;
+import com.stocktrading.brokerage.service.MarketPriceListener;
+import com.stocktrading.brokerage.service.OrderBookListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
- * Simulates an order book for the mock brokerage
+ * Simulates an order book for the mock brokerage.
+ * Resting limit orders live in the per-symbol books of the {@link MatchingEngine}; this class keeps
+ * the orderId and expiry indexes, feeds market ticks to the engine and publishes the resulting fills.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class MockOrderBook {
+public class MockOrderBook implements MarketPriceListener {
 
     private final MarketPriceCache marketPriceCache;
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final BrokerEventPublisher brokerEventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final MatchingEngine matchingEngine;
+    private final OrderJournal orderJournal;
     private final Random random = new Random();
 
-    // Map to store pending limit orders (orderId -> PendingOrder)
+    // Index of pending limit orders (orderId -> PendingOrder) for O(1) lookup and cancel.
+    // Entries are only removed on the symbol's matching thread, which makes that thread the
+    // single arbiter between a fill, a cancel and an expiry of the same order.
     private final Map<String, PendingOrder> pendingOrders = new ConcurrentHashMap<>();
 
+    // Pending orders ordered by expiration time (earliest first), so an expiry sweep
+    // only visits the orders that are actually due
+    private final NavigableSet<PendingOrder> expiryQueue = new ConcurrentSkipListSet<>(
+            Comparator.comparing(PendingOrder::getExpirationTime).thenComparing(PendingOrder::getOrderId));
+
+    // Components watching depth changes and execution reports, e.g. the order book WebSocket feed
+    private final List<OrderBookListener> bookListeners = new CopyOnWriteArrayList<>();
+
     @Value("${kafka.topics.broker-events}")
     private String brokerEventsTopic;
 
+    @Value("${kafka.topics.broker-events.sell}")
+    private String brokerSellEventsTopic;
+
     @Value("${market.simulation.price-variation:0.02}")
     private double priceVariation; // Default 2% variation for simulated prices
 
+    // Time from a trigger (tick, sweep or incoming order) to the fill event being sent
+    private Timer tickTriggerToFillTimer;
+    private Timer sweepTriggerToFillTimer;
+    private Timer orderTriggerToFillTimer;
+
+    @PostConstruct
+    public void init() {
+        tickTriggerToFillTimer = triggerToFillTimer("tick");
+        sweepTriggerToFillTimer = triggerToFillTimer("sweep");
+        orderTriggerToFillTimer = triggerToFillTimer("order");
+
+        // Rebuild the book from the journal before any command or tick is processed
+        restorePendingOrders(orderJournal.recover());
+
+        // Evaluate limit orders as soon as their symbol ticks
+        marketPriceCache.addPriceListener(this);
+    }
+
+    /**
+     * Put orders recovered from the journal back in the indexes and their symbol books,
+     * then compact the journal so the next restart starts from this state
+     */
+    private void restorePendingOrders(List<PendingOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<PendingOrder>> ordersBySymbol = new HashMap<>();
+        for (PendingOrder order : orders) {
+            pendingOrders.put(order.getOrderId(), order);
+            expiryQueue.add(order);
+            ordersBySymbol.computeIfAbsent(order.getStockSymbol(), symbol -> new ArrayList<>()).add(order);
+        }
+
+        ordersBySymbol.forEach((symbol, symbolOrders) -> callBook(symbol, matcher -> {
+            symbolOrders.forEach(matcher::restore);
+            return null;
+        }));
+
+        orderJournal.writeSnapshot(() -> orders);
+        log.info("Restored {} pending orders for {} symbols", orders.size(), ordersBySymbol.size());
+    }
+
+    /**
+     * Scheduled task to compact the order journal into a snapshot of the current book
+     */
+    @Scheduled(fixedDelayString = "${brokerage.journal.snapshot-interval-ms:60000}")
+    public void snapshotOrderJournal() {
+        orderJournal.writeSnapshot(this::copyPendingOrders);
+    }
+
+    /**
+     * Copy the pending orders on their symbols' matching threads, where fills change them,
+     * so the snapshot never sees a fill half applied
+     */
+    private List<PendingOrder> copyPendingOrders() {
+        Map<String, List<PendingOrder>> ordersBySymbol = new HashMap<>();
+        for (PendingOrder order : pendingOrders.values()) {
+            ordersBySymbol.computeIfAbsent(order.getStockSymbol(), symbol -> new ArrayList<>()).add(order);
+        }
+
+        List<CompletableFuture<List<PendingOrder>>> copies = new ArrayList<>(ordersBySymbol.size());
+        ordersBySymbol.forEach((symbol, symbolOrders) -> copies.add(matchingEngine.submit(symbol, matcher -> {
+            List<PendingOrder> symbolCopies = new ArrayList<>(symbolOrders.size());
+            for (PendingOrder order : symbolOrders) {
+                if (pendingOrders.get(order.getOrderId()) == order) {
+                    symbolCopies.add(order.toBuilder().build());
+                }
+            }
+            return symbolCopies;
+        })));
+
+        List<PendingOrder> orders = new ArrayList<>(pendingOrders.size());
+        copies.forEach(symbolCopies -> orders.addAll(symbolCopies.join()));
+        return orders;
+    }
+
+    /**
+     * Register a listener for depth changes and execution reports
+     */
+    public void addBookListener(OrderBookListener listener) {
+        bookListeners.add(listener);
+    }
+
+    /**
+     * Run a task against a symbol's book and publish the depth changes it made
+     */
+    private <T> T callBook(String symbol, Function<OrderMatcher, T> task) {
+        return matchingEngine.call(symbol, matcher -> {
+            T result = task.apply(matcher);
+            publishDepthChanges(matcher);
+            return result;
+        });
+    }
+
+    private void publishDepthChanges(OrderMatcher matcher) {
+        if (!isDepthWatched(matcher.getStockSymbol())) {
+            matcher.discardDepthChanges();
+            return;
+        }
+
+        DepthUpdate update = matcher.drainDepthChanges();
+        if (update == null) {
+            return;
+        }
+        for (OrderBookListener listener : bookListeners) {
+            try {
+                listener.onDepthUpdate(update);
+            } catch (Exception e) {
+                log.error("Error notifying book listener of depth change for {}", update.getSymbol(), e);
+            }
+        }
+    }
+
+    private boolean isDepthWatched(String symbol) {
+        for (OrderBookListener listener : bookListeners) {
+            if (listener.isWatchingDepth(symbol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publishExecutionReports(List<BrokerEvent> reports) {
+        for (OrderBookListener listener : bookListeners) {
+            for (BrokerEvent report : reports) {
+                try {
+                    listener.onExecutionReport(report.getEvent());
+                } catch (Exception e) {
+                    log.error("Error notifying book listener of {} event", report.getEvent().getType(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * L2 depth of a symbol: the best {@code maxLevels} levels on each side
+     */
+    public DepthUpdate getDepth(String stockSymbol, int maxLevels) {
+        if (!matchingEngine.hasBook(stockSymbol)) {
+            return new DepthUpdate(stockSymbol, 0, true, Collections.emptyList(), Collections.emptyList());
+        }
+        return matchingEngine.call(stockSymbol, matcher -> matcher.depthSnapshot(maxLevels));
+    }
+
+    /**
+     * Same as {@link #getDepth}, without waiting: the snapshot completes on the symbol's matching thread
+     */
+    public CompletableFuture<DepthUpdate> getDepthAsync(String stockSymbol, int maxLevels) {
+        if (!matchingEngine.hasBook(stockSymbol)) {
+            return CompletableFuture.completedFuture(
+                    new DepthUpdate(stockSymbol, 0, true, Collections.emptyList(), Collections.emptyList()));
+        }
+        return matchingEngine.submit(stockSymbol, matcher -> matcher.depthSnapshot(maxLevels));
+    }
+
     /**
-     * Add a pending order to the order book
+     * Status of a pending order as the book sees it, read on the symbol's matching thread
+     */
+    public Optional<Map<String, Object>> getOrderStatus(String orderId) {
+        PendingOrder order = pendingOrders.get(orderId);
+        if (order == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(matchingEngine.call(order.getStockSymbol(), matcher -> {
+            if (pendingOrders.get(orderId) != order) {
+                return null; // Filled, cancelled or expired in the meantime
+            }
+
+            int executedQuantity = order.getExecutedQuantity() != null ? order.getExecutedQuantity() : 0;
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("orderId", order.getOrderId());
+            status.put("brokerOrderId", order.getBrokerOrderId());
+            status.put("stockSymbol", order.getStockSymbol());
+            status.put("side", order.getSide());
+            status.put("limitPrice", order.getLimitPrice());
+            status.put("quantity", order.getQuantity());
+            status.put("executedQuantity", executedQuantity);
+            status.put("remainingQuantity", order.getQuantity() - executedQuantity);
+            if (executedQuantity > 0) {
+                status.put("averagePrice", averageExecutionPrice(order));
+            }
+            status.put("timeInForce", order.getTimeInForce());
+            status.put("createdAt", order.getCreatedAt().toString());
+            status.put("expirationTime", order.getExpirationTime().toString());
+            status.put("status", executedQuantity > 0 ? "PARTIALLY_FILLED" : "PENDING");
+            return status;
+        }));
+    }
+
+    private Timer triggerToFillTimer(String trigger) {
+        return Timer.builder("brokerage.limit-order.trigger-to-fill")
+                .description("Time from a price trigger to the limit order fill being sent")
+                .tag("trigger", trigger)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Add a pending order to the order book.
+     * The order is indexed but doesn't trade until {@link #matchPendingOrder(PendingOrder)} is called.
      */
     public PendingOrder addPendingOrder(String orderId, String stockSymbol, String orderType,
                                         String side, Integer quantity, BigDecimal limitPrice,
@@ -58,9 +293,15 @@ public class MockOrderBook {
                 .createdAt(Instant.now())
                 .expirationTime(expirationTime)
                 .sagaId(sagaId)
+                .brokerOrderId("MBS-LMT-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase())
+                .executedQuantity(0)
+                .executedNotional(0L)
                 .build();
 
+        // Index before journaling: a snapshot that misses the order then finds its ADD in the tail
         pendingOrders.put(orderId, pendingOrder);
+        expiryQueue.add(pendingOrder);
+        orderJournal.recordAdd(pendingOrder);
 
         log.info("LIMIT ORDER ADDED: Added pending {} order to order book: {} at limit price {}. Total pending orders: {}",
                 side, orderId, limitPrice, pendingOrders.size());
@@ -68,16 +309,82 @@ public class MockOrderBook {
         return pendingOrder;
     }
 
+    /**
+     * Hand a pending order to the matching engine. It is crossed against resting orders on the
+     * other side by price-time priority and whatever is left rests in the symbol's book.
+     * Call this after the LIMIT_ORDER_QUEUED event has been sent, so fills never overtake it.
+     */
+    public void matchPendingOrder(PendingOrder order) {
+        long triggeredAt = System.nanoTime();
+
+        callBook(order.getStockSymbol(), matcher -> {
+            if (pendingOrders.get(order.getOrderId()) != order) {
+                return null; // Cancelled or expired before it reached the book
+            }
+            publishFills(recordFills(matcher.submit(order)), triggeredAt, orderTriggerToFillTimer);
+            return null;
+        });
+    }
+
     /**
      * Remove a pending order from the order book
      */
     public boolean removePendingOrder(String orderId) {
-        PendingOrder removed = pendingOrders.remove(orderId);
-        if (removed != null) {
+        PendingOrder order = pendingOrders.get(orderId);
+        if (order == null) {
+            return false;
+        }
+
+        boolean removed = callBook(order.getStockSymbol(), matcher -> detachPendingOrder(matcher, order, false));
+        if (removed) {
             log.info("Removed pending order from order book: {}", orderId);
-            return true;
         }
-        return false;
+        return removed;
+    }
+
+    /**
+     * Remove an order from its symbol book and the indexes. Must run on the symbol's matching thread.
+     * Only the first of a fill, cancel or expiry to get there wins, so an order is never
+     * executed, expired and cancelled more than once.
+     */
+    private boolean detachPendingOrder(OrderMatcher matcher, PendingOrder order, boolean expired) {
+        matcher.cancel(order.getOrderId());
+        if (!pendingOrders.remove(order.getOrderId(), order)) {
+            return false;
+        }
+        expiryQueue.remove(order);
+        if (expired) {
+            orderJournal.recordExpire(order.getOrderId());
+        } else {
+            orderJournal.recordCancel(order.getOrderId());
+        }
+        return true;
+    }
+
+    /**
+     * Journal the fills of a matching pass and drop completely filled orders from the indexes.
+     * Must run on the symbol's matching thread.
+     */
+    private List<Fill> recordFills(List<Fill> fills) {
+        for (Fill fill : fills) {
+            orderJournal.recordFill(fill.getOrder());
+            if (fill.isComplete()) {
+                pendingOrders.remove(fill.getOrder().getOrderId(), fill.getOrder());
+                expiryQueue.remove(fill.getOrder());
+            }
+        }
+        return fills;
+    }
+
+    /**
+     * Average price of an order's fills so far, or null if it has none
+     */
+    public BigDecimal averageExecutionPrice(PendingOrder order) {
+        int executedQuantity = order.getExecutedQuantity() != null ? order.getExecutedQuantity() : 0;
+        if (executedQuantity == 0) {
+            return null;
+        }
+        return FixedPointPrice.toBigDecimal(FixedPointPrice.average(order.getExecutedNotional(), executedQuantity));
     }
 
     /**
@@ -87,6 +394,13 @@ public class MockOrderBook {
         return Optional.ofNullable(pendingOrders.get(orderId));
     }
 
+    /**
+     * Symbols that have a book
+     */
+    public Set<String> getBookSymbols() {
+        return matchingEngine.getSymbols();
+    }
+
     /**
      * Get the current number of pending orders
      */
@@ -180,6 +494,14 @@ public class MockOrderBook {
         return BigDecimal.valueOf(basePrice).setScale(2, RoundingMode.HALF_UP);
     }
 
+    /**
+     * Check whether a time in force requires immediate execution (IOC/FOK), in which case
+     * the order must never rest in the book
+     */
+    public boolean isImmediateTimeInForce(String timeInForce) {
+        return "IOC".equals(timeInForce) || "FOK".equals(timeInForce);
+    }
+
     /**
      * Calculate expiration time based on timeInForce
      */
@@ -210,71 +532,94 @@ public class MockOrderBook {
 
     /**
      * Scheduled task to check for expired orders
-     * Runs every minute
+     * Runs every second; only the orders at the head of the expiry queue that are due are visited
      */
-    @Scheduled(fixedRate = 60000)
+    @Scheduled(fixedRate = 1000)
     public void checkForExpiredOrders() {
         // Skip if no pending orders to check
-        if (pendingOrders.isEmpty()) {
+        if (expiryQueue.isEmpty()) {
             return;
         }
 
         Instant now = Instant.now();
-        log.debug("Checking for expired orders at {}", now);
+        log.trace("Checking for expired orders at {}", now);
 
-        List<String> expiredOrderIds = new ArrayList<>();
+        int expiredCount = 0;
 
-        // Find expired orders
-        for (PendingOrder order : pendingOrders.values()) {
-            if (order.getExpirationTime() != null && order.getExpirationTime().isBefore(now)) {
-                expiredOrderIds.add(order.getOrderId());
+        // Walk the queue in expiration order and stop at the first order that is not yet due
+        for (PendingOrder order : expiryQueue) {
+            if (order.getExpirationTime().isAfter(now)) {
+                break;
+            }
 
-                // Send ORDER_EXPIRED event
-                sendOrderExpiredEvent(order);
+            boolean expired = callBook(order.getStockSymbol(), matcher -> {
+                if (!detachPendingOrder(matcher, order, true)) {
+                    return false;
+                }
+                // Published on the matching thread, behind every fill of the order
+                List<BrokerEvent> expiredEvent = Collections.singletonList(orderExpiredEvent(order));
+                brokerEventPublisher.publishAll(expiredEvent);
+                publishExecutionReports(expiredEvent);
+                return true;
+            });
+            if (expired) {
+                expiredCount++;
+                log.info("Removed expired order: {}", order.getOrderId());
             }
         }
 
-        // Remove expired orders
-        for (String orderId : expiredOrderIds) {
-            pendingOrders.remove(orderId);
-            log.info("Removed expired order: {}", orderId);
+        if (expiredCount > 0) {
+            log.info("Removed {} expired orders", expiredCount);
         }
+    }
 
-        if (!expiredOrderIds.isEmpty()) {
-            log.info("Removed {} expired orders", expiredOrderIds.size());
+    /**
+     * Build the ORDER_EXPIRED event for a limit order
+     */
+    private BrokerEvent orderExpiredEvent(PendingOrder order) {
+        EventMessage event = EventMessage.builder()
+                .messageId(UUID.randomUUID().toString())
+                .sagaId(order.getSagaId())
+                .type("ORDER_EXPIRED")
+                .sourceService("MOCK_BROKERAGE_SERVICE")
+                .timestamp(Instant.now())
+                .success(true)
+                .build();
+
+        event.setPayloadValue("orderId", order.getOrderId());
+        event.setPayloadValue("stockSymbol", order.getStockSymbol());
+        event.setPayloadValue("limitPrice", order.getLimitPrice());
+        event.setPayloadValue("expiredAt", Instant.now().toString());
+        event.setPayloadValue("status", "EXPIRED");
+        event.setPayloadValue("side", order.getSide());
+        event.setPayloadValue("executedQuantity", order.getExecutedQuantity());
+        if (order.getExecutedQuantity() != null && order.getExecutedQuantity() > 0) {
+            // The saga settles what was filled before the order expired
+            event.setPayloadValue("brokerOrderId", order.getBrokerOrderId());
+            event.setPayloadValue("executionPrice", averageExecutionPrice(order));
         }
+
+        return new BrokerEvent(topicFor(order), order.getSagaId(), event);
     }
 
     /**
-     * Send an ORDER_EXPIRED event for a limit order
+     * Evaluate the limit orders of a symbol right after its price ticked
      */
-    private void sendOrderExpiredEvent(PendingOrder order) {
-        try {
-            EventMessage event = EventMessage.builder()
-                    .messageId(UUID.randomUUID().toString())
-                    .sagaId(order.getSagaId())
-                    .type("ORDER_EXPIRED")
-                    .sourceService("MOCK_BROKERAGE_SERVICE")
-                    .timestamp(Instant.now())
-                    .success(true)
-                    .build();
+    @Override
+    public void onMarketPriceUpdate(MarketQuote quote) {
+        long triggeredAt = System.nanoTime();
 
-            event.setPayloadValue("orderId", order.getOrderId());
-            event.setPayloadValue("stockSymbol", order.getStockSymbol());
-            event.setPayloadValue("limitPrice", order.getLimitPrice());
-            event.setPayloadValue("expiredAt", Instant.now().toString());
-            event.setPayloadValue("status", "EXPIRED");
-
-            kafkaTemplate.send(brokerEventsTopic, order.getSagaId(), event);
-            log.info("Sent ORDER_EXPIRED event for order: {}", order.getOrderId());
-        } catch (Exception e) {
-            log.error("Error sending ORDER_EXPIRED event", e);
+        if (!matchingEngine.hasBook(quote.getSymbol())) {
+            return; // No limit orders for this symbol
         }
+
+        matchAgainstQuote(quote.getSymbol(), quote, triggeredAt, tickTriggerToFillTimer);
     }
 
     /**
      * Scheduled task to check pending limit orders against current market prices
-     * Runs every 2 seconds, but only if there are pending orders to check
+     * Runs every 5 seconds as a safety net for ticks that didn't trigger an order, e.g. ones
+     * received before the order was queued
      */
     @Scheduled(fixedRate = 5000)
     public void checkPendingLimitOrders() {
@@ -282,80 +627,105 @@ public class MockOrderBook {
             return; // Nothing to check
         }
 
-        // Only log when actually checking orders (not every 2 seconds)
+        // Only log when actually checking orders (not every 5 seconds)
         log.debug("Checking pending limit orders. Count: {}", pendingOrders.size());
 
-        // Create a copy to avoid concurrent modification
-        List<PendingOrder> ordersToCheck = new ArrayList<>(pendingOrders.values());
-
-        for (PendingOrder order : ordersToCheck) {
-            // For now, only BUY orders are supported
-            if (!"BUY".equals(order.getSide())) {
-                continue;
-            }
-
-            checkAndExecuteBuyOrder(order);
+        long triggeredAt = System.nanoTime();
+        for (String symbol : matchingEngine.getSymbols()) {
+            matchAgainstQuote(symbol, marketPriceCache.getQuote(symbol), triggeredAt, sweepTriggerToFillTimer);
         }
     }
 
     /**
-     * Check and execute a buy order if price conditions are met
+     * Fill the orders of one symbol that cross the current quote: BUY orders with a limit at or above
+     * the ask and SELL orders with a limit at or below the bid. Only the crossing levels are touched.
+     * Bid/ask come straight from the quote snapshot; the simulated fallback is only used without one.
      */
-    private void checkAndExecuteBuyOrder(PendingOrder order) {
-        String stockSymbol = order.getStockSymbol();
-        BigDecimal limitPrice = order.getLimitPrice();
+    private void matchAgainstQuote(String symbol, MarketQuote quote, long triggeredAt, Timer triggerToFillTimer) {
+        long bidPrice = quote != null && quote.getFixedBidPrice() > 0
+                ? quote.getFixedBidPrice() : FixedPointPrice.fromBigDecimal(getBidPrice(symbol));
+        long askPrice = quote != null && quote.getFixedAskPrice() > 0
+                ? quote.getFixedAskPrice() : FixedPointPrice.fromBigDecimal(getAskPrice(symbol));
+
+        int fillCount = callBook(symbol, matcher -> {
+            List<Fill> fills = recordFills(matcher.matchQuote(bidPrice, askPrice));
+            publishFills(fills, triggeredAt, triggerToFillTimer);
+            return fills.size();
+        });
 
-        // Get current ask price
-        BigDecimal currentAskPrice = getAskPrice(stockSymbol);
+        // Changed to trace level to reduce output
+        log.trace("Matched {} against bid {} / ask {}: {} fills", symbol, bidPrice, askPrice, fillCount);
+    }
 
-        // For BUY orders, execute if askPrice <= limitPrice
-        boolean shouldExecute = currentAskPrice.compareTo(limitPrice) <= 0;
+    /**
+     * Publish the execution reports of one matching pass as a single batch. Runs on the symbol's
+     * matching thread, so the reports of an order go out in the order its fills happened, whichever
+     * trigger (order, tick or sweep) produced them; publishing only queues them.
+     */
+    private void publishFills(List<Fill> fills, long triggeredAt, Timer triggerToFillTimer) {
+        if (fills.isEmpty()) {
+            return;
+        }
 
-        // Changed to trace level to reduce output
-        log.trace("Checking BUY order {} - limitPrice: {}, currentAskPrice: {}, shouldExecute: {}",
-                order.getOrderId(), limitPrice, currentAskPrice, shouldExecute);
+        List<BrokerEvent> reports = new ArrayList<>(fills.size());
+        for (Fill fill : fills) {
+            reports.add(executionReport(fill));
+        }
+        brokerEventPublisher.publishAll(reports);
+        publishExecutionReports(reports);
 
-        if (shouldExecute) {
-            executeOrder(order, currentAskPrice);
+        long triggerToFillNanos = System.nanoTime() - triggeredAt;
+        for (int i = 0; i < reports.size(); i++) {
+            triggerToFillTimer.record(triggerToFillNanos, TimeUnit.NANOSECONDS);
         }
+        log.info("Published {} execution reports", reports.size());
     }
 
     /**
-     * Execute a pending limit order at the specified price
+     * Build the execution report for a fill. The fill that completes an order is sent as
+     * ORDER_EXECUTED_BY_BROKER with the total quantity at the average price; earlier fills
+     * are sent as ORDER_PARTIALLY_FILLED with the quantity of that fill.
      */
-    private void executeOrder(PendingOrder order, BigDecimal executionPrice) {
-        // First remove from pending orders
-        pendingOrders.remove(order.getOrderId());
-
-        log.info("Executing limit order: {} for {} shares of {} at price {}",
-                order.getOrderId(), order.getQuantity(), order.getStockSymbol(), executionPrice);
-
-        // Generate a broker order ID
-        String brokerOrderId = "MBS-LMT-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    private BrokerEvent executionReport(Fill fill) {
+        PendingOrder order = fill.getOrder();
+        boolean complete = fill.isComplete();
+        BigDecimal executionPrice = FixedPointPrice.toBigDecimal(complete ? fill.getAveragePrice() : fill.getPrice());
+        int executedQuantity = complete ? fill.getCumulativeQuantity() : fill.getQuantity();
+
+        log.info("Executing limit order: {} for {} shares of {} at price {} ({} remaining)",
+                order.getOrderId(), executedQuantity, order.getStockSymbol(), executionPrice,
+                fill.getRemainingQuantity());
+
+        EventMessage event = EventMessage.builder()
+                .messageId(UUID.randomUUID().toString())
+                .sagaId(order.getSagaId())
+                .type(complete ? "ORDER_EXECUTED_BY_BROKER" : "ORDER_PARTIALLY_FILLED")
+                .sourceService("MOCK_BROKERAGE_SERVICE")
+                .timestamp(Instant.now())
+                .success(true)
+                .build();
 
-        try {
-            // Send ORDER_EXECUTED_BY_BROKER event
-            EventMessage event = EventMessage.builder()
-                    .messageId(UUID.randomUUID().toString())
-                    .sagaId(order.getSagaId())
-                    .type("ORDER_EXECUTED_BY_BROKER")
-                    .sourceService("MOCK_BROKERAGE_SERVICE")
-                    .timestamp(Instant.now())
-                    .success(true)
-                    .build();
+        event.setPayloadValue("orderId", order.getOrderId());
+        event.setPayloadValue("brokerOrderId", order.getBrokerOrderId());
+        event.setPayloadValue("stockSymbol", order.getStockSymbol());
+        event.setPayloadValue("executionPrice", executionPrice);
+        event.setPayloadValue("executedQuantity", executedQuantity);
+        event.setPayloadValue("cumulativeQuantity", fill.getCumulativeQuantity());
+        event.setPayloadValue("remainingQuantity", fill.getRemainingQuantity());
+        event.setPayloadValue("executedAt", Instant.now().toString());
+        event.setPayloadValue("status", complete ? "FILLED" : "PARTIALLY_FILLED");
+        event.setPayloadValue("side", order.getSide());
+        if (fill.getCounterpartyOrderId() != null) {
+            event.setPayloadValue("counterpartyOrderId", fill.getCounterpartyOrderId());
+        }
 
-            event.setPayloadValue("orderId", order.getOrderId());
-            event.setPayloadValue("brokerOrderId", brokerOrderId);
-            event.setPayloadValue("stockSymbol", order.getStockSymbol());
-            event.setPayloadValue("executionPrice", executionPrice);
-            event.setPayloadValue("executedQuantity", order.getQuantity());
-            event.setPayloadValue("executedAt", Instant.now().toString());
-            event.setPayloadValue("status", "FILLED");
+        return new BrokerEvent(topicFor(order), order.getSagaId(), event);
+    }
 
-            kafkaTemplate.send(brokerEventsTopic, order.getSagaId(), event);
-            log.info("Sent ORDER_EXECUTED_BY_BROKER event for limit order: {}", order.getOrderId());
-        } catch (Exception e) {
-            log.error("Error sending ORDER_EXECUTED_BY_BROKER event", e);
-        }
+    /**
+     * Broker events go to the buy or sell saga topic depending on the order side
+     */
+    private String topicFor(PendingOrder order) {
+        return "SELL".equals(order.getSide()) ? brokerSellEventsTopic : brokerEventsTopic;
     }
-}
\ No newline at end of file
+}
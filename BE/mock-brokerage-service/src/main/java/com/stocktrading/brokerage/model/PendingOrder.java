@@ -12,7 +12,7 @@ import java.time.Instant;
  * Represents a pending limit order in the order book
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class PendingOrder {
@@ -26,5 +26,7 @@ public class PendingOrder {
     private Instant createdAt;
     private Instant expirationTime;
     private String sagaId; // Reference to the saga orchestrating this order
-    private String brokerOrderId; // Will be set when executed
+    private String brokerOrderId; // Assigned when the order is queued
+    private Integer executedQuantity; // Filled so far, less than quantity while partially filled
+    private Long executedNotional; // Fixed-point sum of price * quantity over fills, for the average price
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.stocktrading.brokerage.publisher;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * An event on its way to one of the broker event topics, keyed by saga ID
+ */
+@Getter
+@AllArgsConstructor
+public class BrokerEvent {
+
+    private final String topic;
+    private final String key;
+    private final EventMessage event;
+}
@@ -0,0 +1,249 @@
+package com.stocktrading.brokerage.publisher;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes broker events (execution reports, expiries and command replies) to Kafka.
+ * Publishing never blocks the caller: the events are queued per saga and handed to the producer
+ * by the publisher's own thread, left to the producer to batch and compress, and delivery acks are
+ * tracked in callbacks.
+ * <p>
+ * Each saga has at most one event in flight: the next one is only sent once the previous one was
+ * acked, so a saga never sees its events out of order, while the events of different sagas are
+ * sent together. An event whose send failed stays at the head of its saga's queue and is sent
+ * again after the retry interval, holding back the saga's later events, up to the maximum number
+ * of attempts; an event that still fails then is dropped and the saga's next event goes out. The
+ * events held back across all sagas are bounded; beyond that new events are dropped.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BrokerEventPublisher {
+
+    private static final String NO_KEY = "";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // Saga ID -> its events not acked yet, oldest first; the head is in flight or waiting to be retried
+    private final Map<String, Deque<OutgoingEvent>> unackedByKey = new ConcurrentHashMap<>();
+
+    // Events waiting behind an unacked event of their saga, or for a retry
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // Sends, and retries after the retry interval; never the caller's thread
+    private ScheduledExecutorService sendExecutor;
+
+    @Value("${brokerage.event-publisher.retry-buffer-size:10000}")
+    private int retryBufferSize;
+
+    @Value("${brokerage.event-publisher.retry-interval-ms:1000}")
+    private long retryIntervalMs;
+
+    @Value("${brokerage.event-publisher.max-attempts:10}")
+    private int maxAttempts;
+
+    private Counter ackedCounter;
+    private Counter failedCounter;
+    private Counter retriedCounter;
+    private Counter droppedCounter;
+    private Timer ackTimer;
+    private DistributionSummary batchSizeSummary;
+
+    @PostConstruct
+    public void init() {
+        sendExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "broker-event-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ackedCounter = meterRegistry.counter("brokerage.events.acked");
+        failedCounter = meterRegistry.counter("brokerage.events.failed");
+        retriedCounter = meterRegistry.counter("brokerage.events.retried");
+        droppedCounter = meterRegistry.counter("brokerage.events.dropped");
+        ackTimer = Timer.builder("brokerage.events.ack-latency")
+                .description("Time from handing an event to the producer to the broker ack")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("brokerage.events.batch-size")
+                .description("Number of events published together from one matching pass")
+                .register(meterRegistry);
+        Gauge.builder("brokerage.events.retry-buffer.size", waiting, AtomicInteger::get)
+                .description("Events held back behind an unacked event of their saga or waiting to be retried")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    /**
+     * Publish a single event
+     */
+    public void publish(String topic, String key, EventMessage event) {
+        publishAll(Collections.singletonList(new BrokerEvent(topic, key, event)));
+    }
+
+    /**
+     * Publish the events of one matching pass in order. Events of the same saga must be published
+     * from one thread at a time, in the order the saga should see them.
+     */
+    public void publishAll(List<BrokerEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        batchSizeSummary.record(events.size());
+
+        for (BrokerEvent event : events) {
+            OutgoingEvent outgoing = new OutgoingEvent(event);
+            boolean[] first = new boolean[1];
+            unackedByKey.compute(keyOf(event), (key, unacked) -> {
+                if (unacked == null) {
+                    unacked = new ArrayDeque<>();
+                    first[0] = true;
+                } else if (!hold()) {
+                    droppedCounter.increment();
+                    log.error("Retry buffer full ({} events), dropping {} event for saga {}",
+                            retryBufferSize, event.getEvent().getType(), event.getKey());
+                    return unacked;
+                }
+                unacked.add(outgoing);
+                return unacked;
+            });
+            if (first[0]) {
+                sendExecutor.execute(() -> send(outgoing));
+            }
+        }
+    }
+
+    /**
+     * Number of events held back or waiting to be retried
+     */
+    public int getRetryBufferSize() {
+        return waiting.get();
+    }
+
+    private boolean hold() {
+        while (true) {
+            int held = waiting.get();
+            if (held >= retryBufferSize) {
+                return false;
+            }
+            if (waiting.compareAndSet(held, held + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hand the head event of a saga to the producer; runs on the send executor
+     */
+    private void send(OutgoingEvent outgoing) {
+        BrokerEvent event = outgoing.event;
+        long startedAt = System.nanoTime();
+        try {
+            kafkaTemplate.send(event.getTopic(), event.getKey(), event.getEvent()).addCallback(
+                    result -> acked(outgoing, startedAt),
+                    error -> failed(outgoing, error));
+        } catch (Exception e) {
+            failed(outgoing, e);
+        }
+    }
+
+    /**
+     * Drop the acked head of its saga's queue and send the next event of the saga, if any
+     */
+    private void acked(OutgoingEvent outgoing, long startedAt) {
+        ackTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        ackedCounter.increment();
+        if (outgoing.attempts > 1) {
+            retriedCounter.increment();
+            log.info("Retried {} event for saga {}", outgoing.event.getEvent().getType(), outgoing.event.getKey());
+        }
+        sendNext(outgoing);
+    }
+
+    /**
+     * Remove a saga's head event, acked or given up on, and send the saga's next event, if any
+     */
+    private void sendNext(OutgoingEvent outgoing) {
+        OutgoingEvent[] next = new OutgoingEvent[1];
+        unackedByKey.computeIfPresent(keyOf(outgoing.event), (key, unacked) -> {
+            unacked.poll();
+            next[0] = unacked.peek();
+            return unacked.isEmpty() ? null : unacked;
+        });
+        if (next[0] != null) {
+            waiting.decrementAndGet();
+            // Acks and failures arrive on the producer's I/O thread, which must not send itself
+            sendExecutor.execute(() -> send(next[0]));
+        }
+    }
+
+    /**
+     * Keep a failed event at the head of its saga's queue and send it again after the retry interval,
+     * or drop it once it has used up its attempts so it no longer holds back the saga
+     */
+    private void failed(OutgoingEvent outgoing, Throwable error) {
+        BrokerEvent event = outgoing.event;
+        failedCounter.increment();
+        if (outgoing.attempts >= maxAttempts) {
+            droppedCounter.increment();
+            log.error("Giving up on {} event for saga {} after {} attempts, dropping it",
+                    event.getEvent().getType(), event.getKey(), outgoing.attempts, error);
+            sendNext(outgoing);
+            return;
+        }
+
+        waiting.incrementAndGet();
+        log.error("Error sending {} event for saga {} (attempt {}), retrying in {} ms",
+                event.getEvent().getType(), event.getKey(), outgoing.attempts, retryIntervalMs, error);
+
+        sendExecutor.schedule(() -> {
+            waiting.decrementAndGet();
+            outgoing.attempts++;
+            send(outgoing);
+        }, retryIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static String keyOf(BrokerEvent event) {
+        return event.getKey() != null ? event.getKey() : NO_KEY;
+    }
+
+    /**
+     * An event not acked yet, with the number of times it has been handed to the producer
+     */
+    private static class OutgoingEvent {
+        private final BrokerEvent event;
+        private int attempts = 1;
+
+        OutgoingEvent(BrokerEvent event) {
+            this.event = event;
+        }
+    }
+}
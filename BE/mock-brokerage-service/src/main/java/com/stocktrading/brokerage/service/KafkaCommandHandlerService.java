@@ -4,10 +4,10 @@ import com.project.kafkamessagemodels.model.CommandMessage;
 import com.project.kafkamessagemodels.model.EventMessage;
 import com.stocktrading.brokerage.model.MockOrderBook;
 import com.stocktrading.brokerage.model.PendingOrder;
+import com.stocktrading.brokerage.publisher.BrokerEventPublisher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -24,8 +24,9 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class KafkaCommandHandlerService {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final BrokerEventPublisher brokerEventPublisher;
     private final MockOrderBook mockOrderBook;
+    private final ProcessingDelaySimulator processingDelaySimulator;
     private final Random random = new Random();
 
     @Value("${kafka.topics.broker-events}")
@@ -39,7 +40,8 @@ public class KafkaCommandHandlerService {
 
     /**
      * Handle BROKER_EXECUTE_ORDER command
-     * Enhanced to support both BUY and SELL orders
+     * Enhanced to support both BUY and SELL orders.
+     * Returns right away; the order is executed once the simulated processing delay has passed.
      * @param command The Kafka command message
      * @param isSellOrder Flag indicating if this is a sell order (true) or buy order (false)
      */
@@ -80,10 +82,22 @@ public class KafkaCommandHandlerService {
         event.setSourceService("MOCK_BROKERAGE_SERVICE");
         event.setTimestamp(Instant.now());
 
-        try {
-            // Simulate processing delay (100-500ms)
-            simulateProcessingDelay();
+        // Simulate processing delay without holding the listener thread
+        final String orderSide = side;
+        final BigDecimal orderLimitPrice = limitPrice;
+        processingDelaySimulator.schedule(command.getSagaId(), () ->
+                executeOrder(command, event, orderId, stockSymbol, orderType, quantity,
+                        orderLimitPrice, timeInForce, orderSide, isSellOrder));
+    }
 
+    /**
+     * Execute an order after its simulated processing delay
+     */
+    private void executeOrder(CommandMessage command, EventMessage event, String orderId,
+                              String stockSymbol, String orderType, Integer quantity,
+                              BigDecimal limitPrice, String timeInForce, String side,
+                              boolean isSellOrder) {
+        try {
             // Determine if order execution should succeed based on configured success rate
             boolean orderExecutionSucceeds = random.nextInt(100) < orderExecutionSuccessRate;
 
@@ -117,6 +131,7 @@ public class KafkaCommandHandlerService {
                                   boolean isSellOrder) {
         // Check if the limit price meets current market conditions for immediate execution
         boolean canExecuteImmediately = mockOrderBook.canExecuteImmediately(stockSymbol, side, limitPrice);
+        PendingOrder pendingOrder = null;
 
         if (canExecuteImmediately) {
             // Execute the order immediately
@@ -138,9 +153,23 @@ public class KafkaCommandHandlerService {
 
             log.info("Limit {} order executed immediately: {} for {} shares of {} at ${}",
                     side, brokerOrderId, quantity, stockSymbol, executionPrice);
+        } else if (mockOrderBook.isImmediateTimeInForce(timeInForce)) {
+            // IOC/FOK orders that can't be filled right now expire without touching the order book
+            event.setType("ORDER_EXPIRED");
+            event.setSuccess(true);
+            event.setPayloadValue("orderId", orderId);
+            event.setPayloadValue("stockSymbol", stockSymbol);
+            event.setPayloadValue("limitPrice", limitPrice);
+            event.setPayloadValue("expiredAt", Instant.now().toString());
+            event.setPayloadValue("status", "EXPIRED");
+            event.setPayloadValue("side", side);
+            event.setPayloadValue("note", timeInForce + " order could not be filled immediately");
+
+            log.info("Limit {} {} order expired immediately: {} for {} shares of {} at limit ${}",
+                    side, timeInForce, orderId, quantity, stockSymbol, limitPrice);
         } else {
             // Add to order book for later execution
-            PendingOrder pendingOrder = mockOrderBook.addPendingOrder(
+            pendingOrder = mockOrderBook.addPendingOrder(
                     orderId, stockSymbol, orderType, side, quantity,
                     limitPrice, timeInForce, command.getSagaId());
 
@@ -165,6 +194,11 @@ public class KafkaCommandHandlerService {
 
         // Publish the event
         publishEvent(event, isSellOrder);
+
+        // Cross the queued order against the book only once the saga has been told it is queued
+        if (pendingOrder != null) {
+            mockOrderBook.matchPendingOrder(pendingOrder);
+        }
     }
 
     /**
@@ -221,9 +255,12 @@ public class KafkaCommandHandlerService {
             // First, check if this is a pending limit order in our order book
             Optional<PendingOrder> pendingOrderOpt = mockOrderBook.findPendingOrder(orderId);
 
-            if (pendingOrderOpt.isPresent()) {
-                // This is a pending LIMIT order, remove it from the book
-                mockOrderBook.removePendingOrder(orderId);
+            if (pendingOrderOpt.isPresent() && mockOrderBook.removePendingOrder(orderId)) {
+                // This was a pending LIMIT order, now removed from the book.
+                // It can't be filled any more, so its executed quantity is final.
+                PendingOrder cancelledOrder = pendingOrderOpt.get();
+                int executedQuantity = cancelledOrder.getExecutedQuantity() != null
+                        ? cancelledOrder.getExecutedQuantity() : 0;
 
                 event.setType("BROKER_ORDER_CANCELLED");
                 event.setSuccess(true);
@@ -232,6 +269,11 @@ public class KafkaCommandHandlerService {
                 event.setPayloadValue("cancelledAt", Instant.now().toString());
                 event.setPayloadValue("status", "CANCELLED");
                 event.setPayloadValue("note", "Pending limit order cancelled");
+                event.setPayloadValue("executedQuantity", executedQuantity);
+                if (executedQuantity > 0) {
+                    // The saga settles what was filled before the cancel
+                    event.setPayloadValue("executionPrice", mockOrderBook.averageExecutionPrice(cancelledOrder));
+                }
 
                 log.info("Pending limit order cancelled from order book: {}", orderId);
             }
@@ -249,17 +291,20 @@ public class KafkaCommandHandlerService {
                 event.setPayloadValue("note", "Order hadn't been submitted to broker yet, no cancellation needed");
             } else {
                 // Normal cancellation flow for existing broker orders
-                // Simulate processing delay
-                simulateProcessingDelay();
-
-                event.setType("BROKER_ORDER_CANCELLED");
-                event.setSuccess(true);
-                event.setPayloadValue("orderId", orderId);
-                event.setPayloadValue("brokerOrderId", brokerOrderId);
-                event.setPayloadValue("cancelledAt", Instant.now().toString());
-                event.setPayloadValue("status", "CANCELLED");
-
-                log.info("Order cancelled successfully: {}", brokerOrderId);
+                // Simulate processing delay without holding the listener thread
+                processingDelaySimulator.schedule(command.getSagaId(), () -> {
+                    event.setType("BROKER_ORDER_CANCELLED");
+                    event.setSuccess(true);
+                    event.setPayloadValue("orderId", orderId);
+                    event.setPayloadValue("brokerOrderId", brokerOrderId);
+                    event.setPayloadValue("cancelledAt", Instant.now().toString());
+                    event.setPayloadValue("status", "CANCELLED");
+
+                    log.info("Order cancelled successfully: {}", brokerOrderId);
+
+                    publishEvent(event, isSellOrder);
+                });
+                return;
             }
         } catch (Exception e) {
             log.error("Error cancelling order", e);
@@ -299,23 +344,12 @@ public class KafkaCommandHandlerService {
             // Choose the appropriate topic based on order type
             String topicToUse = isSellOrder ? brokerSellEventsTopic : brokerEventsTopic;
 
-            kafkaTemplate.send(topicToUse, event.getSagaId(), event);
+            // Same producer path as the fills, so replies and fills of a saga stay in order
+            brokerEventPublisher.publish(topicToUse, event.getSagaId(), event);
             log.debug("Published event: {} for saga: {} to topic: {}",
                     event.getType(), event.getSagaId(), topicToUse);
         } catch (Exception e) {
             log.error("Error publishing event to Kafka", e);
         }
     }
-
-    /**
-     * Simulate processing delay
-     */
-    private void simulateProcessingDelay() {
-        try {
-            // Random delay between 100-500ms
-            Thread.sleep(100 + random.nextInt(400));
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
 }
\ No newline at end of file
@@ -1,29 +1,144 @@
 package com.stocktrading.brokerage.service;
 
 import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.client.MarketDataClient;
+import com.stocktrading.brokerage.matching.FixedPointPrice;
+import com.stocktrading.brokerage.model.MarketQuote;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Maintains a local cache of market prices that gets updated via Kafka events
+ * Maintains a local cache of market prices that gets updated via Kafka events.
+ * Each symbol is interned to a dense int id on first sight and its latest {@link MarketQuote}
+ * is swapped atomically into an array slot, so a reader holding the id gets a consistent
+ * quote with a single array access.
+ * <p>
+ * On startup the cache is warmed from the market data service's last-value snapshot before the
+ * Kafka listener starts, so orders placed right after a restart fill at market prices instead of
+ * waiting for the next tick of their symbol. The listener then replays whatever backlog the topic
+ * holds for its group; ticks older than the cached quote are ignored, so the replay can't roll
+ * the warm cache back or trigger limit orders at old prices.
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class MarketPriceCache {
 
-    // Cache of current market prices
-    private final Map<String, BigDecimal> priceCache = new ConcurrentHashMap<>();
+    private final MarketDataClient marketDataClient;
 
-    // Cache of bid prices
-    private final Map<String, BigDecimal> bidPrices = new ConcurrentHashMap<>();
+    // Symbol -> dense id (0, 1, 2, ...) assigned in order of first appearance
+    private final Map<String, Integer> symbolIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSymbolId = new AtomicInteger();
 
-    // Cache of ask prices
-    private final Map<String, BigDecimal> askPrices = new ConcurrentHashMap<>();
+    // Latest quote per symbol id
+    private AtomicReferenceArray<MarketQuote> quotes;
+
+    // Components notified on every tick, e.g. the order book triggering limit orders
+    private final List<MarketPriceListener> priceListeners = new CopyOnWriteArrayList<>();
+
+    @Value("${market.price-cache.max-symbols:16384}")
+    private int maxSymbols;
+
+    @Value("${market.price-cache.bootstrap.enabled:true}")
+    private boolean bootstrapEnabled;
+
+    @PostConstruct
+    public void init() {
+        quotes = new AtomicReferenceArray<>(maxSymbols);
+        if (bootstrapEnabled) {
+            bootstrap();
+        }
+    }
+
+    /**
+     * Load the last quote of every symbol from the market data service. Listener containers only
+     * start once the context is up, so this runs before any live tick; if the service can't be
+     * reached the cache simply fills from the live ticks as before.
+     */
+    private void bootstrap() {
+        long started = System.currentTimeMillis();
+        List<Map<String, Object>> lastValues;
+        try {
+            lastValues = marketDataClient.getLastValues();
+        } catch (RestClientException e) {
+            log.warn("Could not load last market prices, waiting for live ticks: {}", e.getMessage());
+            return;
+        }
+
+        int seeded = 0;
+        for (Map<String, Object> lastValue : lastValues) {
+            try {
+                String symbol = (String) lastValue.get("symbol");
+                Object priceObj = lastValue.get("price");
+                if (symbol == null || priceObj == null) {
+                    continue;
+                }
+                Object bidObj = lastValue.get("bidPrice");
+                Object askObj = lastValue.get("askPrice");
+                Object timestampObj = lastValue.get("timestamp");
+
+                if (seedQuote(symbol, convertToBigDecimal(priceObj),
+                        bidObj != null ? convertToBigDecimal(bidObj) : null,
+                        askObj != null ? convertToBigDecimal(askObj) : null,
+                        timestampObj != null ? Instant.parse(timestampObj.toString()).toEpochMilli() : started)) {
+                    seeded++;
+                }
+            } catch (Exception e) {
+                log.error("Error loading last market price {}", lastValue, e);
+            }
+        }
+        log.info("Warmed price cache with {} last prices in {} ms", seeded, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Register a listener to be notified after each price update
+     */
+    public void addPriceListener(MarketPriceListener listener) {
+        priceListeners.add(listener);
+    }
+
+    /**
+     * Get the dense id of a symbol
+     *
+     * @param symbol The stock symbol
+     * @return The symbol id, or -1 if no price has been received for it yet
+     */
+    public int getSymbolId(String symbol) {
+        Integer symbolId = symbolIds.get(symbol);
+        return symbolId != null ? symbolId : -1;
+    }
+
+    /**
+     * Get the latest quote by symbol id
+     *
+     * @return The quote, or null if the id is unknown
+     */
+    public MarketQuote getQuote(int symbolId) {
+        return symbolId >= 0 && symbolId < quotes.length() ? quotes.get(symbolId) : null;
+    }
+
+    /**
+     * Get the latest quote for a stock symbol
+     *
+     * @return The quote, or null if not in cache
+     */
+    public MarketQuote getQuote(String symbol) {
+        return getQuote(getSymbolId(symbol));
+    }
 
     /**
      * Get the current market price for a stock symbol
@@ -32,7 +147,8 @@ public class MarketPriceCache {
      * @return The current price, or null if not in cache
      */
     public BigDecimal getPrice(String symbol) {
-        return priceCache.get(symbol);
+        MarketQuote quote = getQuote(symbol);
+        return quote != null ? quote.getPrice() : null;
     }
 
     /**
@@ -42,7 +158,8 @@ public class MarketPriceCache {
      * @return The current bid price, or null if not in cache
      */
     public BigDecimal getBidPrice(String symbol) {
-        return bidPrices.get(symbol);
+        MarketQuote quote = getQuote(symbol);
+        return quote != null ? quote.getBidPrice() : null;
     }
 
     /**
@@ -52,7 +169,8 @@ public class MarketPriceCache {
      * @return The current ask price, or null if not in cache
      */
     public BigDecimal getAskPrice(String symbol) {
-        return askPrices.get(symbol);
+        MarketQuote quote = getQuote(symbol);
+        return quote != null ? quote.getAskPrice() : null;
     }
 
     /**
@@ -72,22 +190,23 @@ public class MarketPriceCache {
                 Object askObj = event.getPayloadValue("askPrice");
 
                 if (symbol != null && priceObj != null) {
-                    // Convert price to BigDecimal
-                    BigDecimal price = convertToBigDecimal(priceObj);
-                    priceCache.put(symbol, price);
-
-                    // Update bid/ask prices if available
-                    if (bidObj != null) {
-                        bidPrices.put(symbol, convertToBigDecimal(bidObj));
-                    }
+                    long timestamp = event.getTimestamp() != null
+                            ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
 
-                    if (askObj != null) {
-                        askPrices.put(symbol, convertToBigDecimal(askObj));
+                    MarketQuote quote = updateQuote(symbol, convertToBigDecimal(priceObj),
+                            bidObj != null ? convertToBigDecimal(bidObj) : null,
+                            askObj != null ? convertToBigDecimal(askObj) : null,
+                            timestamp);
+                    if (quote == null) {
+                        log.trace("Ignored stale price update for {} from {}", symbol, event.getTimestamp());
+                        return;
                     }
 
                     // Changed from debug to trace to reduce terminal output
-                    log.trace("Updated price cache for {}: price={}, bid={}, ask={}",
-                            symbol, price, bidPrices.get(symbol), askPrices.get(symbol));
+                    log.trace("Updated price cache for {}: price={}, bid={}, ask={}, seq={}",
+                            symbol, quote.getPrice(), quote.getBidPrice(), quote.getAskPrice(), quote.getSequence());
+
+                    notifyPriceListeners(quote);
                 }
             } catch (Exception e) {
                 log.error("Error processing market price update", e);
@@ -95,6 +214,80 @@ public class MarketPriceCache {
         }
     }
 
+    /**
+     * Atomically replace a symbol's quote. A missing bid or ask keeps the previous value.
+     *
+     * @return The quote now in the cache, or null if the tick is older than the cached quote
+     * and was ignored
+     */
+    public MarketQuote updateQuote(String symbol, BigDecimal price, BigDecimal bidPrice,
+                                   BigDecimal askPrice, long timestamp) {
+        int symbolId = internSymbol(symbol);
+
+        while (true) {
+            MarketQuote previous = quotes.get(symbolId);
+            if (previous != null && timestamp < previous.getTimestamp()) {
+                return null;
+            }
+            BigDecimal bid = bidPrice != null ? bidPrice : previous != null ? previous.getBidPrice() : null;
+            BigDecimal ask = askPrice != null ? askPrice : previous != null ? previous.getAskPrice() : null;
+
+            MarketQuote quote = new MarketQuote(symbol, symbolId, price, bid, ask,
+                    bid != null ? FixedPointPrice.fromBigDecimal(bid) : 0,
+                    ask != null ? FixedPointPrice.fromBigDecimal(ask) : 0,
+                    previous != null ? previous.getSequence() + 1 : 1,
+                    timestamp);
+
+            if (quotes.compareAndSet(symbolId, previous, quote)) {
+                return quote;
+            }
+        }
+    }
+
+    /**
+     * Set a symbol's quote from a last-value snapshot unless a tick has already arrived for it.
+     * The seeded quote has sequence 0, so the first live tick is still sequence 1.
+     *
+     * @return Whether the quote was set
+     */
+    private boolean seedQuote(String symbol, BigDecimal price, BigDecimal bidPrice,
+                              BigDecimal askPrice, long timestamp) {
+        int symbolId = internSymbol(symbol);
+        MarketQuote quote = new MarketQuote(symbol, symbolId, price, bidPrice, askPrice,
+                bidPrice != null ? FixedPointPrice.fromBigDecimal(bidPrice) : 0,
+                askPrice != null ? FixedPointPrice.fromBigDecimal(askPrice) : 0,
+                0, timestamp);
+        return quotes.compareAndSet(symbolId, null, quote);
+    }
+
+    private int internSymbol(String symbol) {
+        Integer symbolId = symbolIds.get(symbol);
+        if (symbolId != null) {
+            return symbolId;
+        }
+
+        return symbolIds.computeIfAbsent(symbol, s -> {
+            int id = nextSymbolId.getAndIncrement();
+            if (id >= maxSymbols) {
+                throw new IllegalStateException("Price cache is full (" + maxSymbols + " symbols), cannot add " + s);
+            }
+            return id;
+        });
+    }
+
+    /**
+     * Notify registered listeners of a tick; a failing listener doesn't block the others
+     */
+    private void notifyPriceListeners(MarketQuote quote) {
+        for (MarketPriceListener listener : priceListeners) {
+            try {
+                listener.onMarketPriceUpdate(quote);
+            } catch (Exception e) {
+                log.error("Error notifying price listener for {}", quote.getSymbol(), e);
+            }
+        }
+    }
+
     /**
      * Helper method to convert different numeric formats to BigDecimal
      */
@@ -111,4 +304,4 @@ public class MarketPriceCache {
             throw new IllegalArgumentException("Cannot convert to BigDecimal: " + value);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.stocktrading.brokerage.service;
+
+import com.stocktrading.brokerage.model.MarketQuote;
+
+/**
+ * Callback for components that react to market price ticks received by {@link MarketPriceCache}
+ */
+public interface MarketPriceListener {
+
+    /**
+     * Called after the cache has been updated with a new price for a symbol
+     *
+     * @param quote The new quote of the symbol that ticked
+     */
+    void onMarketPriceUpdate(MarketQuote quote);
+}
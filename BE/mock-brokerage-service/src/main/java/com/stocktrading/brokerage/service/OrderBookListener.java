@@ -0,0 +1,27 @@
+package com.stocktrading.brokerage.service;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.matching.DepthUpdate;
+
+/**
+ * Listener for changes to the mock brokerage order book
+ */
+public interface OrderBookListener {
+
+    /**
+     * Whether the listener wants the depth changes of a symbol right now; when no listener does,
+     * the changes are dropped without building a delta
+     */
+    boolean isWatchingDepth(String symbol);
+
+    /**
+     * Called on the symbol's matching thread after levels changed; must not block
+     */
+    void onDepthUpdate(DepthUpdate update);
+
+    /**
+     * Called on the symbol's matching thread with each execution report (fill or expiry) right after
+     * it was queued for Kafka; must not block
+     */
+    void onExecutionReport(EventMessage report);
+}
@@ -0,0 +1,118 @@
+package com.stocktrading.brokerage.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates broker processing latency without blocking the caller.
+ * Work is scheduled on a timer and runs once its simulated delay has passed, so Kafka listener
+ * threads return right away. Work submitted under the same key (the saga ID) still runs in
+ * submission order, like it did when the delay was slept on the listener thread.
+ */
+@Slf4j
+@Component
+public class ProcessingDelaySimulator {
+
+    public enum DelayDistribution {
+        FIXED,      // always min-processing-time-ms
+        UNIFORM,    // uniform between min- and max-processing-time-ms
+        LOGNORMAL   // long-tailed around the median, for slow brokers
+    }
+
+    // Tail of the pending work per key; removed once the key's last task has run
+    private final Map<String, CompletableFuture<Void>> pendingByKey = new ConcurrentHashMap<>();
+
+    @Value("${market.simulation.processing-delay.distribution:UNIFORM}")
+    private DelayDistribution distribution;
+
+    @Value("${market.simulation.min-processing-time-ms:100}")
+    private long minDelayMs;
+
+    @Value("${market.simulation.max-processing-time-ms:500}")
+    private long maxDelayMs;
+
+    @Value("${market.simulation.processing-delay.lognormal.median-ms:200}")
+    private double lognormalMedianMs;
+
+    @Value("${market.simulation.processing-delay.lognormal.sigma:0.5}")
+    private double lognormalSigma;
+
+    @Value("${market.simulation.processing-delay.threads:2}")
+    private int threadCount;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "processing-delay-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Simulating {} processing delay ({}-{}ms) on {} threads",
+                distribution, minDelayMs, maxDelayMs, threadCount);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Run a task after a simulated processing delay, behind any earlier task with the same key
+     */
+    public void schedule(String key, Runnable task) {
+        if (key == null) {
+            runDelayed(task);
+            return;
+        }
+
+        CompletableFuture<Void> tail = pendingByKey.compute(key, (k, previous) ->
+                previous == null ? runDelayed(task) : previous.thenCompose(done -> runDelayed(task)));
+        tail.whenComplete((done, error) -> pendingByKey.remove(key, tail));
+    }
+
+    private CompletableFuture<Void> runDelayed(Runnable task) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error running delayed broker task", e);
+            } finally {
+                // Always complete normally so later tasks for the same key still run
+                completion.complete(null);
+            }
+        }, nextDelayMs(), TimeUnit.MILLISECONDS);
+        return completion;
+    }
+
+    /**
+     * Sample the next processing delay from the configured distribution
+     */
+    long nextDelayMs() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (distribution) {
+            case FIXED:
+                return minDelayMs;
+            case LOGNORMAL:
+                return Math.round(lognormalMedianMs * Math.exp(lognormalSigma * random.nextGaussian()));
+            case UNIFORM:
+            default:
+                return maxDelayMs > minDelayMs ? random.nextLong(minDelayMs, maxDelayMs) : minDelayMs;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.stocktrading.brokerage.websocket;
+
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Bounded, conflating outbound queue of one order book feed session, drained by the shared send workers.
+ * <p>
+ * Depth is queued per symbol: a delta for a symbol that still has depth queued is merged into it
+ * (see {@link ConflatedDepth}), so a client that can't keep up gets fewer, larger deltas instead of a
+ * growing backlog, and at most one depth message per subscribed symbol is ever queued. Depth is only
+ * encoded when a worker takes it off the queue. Execution reports are never merged; once
+ * {@code maxQueuedReports} of them wait, further ones are dropped, and a session that stays over the
+ * limit (or stuck in one send) longer than the slow-session timeout should be evicted.
+ * <p>
+ * Queuing never blocks: the caller only adds to the queue, and at most one send worker drains it at a time.
+ * <p>
+ * After {@link #expectSnapshot}, the symbol's deltas are held back until its snapshot arrives and are then
+ * merged into it, so the snapshot can be taken on the matching thread without anyone waiting for it.
+ */
+@Slf4j
+public class BookFeedOutbox {
+
+    // Messages sent per drain task before the worker moves on to other sessions
+    private static final int MAX_SENDS_PER_DRAIN = 64;
+
+    private final WebSocketSession session;
+    private final Executor sendExecutor;
+    private final int maxQueuedReports;
+    private final Function<ConflatedDepth, TextMessage> depthEncoder;
+    private final Counter droppedCounter;
+    private long dropped;
+
+    // Key -> depth (ConflatedDepth) or execution report (TextMessage) not yet sent, oldest key first
+    private final Map<String, Object> pending = new LinkedHashMap<>();
+    private int queuedReports;
+    private long nextReportId;
+
+    // Symbol -> deltas held back until its snapshot arrives, null while there are none
+    private final Map<String, ConflatedDepth> awaitingSnapshot = new HashMap<>();
+
+    private boolean draining;
+    private boolean failed;
+
+    // When the report queue went over its limit / the current send started, 0 if not
+    private long overLimitSince;
+    private volatile long sendStartedAt;
+
+    /**
+     * @param depthEncoder   turns queued depth into the message sent, on the send worker
+     * @param droppedCounter shared by the owner's outboxes, counts deltas merged away and reports refused
+     */
+    public BookFeedOutbox(WebSocketSession session, Executor sendExecutor, int maxQueuedReports,
+                          Function<ConflatedDepth, TextMessage> depthEncoder, Counter droppedCounter) {
+        this.session = session;
+        this.sendExecutor = sendExecutor;
+        this.maxQueuedReports = maxQueuedReports;
+        this.depthEncoder = depthEncoder;
+        this.droppedCounter = droppedCounter;
+    }
+
+    /**
+     * Hold back the symbol's deltas until {@link #offerDepth} gets its snapshot
+     */
+    public synchronized void expectSnapshot(String symbol) {
+        if (!failed) {
+            awaitingSnapshot.putIfAbsent(symbol, null);
+        }
+    }
+
+    /**
+     * Queue a snapshot or delta, merging it into depth of the symbol that is still queued or held back,
+     * and have a send worker drain the queue if none is on it already. A snapshot nobody
+     * {@link #expectSnapshot expects} any more is ignored. Returns immediately.
+     */
+    public void offerDepth(DepthUpdate update) {
+        String symbol = update.getSymbol();
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+
+            ConflatedDepth depth;
+            if (awaitingSnapshot.containsKey(symbol)) {
+                ConflatedDepth held = awaitingSnapshot.get(symbol);
+                if (!update.isSnapshot()) {
+                    if (held == null) {
+                        awaitingSnapshot.put(symbol, new ConflatedDepth(update));
+                    } else {
+                        held.merge(update);
+                    }
+                    return;
+                }
+                awaitingSnapshot.remove(symbol);
+                depth = new ConflatedDepth(update);
+                if (held != null) {
+                    depth.merge(held);
+                }
+                // Replaces whatever of the symbol is queued from before the subscribe, in its place
+                pending.put(depthKey(symbol), depth);
+            } else if (update.isSnapshot()) {
+                return;
+            } else {
+                depth = (ConflatedDepth) pending.get(depthKey(symbol));
+                if (depth != null) {
+                    depth.merge(update);
+                    countDropped();
+                    return;
+                }
+                pending.put(depthKey(symbol), new ConflatedDepth(update));
+            }
+            if (!claimDrain()) {
+                return;
+            }
+        }
+        sendExecutor.execute(this::drain);
+    }
+
+    /**
+     * Queue an execution report, or drop it when the session already has too many waiting.
+     * Returns immediately.
+     */
+    public void offerReport(TextMessage report) {
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+
+            if (queuedReports >= maxQueuedReports) {
+                countDropped();
+                if (overLimitSince == 0) {
+                    overLimitSince = System.currentTimeMillis();
+                }
+                return;
+            }
+
+            pending.put("report:" + nextReportId++, report);
+            queuedReports++;
+            if (!claimDrain()) {
+                return;
+            }
+        }
+        sendExecutor.execute(this::drain);
+    }
+
+    /**
+     * Forget the symbol's depth after an unsubscribe
+     */
+    public synchronized void discardDepth(String symbol) {
+        awaitingSnapshot.remove(symbol);
+        pending.remove(depthKey(symbol));
+    }
+
+    private boolean claimDrain() {
+        if (draining) {
+            return false;
+        }
+        draining = true;
+        return true;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Deltas of this session merged away and reports refused so far
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    private void countDropped() {
+        dropped++;
+        droppedCounter.increment();
+    }
+
+    /**
+     * Whether the session has been over its report limit, or inside a single send, for longer than
+     * {@code timeoutMs}, or a send to it failed
+     */
+    public synchronized boolean isSlowerThan(long timeoutMs) {
+        long now = System.currentTimeMillis();
+        long sendStarted = sendStartedAt;
+        return failed
+                || (overLimitSince != 0 && now - overLimitSince > timeoutMs)
+                || (sendStarted != 0 && now - sendStarted > timeoutMs);
+    }
+
+    /**
+     * Drop whatever is queued once the session is gone
+     */
+    public synchronized void close() {
+        failed = true;
+        clear();
+    }
+
+    private void clear() {
+        pending.clear();
+        awaitingSnapshot.clear();
+        queuedReports = 0;
+    }
+
+    private void drain() {
+        for (int sent = 0; sent < MAX_SENDS_PER_DRAIN; sent++) {
+            Object next;
+            synchronized (this) {
+                Iterator<Object> queued = pending.values().iterator();
+                if (failed || !queued.hasNext()) {
+                    draining = false;
+                    return;
+                }
+                next = queued.next();
+                queued.remove();
+                if (next instanceof TextMessage && --queuedReports < maxQueuedReports) {
+                    overLimitSince = 0;
+                }
+            }
+
+            // Off the queue, so nothing merges into the depth any more
+            TextMessage message;
+            try {
+                message = next instanceof ConflatedDepth
+                        ? depthEncoder.apply((ConflatedDepth) next) : (TextMessage) next;
+            } catch (Exception e) {
+                log.error("Error encoding order book feed message for session {}", session.getId(), e);
+                continue;
+            }
+
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                synchronized (session) {
+                    // Synchronize on the session to prevent concurrent sends
+                    session.sendMessage(message);
+                }
+            } catch (Exception e) {
+                log.warn("Error sending to order book feed session {}: {}", session.getId(), e.getMessage());
+                synchronized (this) {
+                    failed = true;
+                    clear();
+                    draining = false;
+                }
+                return;
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+
+        // Give the other sessions a turn, then carry on
+        sendExecutor.execute(this::drain);
+    }
+
+    private static String depthKey(String symbol) {
+        return "depth:" + symbol;
+    }
+}
@@ -0,0 +1,92 @@
+package com.stocktrading.brokerage.websocket;
+
+import com.stocktrading.brokerage.matching.DepthLevel;
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Depth of one symbol waiting to be sent to a session: a snapshot or a delta, with the deltas that
+ * came after it merged in. Every level holds its latest quantity, so a merged delta covering
+ * sequences {@code firstSequence..sequence} leaves a client in the same state as applying each of
+ * them in turn. Merged into a snapshot, a delta's removed levels are dropped from it.
+ */
+public class ConflatedDepth {
+
+    @Getter
+    private final String symbol;
+    @Getter
+    private boolean snapshot;
+    @Getter
+    private long firstSequence;
+    @Getter
+    private long sequence;
+
+    private final NavigableMap<BigDecimal, DepthLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final NavigableMap<BigDecimal, DepthLevel> asks = new TreeMap<>();
+
+    public ConflatedDepth(DepthUpdate update) {
+        this.symbol = update.getSymbol();
+        reset(update.isSnapshot(), update.getSequence(), update.getSequence());
+        put(bids, update.getBids());
+        put(asks, update.getAsks());
+    }
+
+    /**
+     * Fold a later update in: a snapshot replaces everything, a delta updates the levels it holds.
+     * Deltas the depth already covers are ignored.
+     */
+    public void merge(DepthUpdate update) {
+        merge(new ConflatedDepth(update));
+    }
+
+    public void merge(ConflatedDepth later) {
+        if (later.snapshot) {
+            reset(true, later.sequence, later.sequence);
+            bids.clear();
+            asks.clear();
+        } else if (later.sequence <= sequence) {
+            return;
+        } else {
+            sequence = later.sequence;
+        }
+        put(bids, later.bids.values());
+        put(asks, later.asks.values());
+    }
+
+    /**
+     * Bid levels, best (highest) price first
+     */
+    public List<DepthLevel> bidLevels() {
+        return new ArrayList<>(bids.values());
+    }
+
+    /**
+     * Ask levels, best (lowest) price first
+     */
+    public List<DepthLevel> askLevels() {
+        return new ArrayList<>(asks.values());
+    }
+
+    private void reset(boolean snapshot, long firstSequence, long sequence) {
+        this.snapshot = snapshot;
+        this.firstSequence = firstSequence;
+        this.sequence = sequence;
+    }
+
+    private void put(NavigableMap<BigDecimal, DepthLevel> side, Iterable<DepthLevel> levels) {
+        for (DepthLevel level : levels) {
+            if (snapshot && level.getQuantity() == 0) {
+                side.remove(level.getPrice());
+            } else {
+                side.put(level.getPrice(), level);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.stocktrading.brokerage.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import com.stocktrading.brokerage.model.MockOrderBook;
+import com.stocktrading.brokerage.service.OrderBookListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket feed of the mock brokerage order book.
+ * A client sends {"action":"subscribe","symbol":"AAPL"} and gets a depth snapshot of the symbol,
+ * then a depth delta whenever levels change and every execution report for the symbol.
+ * Deltas only carry the levels that changed; a level with quantity 0 was removed.
+ * <p>
+ * Each session has its own {@link BookFeedOutbox}, which the matching threads only add to and a
+ * small pool of send workers drains, so a slow client never holds up the book or the other clients.
+ * A client that falls behind gets its deltas merged: a delta covers the sequences from
+ * {@code firstSequence} to {@code sequence}, and applies on top of a book at any sequence in between.
+ * Sessions that stay behind are closed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderBookWebSocketHandler extends TextWebSocketHandler implements OrderBookListener {
+
+    private final MockOrderBook mockOrderBook;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    // Session ID -> outbound queue of the session
+    private final Map<String, BookFeedOutbox> outboxes = new ConcurrentHashMap<>();
+
+    // Symbol -> subscribed sessions
+    private final Map<String, Set<WebSocketSession>> subscribers = new ConcurrentHashMap<>();
+
+    @Value("${brokerage.book-feed.default-levels:10}")
+    private int defaultLevels;
+
+    @Value("${brokerage.book-feed.send-threads:2}")
+    private int sendThreads;
+
+    @Value("${brokerage.book-feed.session.max-queued-reports:1024}")
+    private int maxQueuedReports;
+
+    @Value("${brokerage.book-feed.session.slow-timeout-ms:5000}")
+    private long slowSessionTimeoutMs;
+
+    private ExecutorService sendExecutor;
+    private Counter evictedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        sendExecutor = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "book-feed-send-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictedCounter = Counter.builder("brokerage.book-feed.sessions.evicted")
+                .description("Order book feed sessions closed for falling behind")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("brokerage.book-feed.dropped")
+                .description("Depth deltas merged into a queued one, or execution reports refused by a full queue")
+                .register(meterRegistry);
+        Gauge.builder("brokerage.book-feed.queue-depth.max", outboxes,
+                        queues -> queues.values().stream().mapToInt(BookFeedOutbox::size).max().orElse(0))
+                .description("Messages waiting to be sent to the order book feed session furthest behind")
+                .register(meterRegistry);
+        mockOrderBook.addBookListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        outboxes.put(session.getId(),
+                new BookFeedOutbox(session, sendExecutor, maxQueuedReports, this::encodeDepth, droppedCounter));
+        log.info("Order book feed connection established: {}", session.getId());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        removeSession(session);
+        log.info("Order book feed connection closed: {} with status: {}", session.getId(), status);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.error("Order book feed transport error for session {}: {}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        BookFeedOutbox outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> request = objectMapper.readValue(message.getPayload(), Map.class);
+            String action = (String) request.get("action");
+            String symbol = (String) request.get("symbol");
+            if (symbol == null || symbol.isBlank()) {
+                return;
+            }
+            symbol = symbol.trim().toUpperCase();
+
+            if ("subscribe".equals(action)) {
+                int levels = request.get("levels") instanceof Number
+                        ? ((Number) request.get("levels")).intValue() : defaultLevels;
+                subscribe(session, outbox, symbol, levels);
+            } else if ("unsubscribe".equals(action)) {
+                unsubscribe(session, outbox, symbol);
+            }
+        } catch (Exception e) {
+            log.error("Error handling order book feed message", e);
+        }
+    }
+
+    @Override
+    public boolean isWatchingDepth(String symbol) {
+        return hasSubscribers(symbol);
+    }
+
+    @Override
+    public void onDepthUpdate(DepthUpdate update) {
+        broadcast(update.getSymbol(), outbox -> outbox.offerDepth(update));
+    }
+
+    @Override
+    public void onExecutionReport(EventMessage report) {
+        String symbol = report.getPayloadValue("stockSymbol");
+        if (symbol == null || !hasSubscribers(symbol)) {
+            return;
+        }
+
+        TextMessage message;
+        try {
+            message = new TextMessage(objectMapper.writeValueAsString(executionReportMessage(report)));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing order book feed message for {}", symbol, e);
+            return;
+        }
+        // Immutable, so one instance serves every session
+        broadcast(symbol, outbox -> outbox.offerReport(message));
+    }
+
+    /**
+     * Subscribe first, then have the symbol's matching thread take the snapshot without waiting for it.
+     * The outbox holds the symbol's deltas back meanwhile and merges the ones newer than the snapshot
+     * into it, so the client starts from the snapshot and misses nothing after it.
+     */
+    private void subscribe(WebSocketSession session, BookFeedOutbox outbox, String symbol, int levels) {
+        outbox.expectSnapshot(symbol);
+        subscribers.computeIfAbsent(symbol, s -> ConcurrentHashMap.newKeySet()).add(session);
+        mockOrderBook.getDepthAsync(symbol, levels).whenComplete((snapshot, error) -> {
+            if (error != null) {
+                log.error("Error taking depth snapshot of {} for session {}", symbol, session.getId(), error);
+                unsubscribe(session, outbox, symbol);
+            } else {
+                outbox.offerDepth(snapshot);
+            }
+        });
+    }
+
+    private void unsubscribe(WebSocketSession session, BookFeedOutbox outbox, String symbol) {
+        Set<WebSocketSession> symbolSessions = subscribers.get(symbol);
+        if (symbolSessions != null) {
+            symbolSessions.remove(session);
+        }
+        outbox.discardDepth(symbol);
+    }
+
+    private boolean hasSubscribers(String symbol) {
+        Set<WebSocketSession> symbolSessions = subscribers.get(symbol);
+        return symbolSessions != null && !symbolSessions.isEmpty();
+    }
+
+    /**
+     * Queue a message for the symbol's subscribers. Runs on the symbol's matching thread, so it only
+     * adds to the outboxes; sessions that keep falling behind are evicted.
+     */
+    private void broadcast(String symbol, Consumer<BookFeedOutbox> offer) {
+        Set<WebSocketSession> symbolSessions = subscribers.getOrDefault(symbol, Collections.emptySet());
+        List<WebSocketSession> sessionsToRemove = new ArrayList<>();
+        List<WebSocketSession> sessionsToEvict = new ArrayList<>();
+
+        for (WebSocketSession session : symbolSessions) {
+            BookFeedOutbox outbox = outboxes.get(session.getId());
+            if (!session.isOpen() || outbox == null) {
+                sessionsToRemove.add(session);
+            } else if (outbox.isSlowerThan(slowSessionTimeoutMs)) {
+                sessionsToEvict.add(session);
+            } else {
+                offer.accept(outbox);
+            }
+        }
+
+        sessionsToRemove.forEach(this::removeSession);
+        sessionsToEvict.forEach(this::evictSession);
+    }
+
+    /**
+     * Drop a session that can't keep up. The close runs on a send worker since it may wait
+     * for a send in progress.
+     */
+    private void evictSession(WebSocketSession session) {
+        BookFeedOutbox outbox = outboxes.get(session.getId());
+        log.warn("Evicting slow order book feed session {} ({} messages queued, {} dropped)", session.getId(),
+                outbox != null ? outbox.size() : 0, outbox != null ? outbox.getDropped() : 0);
+        removeSession(session);
+        evictedCounter.increment();
+        sendExecutor.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.warn("Error closing slow order book feed session {}: {}", session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private void removeSession(WebSocketSession session) {
+        subscribers.values().forEach(symbolSessions -> symbolSessions.remove(session));
+        BookFeedOutbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * Encode depth taken off an outbox, on the send worker
+     */
+    private TextMessage encodeDepth(ConflatedDepth depth) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", depth.isSnapshot() ? "depthSnapshot" : "depthDelta");
+        message.put("symbol", depth.getSymbol());
+        if (!depth.isSnapshot()) {
+            message.put("firstSequence", depth.getFirstSequence());
+        }
+        message.put("sequence", depth.getSequence());
+        message.put("bids", depth.bidLevels());
+        message.put("asks", depth.askLevels());
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can't serialize depth of " + depth.getSymbol(), e);
+        }
+    }
+
+    private Map<String, Object> executionReportMessage(EventMessage report) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "executionReport");
+        message.put("eventType", report.getType());
+        message.put("sagaId", report.getSagaId());
+        message.putAll(report.getPayload());
+        return message;
+    }
+}
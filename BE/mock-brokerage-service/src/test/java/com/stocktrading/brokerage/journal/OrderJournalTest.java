@@ -0,0 +1,208 @@
+package com.stocktrading.brokerage.journal;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private OrderJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replaysAddsFillsAndRemovals() {
+        journal = openJournal(1);
+        assertTrue(journal.recover().isEmpty());
+
+        PendingOrder cancelled = order("cancelled", 100);
+        PendingOrder partial = order("partial", 100);
+        PendingOrder filled = order("filled", 50);
+        PendingOrder expired = order("expired", 10);
+        Arrays.asList(cancelled, partial, filled, expired).forEach(journal::recordAdd);
+
+        fill(partial, 40, 1_500_000L);
+        journal.recordFill(partial);
+        fill(filled, 50, 2_000_000L);
+        journal.recordFill(filled);
+        journal.recordCancel("cancelled");
+        journal.recordExpire("expired");
+
+        Map<String, PendingOrder> recovered = reopen();
+        assertEquals(List.of("partial"), new ArrayList<>(recovered.keySet()));
+        assertEquals(40, recovered.get("partial").getExecutedQuantity());
+        assertEquals(1_500_000L, recovered.get("partial").getExecutedNotional());
+        assertEquals(0, new BigDecimal("150.25").compareTo(recovered.get("partial").getLimitPrice()));
+        assertEquals("saga-partial", recovered.get("partial").getSagaId());
+    }
+
+    @Test
+    void rollsToNewSegmentsWhenFullAndReplaysThemAll() throws IOException {
+        journal = openJournal(1);
+        journal.recover();
+
+        // Each ADD is around a hundred bytes, so this spans several 1 MB segments
+        int count = 30_000;
+        for (int i = 0; i < count; i++) {
+            journal.recordAdd(order("order-" + i, 10));
+        }
+        for (int i = 0; i < count; i += 2) {
+            journal.recordCancel("order-" + i);
+        }
+
+        assertTrue(files("journal-").size() > 1);
+        Map<String, PendingOrder> recovered = reopen();
+        assertEquals(count / 2, recovered.size());
+        assertTrue(recovered.containsKey("order-1"));
+        assertTrue(recovered.containsKey("order-" + (count - 1)));
+    }
+
+    @Test
+    void recoversFromSnapshotPlusTail() throws IOException {
+        journal = openJournal(1);
+        journal.recover();
+
+        PendingOrder first = order("first", 100);
+        PendingOrder second = order("second", 100);
+        journal.recordAdd(first);
+        journal.recordAdd(second);
+        fill(first, 30, 900_000L);
+        journal.recordFill(first);
+
+        journal.writeSnapshot(() -> Arrays.asList(first.toBuilder().build(), second.toBuilder().build()));
+
+        // The tail after the snapshot
+        fill(first, 60, 1_800_000L);
+        journal.recordFill(first);
+        journal.recordCancel("second");
+        journal.recordAdd(order("third", 100));
+
+        assertEquals(1, files("snapshot-").size());
+        assertEquals(1, files("journal-").size());
+
+        Map<String, PendingOrder> recovered = reopen();
+        assertEquals(List.of("first", "third"), new ArrayList<>(recovered.keySet()));
+        assertEquals(60, recovered.get("first").getExecutedQuantity());
+        assertEquals(1_800_000L, recovered.get("first").getExecutedNotional());
+        assertEquals(0, recovered.get("third").getExecutedQuantity());
+    }
+
+    @Test
+    void keepsOrdersChangedWhileSnapshotIsTaken() {
+        journal = openJournal(1);
+        journal.recover();
+
+        PendingOrder resting = order("resting", 100);
+        journal.recordAdd(resting);
+
+        // The orders are read after the roll: whatever changes meanwhile is in the new segment
+        journal.writeSnapshot(() -> {
+            List<PendingOrder> copies = List.of(resting.toBuilder().build());
+            journal.recordAdd(order("added", 100));
+            fill(resting, 100, 3_000_000L);
+            journal.recordFill(resting);
+            return copies;
+        });
+
+        Map<String, PendingOrder> recovered = reopen();
+        assertEquals(List.of("added"), new ArrayList<>(recovered.keySet()));
+    }
+
+    @Test
+    void ignoresOlderFillsReplayedOnTopOfTheSnapshot() {
+        journal = openJournal(1);
+        journal.recover();
+
+        PendingOrder order = order("order", 100);
+        journal.recordAdd(order);
+        fill(order, 20, 600_000L);
+        PendingOrder stale = order.toBuilder().build();
+
+        // Filled further before the snapshot copy was read, but its earlier FILL lands after the roll
+        fill(order, 50, 1_500_000L);
+        journal.writeSnapshot(() -> {
+            journal.recordFill(stale);
+            return List.of(order.toBuilder().build());
+        });
+
+        Map<String, PendingOrder> recovered = reopen();
+        assertEquals(50, recovered.get("order").getExecutedQuantity());
+    }
+
+    private OrderJournal openJournal(int segmentSizeMb) {
+        OrderJournal orderJournal = new OrderJournal();
+        ReflectionTestUtils.setField(orderJournal, "enabled", true);
+        ReflectionTestUtils.setField(orderJournal, "directory", directory.toString());
+        ReflectionTestUtils.setField(orderJournal, "segmentSizeMb", segmentSizeMb);
+        return orderJournal;
+    }
+
+    /**
+     * Close the journal and recover a new one from the same directory, as after a restart
+     */
+    private Map<String, PendingOrder> reopen() {
+        journal.close();
+        journal = openJournal(1);
+        return journal.recover().stream()
+                .collect(Collectors.toMap(PendingOrder::getOrderId, Function.identity(),
+                        (a, b) -> a, LinkedHashMap::new));
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)
+                            && !path.getFileName().toString().endsWith(".tmp"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void fill(PendingOrder order, int executedQuantity, long executedNotional) {
+        order.setExecutedQuantity(executedQuantity);
+        order.setExecutedNotional(executedNotional);
+    }
+
+    private static PendingOrder order(String orderId, int quantity) {
+        return PendingOrder.builder()
+                .orderId(orderId)
+                .stockSymbol("AAPL")
+                .orderType("LIMIT")
+                .side("BUY")
+                .quantity(quantity)
+                .limitPrice(new BigDecimal("150.25"))
+                .timeInForce("GTC")
+                .createdAt(Instant.now())
+                .expirationTime(Instant.now().plusSeconds(3600))
+                .sagaId("saga-" + orderId)
+                .brokerOrderId("MBS-LMT-" + orderId)
+                .executedQuantity(0)
+                .executedNotional(0L)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package com.stocktrading.brokerage.matching;
+
+import com.stocktrading.brokerage.model.PendingOrder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderMatcherTest {
+
+    private final OrderMatcher matcher = new OrderMatcher("AAPL");
+
+    @Test
+    void restsOrdersThatDontCross() {
+        assertTrue(matcher.submit(order("buy", "BUY", 10, "100.00")).isEmpty());
+        assertTrue(matcher.submit(order("sell", "SELL", 10, "100.01")).isEmpty());
+
+        assertEquals(2, matcher.size());
+        assertEquals(10, matcher.find("buy").getRemainingQuantity());
+        assertEquals(10, matcher.find("sell").getRemainingQuantity());
+    }
+
+    @Test
+    void fillsBestPriceFirstThenOldestFirst() {
+        matcher.submit(order("sell-high", "SELL", 10, "101.00"));
+        matcher.submit(order("sell-low-1", "SELL", 10, "100.00"));
+        matcher.submit(order("sell-low-2", "SELL", 10, "100.00"));
+
+        List<Fill> fills = matcher.submit(order("buy", "BUY", 25, "101.00"));
+
+        // Each trade reports the resting order, then the incoming one
+        assertEquals(6, fills.size());
+        assertFill(fills.get(0), "sell-low-1", "100.00", 10, 0);
+        assertFill(fills.get(2), "sell-low-2", "100.00", 10, 0);
+        assertFill(fills.get(4), "sell-high", "101.00", 5, 5);
+        assertFill(fills.get(5), "buy", "101.00", 5, 0);
+        assertEquals("sell-high", fills.get(5).getCounterpartyOrderId());
+
+        Fill last = fills.get(5);
+        assertTrue(last.isComplete());
+        assertEquals(25, last.getCumulativeQuantity());
+        assertEquals(price("100.20"), last.getAveragePrice());
+
+        assertEquals(1, matcher.size());
+        assertEquals(5, matcher.find("sell-high").getRemainingQuantity());
+    }
+
+    @Test
+    void restsWhatIsLeftOfAPartiallyFilledOrder() {
+        matcher.submit(order("sell", "SELL", 10, "100.00"));
+
+        PendingOrder buy = order("buy", "BUY", 25, "100.00");
+        List<Fill> fills = matcher.submit(buy);
+
+        assertEquals(2, fills.size());
+        assertFill(fills.get(1), "buy", "100.00", 10, 15);
+        assertFalse(fills.get(1).isComplete());
+        assertEquals(10, buy.getExecutedQuantity());
+        assertEquals(price("100.00") * 10, buy.getExecutedNotional());
+        assertEquals(15, matcher.find("buy").getRemainingQuantity());
+        assertNull(matcher.find("sell"));
+
+        // A later, more aggressive order trades at the resting order's price
+        fills = matcher.submit(order("sell-2", "SELL", 20, "99.00"));
+        assertFill(fills.get(0), "buy", "100.00", 15, 0);
+        assertFill(fills.get(1), "sell-2", "100.00", 15, 5);
+        assertEquals(25, buy.getExecutedQuantity());
+        assertEquals(5, matcher.find("sell-2").getRemainingQuantity());
+    }
+
+    @Test
+    void fillsOrdersCrossingTheQuoteCompletely() {
+        matcher.submit(order("buy-high", "BUY", 30, "100.00"));
+        matcher.submit(order("buy-low", "BUY", 30, "99.00"));
+        matcher.submit(order("sell", "SELL", 30, "102.00"));
+
+        List<Fill> fills = matcher.matchQuote(price("98.00"), price("99.50"));
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), "buy-high", "99.50", 30, 0);
+        assertNull(fills.get(0).getCounterpartyOrderId());
+
+        fills = matcher.matchQuote(price("102.50"), 0);
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), "sell", "102.50", 30, 0);
+
+        assertEquals(1, matcher.size());
+        assertEquals(30, matcher.find("buy-low").getRemainingQuantity());
+    }
+
+    @Test
+    void restoresOrdersWithTheirEarlierFills() {
+        PendingOrder restored = order("restored", "BUY", 100, "100.00");
+        restored.setExecutedQuantity(40);
+        restored.setExecutedNotional(price("99.00") * 40);
+        matcher.restore(restored);
+        matcher.submit(order("newer", "BUY", 10, "100.00"));
+
+        assertEquals(60, matcher.find("restored").getRemainingQuantity());
+
+        // Keeps its time priority and its average price carries the fills from before the restart
+        List<Fill> fills = matcher.submit(order("sell", "SELL", 60, "100.00"));
+        assertFill(fills.get(0), "restored", "100.00", 60, 0);
+        assertEquals(100, fills.get(0).getCumulativeQuantity());
+        assertEquals(price("99.60"), fills.get(0).getAveragePrice());
+        assertEquals(10, matcher.find("newer").getRemainingQuantity());
+    }
+
+    @Test
+    void cancelsRestingOrders() {
+        matcher.submit(order("buy", "BUY", 10, "100.00"));
+
+        assertEquals("buy", matcher.cancel("buy").getOrderId());
+        assertNull(matcher.cancel("buy"));
+        assertTrue(matcher.isEmpty());
+        assertTrue(matcher.submit(order("sell", "SELL", 10, "100.00")).isEmpty());
+    }
+
+    private static void assertFill(Fill fill, String orderId, String price, int quantity, int remainingQuantity) {
+        assertEquals(orderId, fill.getOrder().getOrderId());
+        assertEquals(price(price), fill.getPrice());
+        assertEquals(quantity, fill.getQuantity());
+        assertEquals(remainingQuantity, fill.getRemainingQuantity());
+    }
+
+    private static long price(String price) {
+        return FixedPointPrice.fromBigDecimal(new BigDecimal(price));
+    }
+
+    private static PendingOrder order(String orderId, String side, int quantity, String limitPrice) {
+        return PendingOrder.builder()
+                .orderId(orderId)
+                .stockSymbol("AAPL")
+                .orderType("LIMIT")
+                .side(side)
+                .quantity(quantity)
+                .limitPrice(new BigDecimal(limitPrice))
+                .timeInForce("GTC")
+                .createdAt(Instant.now())
+                .expirationTime(Instant.now().plusSeconds(3600))
+                .executedQuantity(0)
+                .executedNotional(0L)
+                .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.stocktrading.brokerage.model;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.journal.OrderJournal;
+import com.stocktrading.brokerage.matching.MatchingEngine;
+import com.stocktrading.brokerage.publisher.BrokerEvent;
+import com.stocktrading.brokerage.publisher.BrokerEventPublisher;
+import com.stocktrading.brokerage.service.MarketPriceCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class MockOrderBookTest {
+
+    private static final String BUY_TOPIC = "broker.events.order-buy";
+    private static final String SELL_TOPIC = "broker.events.order-sell";
+
+    @TempDir
+    Path journalDir;
+
+    private final List<MatchingEngine> matchingEngines = new ArrayList<>();
+    private final List<OrderJournal> orderJournals = new ArrayList<>();
+    private BrokerEventPublisher brokerEventPublisher;
+
+    @AfterEach
+    void tearDown() {
+        matchingEngines.forEach(MatchingEngine::shutdown);
+        orderJournals.forEach(OrderJournal::close);
+    }
+
+    @Test
+    void restoresPartiallyFilledOrdersFromSnapshotAndTail() {
+        MockOrderBook book = newBook(true);
+        PendingOrder buy = place(book, "buy", "BUY", 100, "100.00");
+        place(book, "sell-1", "SELL", 40, "100.00");
+        book.snapshotOrderJournal();
+
+        // Journaled after the snapshot only
+        place(book, "sell-2", "SELL", 20, "100.00");
+        place(book, "resting-sell", "SELL", 10, "105.00");
+        assertEquals(60, buy.getExecutedQuantity());
+        restart();
+
+        MockOrderBook restarted = newBook(true);
+        assertEquals(2, restarted.getPendingOrderCount());
+        PendingOrder recovered = restarted.findPendingOrder("buy").orElseThrow();
+        assertEquals(60, recovered.getExecutedQuantity());
+        assertTrue(restarted.findPendingOrder("resting-sell").isPresent());
+
+        // The recovered order rests in the book with what was left of it
+        place(restarted, "sell-3", "SELL", 50, "100.00");
+        assertFalse(restarted.findPendingOrder("buy").isPresent());
+        assertEquals(40, restarted.findPendingOrder("sell-3").orElseThrow().getExecutedQuantity());
+    }
+
+    @Test
+    void expiresPartiallyFilledOrdersWithTheirExecutedQuantity() {
+        MockOrderBook book = newBook(false);
+        place(book, "sell", "SELL", 30, "100.00", "GTC");
+        // An IOC order is due as soon as it is queued
+        place(book, "buy", "BUY", 100, "100.00", "IOC");
+
+        book.checkForExpiredOrders();
+
+        List<EventMessage> events = publishedEvents("saga-buy");
+        assertEquals(List.of("ORDER_PARTIALLY_FILLED", "ORDER_EXPIRED"),
+                events.stream().map(EventMessage::getType).collect(Collectors.toList()));
+        EventMessage expired = events.get(1);
+        assertEquals(Integer.valueOf(30), expired.getPayloadValue("executedQuantity"));
+        assertEquals(0, new BigDecimal("100.00").compareTo(expired.getPayloadValue("executionPrice")));
+        assertEquals("BUY", expired.getPayloadValue("side"));
+        assertFalse(book.findPendingOrder("buy").isPresent());
+        assertEquals(0, book.getPendingOrderCount());
+
+        // Expired once only
+        book.checkForExpiredOrders();
+        assertEquals(2, publishedEvents("saga-buy").size());
+    }
+
+    @Test
+    void reportsTheFillThatCompletesAnOrderWithItsAveragePrice() {
+        MockOrderBook book = newBook(false);
+        place(book, "sell-1", "SELL", 40, "100.00", "GTC");
+        place(book, "sell-2", "SELL", 60, "101.00", "GTC");
+        place(book, "buy", "BUY", 100, "101.00", "GTC");
+
+        List<EventMessage> events = publishedEvents("saga-buy");
+        assertEquals(List.of("ORDER_PARTIALLY_FILLED", "ORDER_EXECUTED_BY_BROKER"),
+                events.stream().map(EventMessage::getType).collect(Collectors.toList()));
+        assertEquals(Integer.valueOf(40), events.get(0).getPayloadValue("executedQuantity"));
+        assertEquals(Integer.valueOf(60), events.get(0).getPayloadValue("remainingQuantity"));
+        assertEquals(Integer.valueOf(100), events.get(1).getPayloadValue("executedQuantity"));
+        assertEquals(0, new BigDecimal("100.60").compareTo(events.get(1).getPayloadValue("executionPrice")));
+        assertEquals(0, book.getPendingOrderCount());
+    }
+
+    @Test
+    void roundsTheAveragePriceOfAPartiallyFilledOrderHalfUp() {
+        MockOrderBook book = newBook(false);
+        place(book, "sell-1", "SELL", 1, "100.00", "GTC");
+        place(book, "sell-2", "SELL", 2, "100.0001", "GTC");
+        place(book, "buy", "BUY", 10, "100.0001", "GTC");
+
+        // 3 shares for 300.0002: 100.000067 a share, which rounds up
+        BigDecimal average = new BigDecimal("100.0001");
+        assertEquals(0, average.compareTo((BigDecimal) book.getOrderStatus("buy").orElseThrow().get("averagePrice")));
+        assertEquals(0, average.compareTo(book.averageExecutionPrice(book.findPendingOrder("buy").orElseThrow())));
+    }
+
+    private MockOrderBook newBook(boolean journalEnabled) {
+        MarketPriceCache marketPriceCache = mock(MarketPriceCache.class);
+        brokerEventPublisher = mock(BrokerEventPublisher.class);
+
+        MatchingEngine matchingEngine = new MatchingEngine();
+        ReflectionTestUtils.setField(matchingEngine, "threadCount", 1);
+        matchingEngine.init();
+        matchingEngines.add(matchingEngine);
+
+        OrderJournal orderJournal = new OrderJournal();
+        ReflectionTestUtils.setField(orderJournal, "enabled", journalEnabled);
+        ReflectionTestUtils.setField(orderJournal, "directory", journalDir.toString());
+        ReflectionTestUtils.setField(orderJournal, "segmentSizeMb", 1);
+        orderJournals.add(orderJournal);
+
+        MockOrderBook book = new MockOrderBook(marketPriceCache, brokerEventPublisher, new SimpleMeterRegistry(),
+                matchingEngine, orderJournal);
+        ReflectionTestUtils.setField(book, "brokerEventsTopic", BUY_TOPIC);
+        ReflectionTestUtils.setField(book, "brokerSellEventsTopic", SELL_TOPIC);
+        ReflectionTestUtils.setField(book, "priceVariation", 0.02);
+        book.init();
+        return book;
+    }
+
+    /**
+     * Stop the matching threads and close the journal, as on shutdown
+     */
+    private void restart() {
+        tearDown();
+        matchingEngines.clear();
+        orderJournals.clear();
+    }
+
+    /**
+     * The events published for a saga so far, in order
+     */
+    @SuppressWarnings("unchecked")
+    private List<EventMessage> publishedEvents(String sagaId) {
+        ArgumentCaptor<List<BrokerEvent>> batches = ArgumentCaptor.forClass(List.class);
+        verify(brokerEventPublisher, atLeast(0)).publishAll(batches.capture());
+        return batches.getAllValues().stream()
+                .flatMap(List::stream)
+                .filter(event -> sagaId.equals(event.getKey()))
+                .map(BrokerEvent::getEvent)
+                .collect(Collectors.toList());
+    }
+
+    private static PendingOrder place(MockOrderBook book, String orderId, String side, int quantity, String limitPrice) {
+        return place(book, orderId, side, quantity, limitPrice, "GTC");
+    }
+
+    /**
+     * Queue a limit order and hand it to the matching engine, like KafkaCommandHandlerService does
+     */
+    private static PendingOrder place(MockOrderBook book, String orderId, String side, int quantity,
+                                      String limitPrice, String timeInForce) {
+        PendingOrder order = book.addPendingOrder(orderId, "AAPL", "LIMIT", side, quantity,
+                new BigDecimal(limitPrice), timeInForce, "saga-" + orderId);
+        book.matchPendingOrder(order);
+        return order;
+    }
+}
@@ -0,0 +1,97 @@
+package com.stocktrading.brokerage.publisher;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BrokerEventPublisherTest {
+
+    private static final String TOPIC = "broker.events.order-buy";
+
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private BrokerEventPublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new BrokerEventPublisher(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(publisher, "retryBufferSize", 100);
+        ReflectionTestUtils.setField(publisher, "retryIntervalMs", 1L);
+        ReflectionTestUtils.setField(publisher, "maxAttempts", 3);
+        publisher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.shutdown();
+    }
+
+    @Test
+    void dropsAnEventThatKeepsFailingAndSendsTheSagasNextOne() {
+        EventMessage poisoned = event("ORDER_PARTIALLY_FILLED");
+        EventMessage next = event("ORDER_EXECUTED_BY_BROKER");
+        when(kafkaTemplate.send(TOPIC, "saga-1", poisoned)).thenReturn(failedSend());
+        when(kafkaTemplate.send(TOPIC, "saga-1", next)).thenReturn(ackedSend());
+
+        publisher.publishAll(List.of(new BrokerEvent(TOPIC, "saga-1", poisoned),
+                new BrokerEvent(TOPIC, "saga-1", next)));
+
+        verify(kafkaTemplate, timeout(5000).times(3)).send(TOPIC, "saga-1", poisoned);
+        verify(kafkaTemplate, timeout(5000)).send(TOPIC, "saga-1", next);
+        assertEquals(1.0, meterRegistry.counter("brokerage.events.dropped").count());
+        assertEquals(0, publisher.getRetryBufferSize());
+    }
+
+    @Test
+    void retriesAFailedEventBeforeTheSagasLaterOnes() {
+        EventMessage flaky = event("ORDER_PARTIALLY_FILLED");
+        EventMessage next = event("ORDER_EXECUTED_BY_BROKER");
+        when(kafkaTemplate.send(TOPIC, "saga-1", flaky)).thenReturn(failedSend(), ackedSend());
+        when(kafkaTemplate.send(TOPIC, "saga-1", next)).thenReturn(ackedSend());
+
+        publisher.publishAll(List.of(new BrokerEvent(TOPIC, "saga-1", flaky),
+                new BrokerEvent(TOPIC, "saga-1", next)));
+
+        verify(kafkaTemplate, timeout(5000)).send(TOPIC, "saga-1", next);
+        verify(kafkaTemplate, timeout(5000).times(2)).send(TOPIC, "saga-1", flaky);
+        assertEquals(0.0, meterRegistry.counter("brokerage.events.dropped").count());
+        assertEquals(1.0, meterRegistry.counter("brokerage.events.retried").count());
+    }
+
+    private static EventMessage event(String type) {
+        EventMessage event = new EventMessage();
+        event.setType(type);
+        event.setSagaId("saga-1");
+        return event;
+    }
+
+    private static SettableListenableFuture<SendResult<String, Object>> failedSend() {
+        SettableListenableFuture<SendResult<String, Object>> future = new SettableListenableFuture<>();
+        future.setException(new SerializationException("Can't serialize event"));
+        return future;
+    }
+
+    private static SettableListenableFuture<SendResult<String, Object>> ackedSend() {
+        SettableListenableFuture<SendResult<String, Object>> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+}
@@ -0,0 +1,140 @@
+package com.stocktrading.brokerage.service;
+
+import com.project.kafkamessagemodels.model.CommandMessage;
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.journal.OrderJournal;
+import com.stocktrading.brokerage.matching.MatchingEngine;
+import com.stocktrading.brokerage.model.MockOrderBook;
+import com.stocktrading.brokerage.publisher.BrokerEventPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KafkaCommandHandlerServiceTest {
+
+    private static final String BUY_TOPIC = "broker.events.order-buy";
+    private static final String SELL_TOPIC = "broker.events.order-sell";
+
+    private MatchingEngine matchingEngine;
+    private BrokerEventPublisher brokerEventPublisher;
+    private MockOrderBook mockOrderBook;
+    private KafkaCommandHandlerService commandHandlerService;
+
+    @BeforeEach
+    void setUp() {
+        // The market is 99.90 / 100.10
+        MarketPriceCache marketPriceCache = mock(MarketPriceCache.class);
+        when(marketPriceCache.getBidPrice("AAPL")).thenReturn(new BigDecimal("99.90"));
+        when(marketPriceCache.getAskPrice("AAPL")).thenReturn(new BigDecimal("100.10"));
+        when(marketPriceCache.getPrice("AAPL")).thenReturn(new BigDecimal("100.00"));
+
+        brokerEventPublisher = mock(BrokerEventPublisher.class);
+
+        matchingEngine = new MatchingEngine();
+        ReflectionTestUtils.setField(matchingEngine, "threadCount", 1);
+        matchingEngine.init();
+
+        OrderJournal orderJournal = new OrderJournal();
+        ReflectionTestUtils.setField(orderJournal, "enabled", false);
+
+        mockOrderBook = new MockOrderBook(marketPriceCache, brokerEventPublisher, new SimpleMeterRegistry(),
+                matchingEngine, orderJournal);
+        ReflectionTestUtils.setField(mockOrderBook, "brokerEventsTopic", BUY_TOPIC);
+        ReflectionTestUtils.setField(mockOrderBook, "brokerSellEventsTopic", SELL_TOPIC);
+        ReflectionTestUtils.setField(mockOrderBook, "priceVariation", 0.02);
+        mockOrderBook.init();
+
+        // Run the work right away instead of after a simulated delay
+        ProcessingDelaySimulator processingDelaySimulator = mock(ProcessingDelaySimulator.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(processingDelaySimulator).schedule(anyString(), any(Runnable.class));
+
+        commandHandlerService = new KafkaCommandHandlerService(brokerEventPublisher, mockOrderBook,
+                processingDelaySimulator);
+        ReflectionTestUtils.setField(commandHandlerService, "brokerEventsTopic", BUY_TOPIC);
+        ReflectionTestUtils.setField(commandHandlerService, "brokerSellEventsTopic", SELL_TOPIC);
+        ReflectionTestUtils.setField(commandHandlerService, "orderExecutionSuccessRate", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        matchingEngine.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"IOC", "FOK"})
+    void expiresImmediateOrdersThatCantBeFilledWithoutQueuingThem(String timeInForce) {
+        commandHandlerService.handleExecuteOrder(limitOrder("BUY", "100.00", timeInForce), false);
+        commandHandlerService.handleExecuteOrder(limitOrder("SELL", "100.00", timeInForce), true);
+
+        EventMessage buyEvent = publishedEvent(BUY_TOPIC);
+        assertEquals("ORDER_EXPIRED", buyEvent.getType());
+        assertTrue(buyEvent.getSuccess());
+        assertEquals("EXPIRED", buyEvent.getPayloadValue("status"));
+        assertEquals("ORDER_EXPIRED", publishedEvent(SELL_TOPIC).getType());
+
+        assertFalse(mockOrderBook.findPendingOrder("order-BUY").isPresent());
+        assertFalse(mockOrderBook.findPendingOrder("order-SELL").isPresent());
+        assertTrue(mockOrderBook.getBookSymbols().isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"IOC", "FOK"})
+    void fillsImmediateOrdersThatCrossTheMarket(String timeInForce) {
+        commandHandlerService.handleExecuteOrder(limitOrder("BUY", "100.10", timeInForce), false);
+
+        EventMessage event = publishedEvent(BUY_TOPIC);
+        assertEquals("ORDER_EXECUTED_BY_BROKER", event.getType());
+        assertEquals(Integer.valueOf(50), event.getPayloadValue("executedQuantity"));
+        assertEquals(0, new BigDecimal("100.10").compareTo(event.getPayloadValue("executionPrice")));
+        assertEquals(0, mockOrderBook.getPendingOrderCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"DAY", "GTC"})
+    void queuesOtherOrdersThatCantBeFilledYet(String timeInForce) {
+        commandHandlerService.handleExecuteOrder(limitOrder("BUY", "100.00", timeInForce), false);
+
+        assertEquals("LIMIT_ORDER_QUEUED", publishedEvent(BUY_TOPIC).getType());
+        assertTrue(mockOrderBook.findPendingOrder("order-BUY").isPresent());
+    }
+
+    private EventMessage publishedEvent(String topic) {
+        ArgumentCaptor<EventMessage> event = ArgumentCaptor.forClass(EventMessage.class);
+        verify(brokerEventPublisher).publish(eq(topic), anyString(), event.capture());
+        return event.getValue();
+    }
+
+    private static CommandMessage limitOrder(String side, String limitPrice, String timeInForce) {
+        CommandMessage command = new CommandMessage();
+        command.setSagaId("saga-" + side);
+        command.setType("BROKER_EXECUTE_ORDER");
+        command.setPayloadValue("orderId", "order-" + side);
+        command.setPayloadValue("stockSymbol", "AAPL");
+        command.setPayloadValue("orderType", "LIMIT");
+        command.setPayloadValue("side", side);
+        command.setPayloadValue("quantity", 50);
+        command.setPayloadValue("limitPrice", limitPrice);
+        command.setPayloadValue("timeInForce", timeInForce);
+        return command;
+    }
+}
@@ -0,0 +1,76 @@
+package com.stocktrading.brokerage.service;
+
+import com.project.kafkamessagemodels.model.EventMessage;
+import com.stocktrading.brokerage.client.MarketDataClient;
+import com.stocktrading.brokerage.model.MarketQuote;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MarketPriceCacheTest {
+
+    private static final Instant SNAPSHOT_TIME = Instant.parse("2024-03-01T15:00:00Z");
+
+    private MarketPriceCache marketPriceCache;
+    private final List<MarketQuote> notified = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MarketDataClient marketDataClient = mock(MarketDataClient.class);
+        when(marketDataClient.getLastValues()).thenReturn(List.of(Map.of(
+                "symbol", "AAPL",
+                "price", "150.00",
+                "bidPrice", "149.90",
+                "askPrice", "150.10",
+                "timestamp", SNAPSHOT_TIME.toString())));
+
+        marketPriceCache = new MarketPriceCache(marketDataClient);
+        ReflectionTestUtils.setField(marketPriceCache, "maxSymbols", 16);
+        ReflectionTestUtils.setField(marketPriceCache, "bootstrapEnabled", true);
+        marketPriceCache.init();
+        marketPriceCache.addPriceListener(notified::add);
+    }
+
+    @Test
+    void ignoresReplayedTicksOlderThanTheSnapshot() {
+        marketPriceCache.consumeMarketPriceUpdates(tick("120.00", SNAPSHOT_TIME.minusSeconds(3600)));
+
+        MarketQuote quote = marketPriceCache.getQuote("AAPL");
+        assertEquals(0, new BigDecimal("150.00").compareTo(quote.getPrice()));
+        assertEquals(0, quote.getSequence());
+        assertEquals(List.of(), notified);
+    }
+
+    @Test
+    void appliesTicksFromTheSnapshotOn() {
+        marketPriceCache.consumeMarketPriceUpdates(tick("151.00", SNAPSHOT_TIME.plusMillis(1)));
+        marketPriceCache.consumeMarketPriceUpdates(tick("150.50", SNAPSHOT_TIME.minusMillis(1)));
+        marketPriceCache.consumeMarketPriceUpdates(tick("152.00", SNAPSHOT_TIME.plusMillis(1)));
+
+        MarketQuote quote = marketPriceCache.getQuote("AAPL");
+        assertEquals(0, new BigDecimal("152.00").compareTo(quote.getPrice()));
+        assertEquals(2, quote.getSequence());
+        assertEquals(2, notified.size());
+    }
+
+    private static EventMessage tick(String price, Instant timestamp) {
+        EventMessage event = new EventMessage();
+        event.setType("MARKET_PRICES_UPDATED");
+        event.setTimestamp(timestamp);
+        event.setPayloadValue("symbol", "AAPL");
+        event.setPayloadValue("price", price);
+        event.setPayloadValue("bidPrice", price);
+        event.setPayloadValue("askPrice", price);
+        return event;
+    }
+}
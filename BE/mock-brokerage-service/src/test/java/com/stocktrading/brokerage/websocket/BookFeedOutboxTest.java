@@ -0,0 +1,125 @@
+package com.stocktrading.brokerage.websocket;
+
+import com.stocktrading.brokerage.matching.DepthLevel;
+import com.stocktrading.brokerage.matching.DepthUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class BookFeedOutboxTest {
+
+    // Send worker tasks, run when the test says so
+    private final Queue<Runnable> sendTasks = new ArrayDeque<>();
+    private final List<ConflatedDepth> encoded = new ArrayList<>();
+
+    private WebSocketSession session;
+    private BookFeedOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(WebSocketSession.class);
+        outbox = new BookFeedOutbox(session, sendTasks::add, 2, depth -> {
+            encoded.add(depth);
+            return new TextMessage("depth");
+        }, new SimpleMeterRegistry().counter("dropped"));
+    }
+
+    @Test
+    void mergesTheDeltasQueuedForASymbol() throws Exception {
+        outbox.offerDepth(delta(1, List.of(level("100.00", 10), level("99.00", 5)), List.of()));
+        outbox.offerDepth(delta(2, List.of(level("100.00", 0)), List.of(level("101.00", 7))));
+        outbox.offerDepth(delta(3, List.of(level("98.00", 2)), List.of()));
+        runSendTasks();
+
+        verify(session, times(1)).sendMessage(any());
+        ConflatedDepth depth = encoded.get(0);
+        assertFalse(depth.isSnapshot());
+        assertEquals(1, depth.getFirstSequence());
+        assertEquals(3, depth.getSequence());
+        // The removed level stays in the delta, so the client removes it too
+        assertEquals(List.of("100.00:0", "99.00:5", "98.00:2"), describe(depth.bidLevels()));
+        assertEquals(List.of("101.00:7"), describe(depth.askLevels()));
+        assertEquals(2, outbox.getDropped());
+    }
+
+    @Test
+    void holdsTheDeltasBackUntilTheSnapshotIsIn() throws Exception {
+        outbox.expectSnapshot("AAPL");
+        // Taken before the snapshot, which already holds it, and after
+        outbox.offerDepth(delta(5, List.of(), List.of(level("101.00", 1))));
+        outbox.offerDepth(delta(6, List.of(), List.of(level("102.00", 0), level("103.00", 8))));
+        runSendTasks();
+        verify(session, never()).sendMessage(any());
+
+        outbox.offerDepth(new DepthUpdate("AAPL", 5, true, List.of(level("100.00", 3)),
+                List.of(level("101.00", 1), level("102.00", 4))));
+        runSendTasks();
+
+        verify(session, times(1)).sendMessage(any());
+        ConflatedDepth depth = encoded.get(0);
+        assertTrue(depth.isSnapshot());
+        assertEquals(6, depth.getSequence());
+        assertEquals(List.of("100.00:3"), describe(depth.bidLevels()));
+        assertEquals(List.of("101.00:1", "103.00:8"), describe(depth.askLevels()));
+
+        // A late snapshot of a symbol nobody expects any more is ignored
+        outbox.offerDepth(new DepthUpdate("AAPL", 4, true, List.of(), List.of()));
+        runSendTasks();
+        verify(session, times(1)).sendMessage(any());
+    }
+
+    @Test
+    void dropsReportsOverTheLimitAndTurnsSlow() throws Exception {
+        outbox.offerReport(new TextMessage("report-1"));
+        outbox.offerReport(new TextMessage("report-2"));
+        outbox.offerReport(new TextMessage("report-3"));
+        assertEquals(2, outbox.size());
+        assertEquals(1, outbox.getDropped());
+
+        Thread.sleep(20);
+        assertTrue(outbox.isSlowerThan(10));
+
+        runSendTasks();
+        verify(session, times(2)).sendMessage(any());
+        assertFalse(outbox.isSlowerThan(10));
+    }
+
+    private void runSendTasks() {
+        Runnable task;
+        while ((task = sendTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static DepthUpdate delta(long sequence, List<DepthLevel> bids, List<DepthLevel> asks) {
+        return new DepthUpdate("AAPL", sequence, false, bids, asks);
+    }
+
+    private static DepthLevel level(String price, long quantity) {
+        return new DepthLevel(new BigDecimal(price), quantity, quantity == 0 ? 0 : 1);
+    }
+
+    private static List<String> describe(List<DepthLevel> levels) {
+        return levels.stream()
+                .map(level -> level.getPrice().toPlainString() + ":" + level.getQuantity())
+                .collect(Collectors.toList());
+    }
+}
@@ -1,6 +1,9 @@
 import React, { useState, useEffect, useRef } from 'react';
 import './StockTable.css';
 
+// Sparkline points kept per stock
+const MAX_HISTORY_POINTS = 50;
+
 // Modified Sparkline component with vertical line indicator
 const Sparkline = ({ data, color, fillColor, type = 'line', height = 50, width = 150 }) => {
     const canvasRef = useRef(null);
@@ -206,7 +209,7 @@ const StockTable = () => {
                     setStocksHistory(data.history || {});
                     setLoading(false);
                 } else if (data.type === 'update') {
-                    updateStockData(data.symbol, data.data, data.history);
+                    updateStockData(data.symbol, data.data);
                 } else if (data.type === 'filteredData') {
                     setFilteredStocks(data.stocks);
                 }
@@ -248,8 +251,8 @@ const StockTable = () => {
         setFilteredStocks(filtered);
     }, [stocks, filter]);
 
-    // Update a single stock in the stocks array
-    const updateStockData = (symbol, newData, history) => {
+    // Update a single stock in the stocks array and extend its sparkline with the new quote
+    const updateStockData = (symbol, newData) => {
         setStocks(prevStocks => {
             const stockIndex = prevStocks.findIndex(stock => stock.symbol === symbol);
 
@@ -262,13 +265,11 @@ const StockTable = () => {
             return updatedStocks;
         });
 
-        // Update history if provided
-        if (history) {
-            setStocksHistory(prev => ({
-                ...prev,
-                [symbol]: history
-            }));
-        }
+        const point = { price: newData.price, volume: newData.volume, timestamp: newData.timestamp };
+        setStocksHistory(prev => ({
+            ...prev,
+            [symbol]: [...(prev[symbol] || []), point].slice(-MAX_HISTORY_POINTS)
+        }));
     };
 
     // Handle filter input change